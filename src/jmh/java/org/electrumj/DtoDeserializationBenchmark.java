@@ -0,0 +1,127 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainScripthashGetTxsResponseEntry;
+import org.electrumj.dto.BlockchainScripthashListUnspentResponseEntry;
+import org.electrumj.dto.transactionget.BlockchainTransactionGetVerboseResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of large responses into their DTOs, the way the client does it: the response is read by the
+ * RequestPipeline, which decodes the result straight from the parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoDeserializationBenchmark {
+
+    private static final Type historyType = Util.getParametrizedListType(BlockchainScripthashGetTxsResponseEntry.class);
+    private static final Type unspentType = Util.getParametrizedListType(BlockchainScripthashListUnspentResponseEntry.class);
+
+    // Entries of the history and of the unspent outputs, inputs and outputs of the transaction.
+    @Param({"100", "10000"})
+    public int size;
+
+    private String historyResponse;
+    private String unspentResponse;
+    private String verboseTransactionResponse;
+    // A new pipeline for each invocation, so the response always answers request 1.
+    private RequestPipeline pipeline;
+
+    @Setup
+    public void createResponses() {
+        StringBuilder history = new StringBuilder("{\"jsonrpc\": \"2.0\", \"id\": 1, \"result\": [");
+        StringBuilder unspent = new StringBuilder("{\"jsonrpc\": \"2.0\", \"id\": 1, \"result\": [");
+        for (int i = 0; i < size; i++) {
+            String separator = i == 0 ? "" : ", ";
+            history.append(separator).append("{\"tx_hash\": \"").append(txHash(i)).append("\", \"height\": ")
+                    .append(600_000 + i).append(", \"fee\": ").append(i % 7 * 1000).append('}');
+            unspent.append(separator).append("{\"tx_hash\": \"").append(txHash(i)).append("\", \"tx_pos\": ")
+                    .append(i % 4).append(", \"height\": ").append(600_000 + i).append(", \"value\": ")
+                    .append(1000L * i).append('}');
+        }
+        historyResponse = history.append("]}").toString();
+        unspentResponse = unspent.append("]}").toString();
+
+        StringBuilder transaction = new StringBuilder("{\"jsonrpc\": \"2.0\", \"id\": 1, \"result\": {\"blockhash\": \"")
+                .append(txHash(-1)).append("\", \"blocktime\": 1590000000, \"confirmations\": 12, \"hash\": \"")
+                .append(txHash(-2)).append("\", \"hex\": \"").append(hex(size * 150)).append("\", \"locktime\": 0, ")
+                .append("\"size\": ").append(size * 150).append(", \"vsize\": ").append(size * 150)
+                .append(", \"weight\": ").append(size * 600).append(", \"time\": 1590000000, \"txid\": \"")
+                .append(txHash(-2)).append("\", \"version\": 2, \"vin\": [");
+        for (int i = 0; i < size; i++) {
+            transaction.append(i == 0 ? "" : ", ").append("{\"txid\": \"").append(txHash(i)).append("\", \"vout\": ")
+                    .append(i % 4).append(", \"scriptSig\": {\"asm\": \"\", \"hex\": \"\"}, \"txinwitness\": [\"")
+                    .append(hex(72)).append("\", \"").append(hex(33)).append("\"], \"sequence\": 4294967295}");
+        }
+        transaction.append("], \"vout\": [");
+        for (int i = 0; i < size; i++) {
+            transaction.append(i == 0 ? "" : ", ").append("{\"value\": 0.").append(1000 + i).append(", \"n\": ")
+                    .append(i).append(", \"scriptPubKey\": {\"asm\": \"0 ").append(hex(20)).append("\", \"hex\": \"0014")
+                    .append(hex(20)).append("\", \"reqSigs\": 1, \"type\": \"witness_v0_keyhash\", \"addresses\": ")
+                    .append("[\"bc1qar0srrr7xfkvy5l643lydnw9re59gtzzwf5mdq\"]}}");
+        }
+        verboseTransactionResponse = transaction.append("]}}").toString();
+    }
+
+    @Setup(Level.Invocation)
+    public void createPipeline() {
+        pipeline = new RequestPipeline(new NoopTransport(), (method, params) -> { });
+    }
+
+    @Benchmark
+    public Object getHistory() throws Exception {
+        return read(historyType, historyResponse);
+    }
+
+    @Benchmark
+    public Object listUnspent() throws Exception {
+        return read(unspentType, unspentResponse);
+    }
+
+    @Benchmark
+    public Object verboseTransaction() throws Exception {
+        return read(BlockchainTransactionGetVerboseResponse.class, verboseTransactionResponse);
+    }
+
+    private Object read(Type returnType, String response) throws Exception {
+        CompletableFuture<Object> future = pipeline.sendRequest("test", null, returnType);
+        pipeline.onMessage(response);
+        return future.get();
+    }
+
+    private static String txHash(int i) {
+        String hex = Integer.toHexString(i);
+        StringBuilder hash = new StringBuilder(64);
+        while (hash.length() + hex.length() < 64) {
+            hash.append('a');
+        }
+        return hash.append(hex).toString();
+    }
+
+    private static String hex(int bytes) {
+        StringBuilder hex = new StringBuilder(bytes * 2);
+        for (int i = 0; i < bytes; i++) {
+            hex.append(Character.forDigit(i >> 4 & 0xf, 16)).append(Character.forDigit(i & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
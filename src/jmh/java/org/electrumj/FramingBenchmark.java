@@ -0,0 +1,59 @@
+package org.electrumj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Framing of the requests into newline delimited lines, by AppendNewLineOutputStream and by the LineWriter of the
+ * blocking transport, writing to a stream that discards them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramingBenchmark {
+
+    // Size of the request: a typical request, a big batch.
+    @Param({"100", "100000"})
+    public int size;
+
+    private byte[] request;
+    private AppendNewLineOutputStream appendNewLineOutputStream;
+    private LineWriter lineWriter;
+
+    @Setup
+    public void createRequest() {
+        String prefix = "{\"jsonrpc\": \"2.0\", \"id\": 1, \"method\": \"blockchain.scripthash.get_balance\", \"params\": [\"";
+        request = Arrays.copyOf(prefix.getBytes(StandardCharsets.UTF_8), size);
+        Arrays.fill(request, prefix.length(), size, (byte) 'a');
+        appendNewLineOutputStream = new AppendNewLineOutputStream(OutputStream.nullOutputStream());
+        lineWriter = new LineWriter(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void appendNewLineOutputStream() throws IOException {
+        appendNewLineOutputStream.write(request);
+    }
+
+    @Benchmark
+    public void lineWriter() throws IOException {
+        lineWriter.send(request);
+    }
+}
@@ -0,0 +1,18 @@
+package org.electrumj;
+
+/**
+ * Discards the messages sent, to feed a RequestPipeline with responses directly.
+ */
+class NoopTransport implements Transport {
+    @Override
+    public void open(Listener listener) {
+    }
+
+    @Override
+    public void send(byte[] message) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
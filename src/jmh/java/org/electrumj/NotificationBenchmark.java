@@ -0,0 +1,60 @@
+package org.electrumj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the notifications read from the connection, from the line to the DTO passed to the listeners, the way
+ * ElectrumClient handles them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotificationBenchmark {
+
+    private static final String HEADER_NOTIFICATION = "{\"jsonrpc\": \"2.0\", \"method\": \"blockchain.headers.subscribe\", "
+            + "\"params\": [{\"hex\": \"00000020" + "ab".repeat(76) + "\", \"height\": 630000}]}";
+    private static final String SCRIPTHASH_NOTIFICATION = "{\"jsonrpc\": \"2.0\", \"method\": \"blockchain.scripthash.subscribe\", "
+            + "\"params\": [\"8b01df4e368ea28f8dc0423bcf7a4923e3a12d307c875e47a0cfbf90b5c39161\", "
+            + "\"9f3b3b6a4c1c1e2f8a7d6c5b4a39281706f5e4d3c2b1a09f8e7d6c5b4a392817\"]}";
+
+    private RequestPipeline pipeline;
+    // The last notification parsed, returned so it isn't optimized away.
+    private Object notification;
+
+    @Setup
+    public void createPipeline() {
+        pipeline = new RequestPipeline(new NoopTransport(), (method, params) -> {
+            if ("blockchain.headers.subscribe".equals(method)) {
+                notification = ElectrumJson.readHeaderNotification(params);
+            } else {
+                notification = ElectrumJson.readScripthashNotification(params);
+            }
+        });
+    }
+
+    @Benchmark
+    public Object header() {
+        pipeline.onMessage(HEADER_NOTIFICATION);
+        return notification;
+    }
+
+    @Benchmark
+    public Object scripthash() {
+        pipeline.onMessage(SCRIPTHASH_NOTIFICATION);
+        return notification;
+    }
+}
@@ -0,0 +1,189 @@
+package org.electrumj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second through an ElectrumClient, from the request method to the decoded result, against an in-process
+ * server answering every request right away over a loopback TCP connection. TLS is left out, so the measure is the
+ * cost of the client: writing, framing, reading and matching the responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineThroughputBenchmark {
+
+    // Requests in flight at once in the pipelined benchmark.
+    private static final int PIPELINE_DEPTH = 100;
+
+    private LoopbackServer server;
+    private ElectrumClient client;
+
+    @Setup
+    public void open() throws Exception {
+        server = new LoopbackServer();
+        client = new ElectrumClient(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort());
+        client.setTransportFactory(() -> new PlainSocketTransport(client.getServerHostnameOrIp(), client.getServerPort()));
+        client.openConnection();
+    }
+
+    @TearDown
+    public void close() throws IOException {
+        client.closeConnection();
+        server.close();
+    }
+
+    /**
+     * One request at a time: bound by the round trip.
+     */
+    @Benchmark
+    public Double sequential() throws Exception {
+        return client.blockchainEstimatefeeAsync(6).get();
+    }
+
+    /**
+     * PIPELINE_DEPTH requests sent back-to-back before waiting for their responses.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public Double pipelined() throws Exception {
+        List<CompletableFuture<Double>> futures = new ArrayList<>(PIPELINE_DEPTH);
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            futures.add(client.blockchainEstimatefeeAsync(6));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+        return futures.get(PIPELINE_DEPTH - 1).get();
+    }
+
+    /**
+     * Answers every request with the same result, writing the responses as the requests are read and flushing them
+     * when no more requests are waiting. Only knows about single requests, not batches.
+     */
+    private static class LoopbackServer {
+        private final ServerSocket serverSocket;
+
+        private LoopbackServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::accept, "loopback-server");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    Thread connection = new Thread(() -> serve(socket), "loopback-connection");
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException e) {
+                // Closed.
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    // The client writes the id without spaces.
+                    int start = line.indexOf("\"id\":") + 5;
+                    int end = start;
+                    while (Character.isDigit(line.charAt(end))) {
+                        end++;
+                    }
+                    String response = "{\"jsonrpc\":\"2.0\",\"result\":0.0001,\"id\":" + line.substring(start, end) + "}\n";
+                    out.write(response.getBytes(StandardCharsets.UTF_8));
+                    if (!in.ready()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // Closed.
+            }
+        }
+
+        private void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Transport over a plain TCP socket, framed like the TLS transports.
+     */
+    private static class PlainSocketTransport implements Transport {
+        private final String host;
+        private final int port;
+        private Socket socket;
+        private LineWriter writer;
+
+        private PlainSocketTransport(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public void open(Listener listener) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            writer = new LineWriter(socket.getOutputStream());
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Thread reader = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        listener.onMessage(line);
+                    }
+                    listener.onClosed(new IOException("Connection closed by the server"));
+                } catch (IOException e) {
+                    listener.onClosed(e);
+                }
+            }, "loopback-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        @Override
+        public void send(byte[] message) throws IOException {
+            writer.send(message);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.electrumj;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the requests in flight on a connection, adapting the limit to what the server sustains.
+ *
+ * ElectrumX charges each session for the resources its requests use. Past a soft limit it delays the responses,
+ * past a hard limit it disconnects the session. The limiter thus watches the response latency: while the recent
+ * latency stays close to the long term one, the limit grows; when the server starts delaying responses, the ratio of
+ * the two shrinks the limit, like Netflix's gradient limiter. An error telling the session is using too many
+ * resources halves the limit.
+ *
+ * Requests are weighted by their cost on the server: a "blockchain.scripthash.get_history" weighs more than a
+ * "server.ping". The limit applies to the sum of the weights of the requests in flight. Since the server's delays
+ * grow the latency, limiting the requests in flight also limits the request rate.
+ *
+ * Sample usage:
+ * <pre>
+ *     ElectrumClient client = new ElectrumClient(ElectrumServers.EMZY_URL);
+ *     client.setAdaptiveLimiter(new AdaptiveLimiter());
+ *     client.openConnection();
+ * </pre>
+ */
+public class AdaptiveLimiter {
+
+    public static final double DEFAULT_INITIAL_LIMIT = 20;
+    public static final double DEFAULT_MIN_LIMIT = 1;
+    public static final double DEFAULT_MAX_LIMIT = 1000;
+
+    // JSON-RPC error codes aiorpcx, the RPC layer of ElectrumX, answers with when a session is throttled.
+    static final int EXCESSIVE_RESOURCE_USAGE = -101;
+    static final int SERVER_BUSY = -102;
+
+    // Weight of the latest sample in the short and long term latency averages.
+    private static final double SHORT_RTT_ALPHA = 0.1;
+    private static final double LONG_RTT_ALPHA = 0.002;
+    // Weight of a new limit computed from the latency.
+    private static final double SMOOTHING = 0.2;
+    // Below this gradient the server is considered to be delaying the responses.
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double DEFAULT_WEIGHT = 1;
+
+    private final double minLimit;
+    private final double maxLimit;
+    private final Map<String, Double> weights = new ConcurrentHashMap<>();
+
+    // Guarded by this.
+    private double limit;
+    private double inFlight;
+    private double shortRttNanos = -1;
+    private double longRttNanos = -1;
+    private long overloadCount;
+
+    /**
+     * Creates a limiter starting at DEFAULT_INITIAL_LIMIT, between DEFAULT_MIN_LIMIT and DEFAULT_MAX_LIMIT.
+     */
+    public AdaptiveLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Creates a limiter with the given parameters.
+     * @param initialLimit Weighted requests allowed in flight at first
+     * @param minLimit The limit never goes below this
+     * @param maxLimit The limit never goes above this
+     */
+    public AdaptiveLimiter(double initialLimit, double minLimit, double maxLimit) {
+        assert 0 < minLimit && minLimit <= initialLimit && initialLimit <= maxLimit;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        // Relative costs of the requests on an ElectrumX server.
+        weights.put("server.ping", 0.1);
+        weights.put("server.version", 0.1);
+        weights.put("server.banner", 0.1);
+        weights.put("server.donation_address", 0.1);
+        weights.put("blockchain.relayfee", 0.1);
+        weights.put("blockchain.block.header", 0.5);
+        weights.put("blockchain.scripthash.get_balance", 2.0);
+        weights.put("blockchain.scripthash.subscribe", 2.0);
+        weights.put("blockchain.transaction.get", 2.0);
+        weights.put("blockchain.transaction.get_merkle", 2.0);
+        weights.put("blockchain.transaction.id_from_pos", 2.0);
+        weights.put("blockchain.transaction.broadcast", 2.0);
+        weights.put("blockchain.scripthash.get_history", 4.0);
+        weights.put("blockchain.scripthash.listunspent", 4.0);
+        weights.put("blockchain.scripthash.get_mempool", 4.0);
+        weights.put("blockchain.block.headers", 4.0);
+    }
+
+    /**
+     * Sets the weight of a method, relative to the default weight of 1.
+     * @param method The JSON-RPC method, e.g. "blockchain.scripthash.get_history"
+     * @param weight
+     */
+    public void setMethodWeight(String method, double weight) {
+        assert weight > 0;
+        weights.put(method, weight);
+    }
+
+    /**
+     * The weight of a method, 1 if not set.
+     * @param method
+     */
+    public double getMethodWeight(String method) {
+        return weights.getOrDefault(method, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * The current limit of the sum of the weights of the requests in flight.
+     */
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    /**
+     * The sum of the weights of the requests in flight.
+     */
+    public synchronized double getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Number of responses telling the session is throttled.
+     */
+    public synchronized long getOverloadCount() {
+        return overloadCount;
+    }
+
+    /**
+     * Takes room for requests of the given weight, if the limit allows it. Requests are always allowed when none is
+     * in flight, so a batch heavier than the limit still goes through.
+     * @return whether the requests can be sent
+     */
+    synchronized boolean tryAcquire(double weight) {
+        if (inFlight > 0 && inFlight + weight > limit) {
+            return false;
+        }
+        inFlight += weight;
+        return true;
+    }
+
+    /**
+     * Gives back the room taken by a request once answered, and adapts the limit.
+     * @param weight The weight of the request
+     * @param latencyNanos Time the server took to answer, or a negative value if the request was not answered
+     * @param overloaded Whether the server answered that the session is throttled
+     */
+    synchronized void release(double weight, long latencyNanos, boolean overloaded) {
+        // Rounding errors of the sum must not leave phantom requests in flight.
+        inFlight = inFlight - weight < 1e-9 ? 0 : inFlight - weight;
+        if (overloaded) {
+            overloadCount++;
+            limit = Math.max(minLimit, limit / 2);
+            return;
+        }
+        if (latencyNanos < 0) {
+            return;
+        }
+        if (shortRttNanos < 0) {
+            shortRttNanos = latencyNanos;
+            longRttNanos = latencyNanos;
+            return;
+        }
+        shortRttNanos += SHORT_RTT_ALPHA * (latencyNanos - shortRttNanos);
+        longRttNanos += LONG_RTT_ALPHA * (latencyNanos - longRttNanos);
+        if (longRttNanos > 2 * shortRttNanos) {
+            // The latency dropped for good, e.g. the server's load went down: don't compare with the old one.
+            longRttNanos = 2 * shortRttNanos;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1, longRttNanos / shortRttNanos));
+        // Room for some queueing on the server, growing slowly with the limit.
+        double headroom = Math.sqrt(limit);
+        double newLimit = limit * gradient + headroom;
+        if (newLimit > limit && inFlight + weight < limit / 2) {
+            // Not using the current limit: no evidence the server sustains more.
+            return;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+}
@@ -7,15 +7,35 @@ import java.io.OutputStream;
 /**
  * OutputStream wrapper that appends a '\n' char after each write invocation.
  * Electrumx expects a '\n' char after each request.
+ *
+ * The bytes and the '\n' are copied into a buffer and written with a single write to the underlying stream, instead
+ * of FilterOutputStream's byte by byte writes. Not thread-safe.
  */
 public class AppendNewLineOutputStream extends FilterOutputStream {
+
+    private static final int INITIAL_BUFFER_CAPACITY = 8 * 1024;
+    // A buffer grown bigger than this for a huge write is not kept around once written.
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 1024 * 1024;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_CAPACITY];
+
     public AppendNewLineOutputStream(OutputStream out) {
         super(out);
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        super.write(b, off, len);
-        write('\n');
+        if (len + 1 > buffer.length) {
+            buffer = new byte[Math.max(buffer.length * 2, len + 1)];
+        }
+        System.arraycopy(b, off, buffer, 0, len);
+        buffer[len] = '\n';
+        try {
+            out.write(buffer, 0, len + 1);
+        } finally {
+            if (buffer.length > MAX_RETAINED_BUFFER_CAPACITY) {
+                buffer = new byte[INITIAL_BUFFER_CAPACITY];
+            }
+        }
     }
 }
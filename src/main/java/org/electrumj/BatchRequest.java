@@ -0,0 +1,70 @@
+package org.electrumj;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builder of a JSON-RPC batch: the requests added to it are sent together as a single JSON-RPC array, in one write,
+ * and the server answers them with a single response array.
+ *
+ * Sample usage:
+ * <pre>
+ *     BatchRequest batch = client.batchRequest();
+ *     CompletableFuture&lt;BlockchainScripthashGetBalanceResponse&gt; balance = batch.add("blockchain.scripthash.get_balance", params, BlockchainScripthashGetBalanceResponse.class);
+ *     CompletableFuture&lt;Double&gt; relayfee = batch.add("blockchain.relayfee", new HashMap&lt;&gt;(), Double.class);
+ *     batch.send();
+ * </pre>
+ *
+ * The future returned by each add invocation completes once send is invoked and the server answers that request,
+ * either with its result or with its own error. With a request timeout set on the client, or a per-call timeout around
+ * batchRequest, the futures not answered in time fail with a TimeoutException.
+ */
+public class BatchRequest {
+
+    private final RequestPipeline requestPipeline;
+    // Time the responses have to arrive, or 0 for no deadline.
+    private final long timeoutMillis;
+    private final List<RequestPipeline.Request> requests = new ArrayList<>();
+    private boolean sent = false;
+
+    BatchRequest(RequestPipeline requestPipeline, long timeoutMillis) {
+        this.requestPipeline = requestPipeline;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Adds a request to the batch.
+     * @param method The JSON-RPC method, e.g. "blockchain.scripthash.get_balance"
+     * @param params The named params of the request
+     * @param returnType The type the result is converted to
+     * @return a future completed with the result of this request
+     */
+    public <T> CompletableFuture<T> add(String method, Map<String,Object> params, Type returnType) {
+        assert !sent;
+        RequestPipeline.Request request = new RequestPipeline.Request(method, params, returnType);
+        requests.add(request);
+        // Completed with the result read as returnType, which T stands for.
+        @SuppressWarnings("unchecked")
+        CompletableFuture<T> future = (CompletableFuture<T>) request.future;
+        return future;
+    }
+
+    /**
+     * Number of requests added to the batch.
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * Sends all the requests added to the batch, in one write.
+     */
+    public void send() {
+        assert !sent;
+        sent = true;
+        requestPipeline.sendBatch(requests, timeoutMillis);
+    }
+}
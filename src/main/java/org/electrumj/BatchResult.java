@@ -0,0 +1,55 @@
+package org.electrumj;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * The outcome of one element of a batch request: either the result sent by the server or the error the element
+ * failed with. A failing element does not fail the rest of the batch.
+ */
+public class BatchResult<T> {
+
+    private final T result;
+    private final Throwable error;
+
+    private BatchResult(T result, Throwable error) {
+        this.result = result;
+        this.error = error;
+    }
+
+    static <T> BatchResult<T> success(T result) {
+        return new BatchResult<>(result, null);
+    }
+
+    static <T> BatchResult<T> failure(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return new BatchResult<>(null, error);
+    }
+
+    /**
+     * Whether the server answered this element with a result rather than an error.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * The result sent by the server, or null if the element failed.
+     */
+    public T getResult() {
+        return result;
+    }
+
+    /**
+     * The error the element failed with, e.g. a JsonRpcClientException sent by the server, or null if it succeeded.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? "BatchResult(result=" + result + ")" : "BatchResult(error=" + error + ")";
+    }
+}
@@ -0,0 +1,256 @@
+package org.electrumj;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An 80-byte block header, kept in its serialized form. The fields are read from the bytes when asked for and the
+ * block hash is computed once, on first use.
+ *
+ * A header can be a view over a slice of a larger buffer, e.g. the concatenated headers returned by
+ * "blockchain.block.headers", so a chunk of headers is decoded into a single array and never copied.
+ *
+ * Sample usage:
+ * <pre>
+ *     BlockHeader tip = BlockHeader.fromHex(client.blockchainHeadersSubscribe().getHex());
+ *     List&lt;BlockHeader&gt; headers = BlockHeader.fromConcatenatedHex(client.blockchainBlockHeaders(0, 2016).getHex());
+ *     boolean linked = headers.get(1).linksTo(headers.get(0));
+ * </pre>
+ */
+public final class BlockHeader {
+
+    public static final int SIZE = 80;
+
+    private static final int PREV_HASH_OFFSET = 4;
+    private static final int MERKLE_ROOT_OFFSET = 36;
+    private static final int TIME_OFFSET = 68;
+    private static final int BITS_OFFSET = 72;
+    private static final int NONCE_OFFSET = 76;
+
+    // Not copied, must not be modified once the header is created.
+    private final byte[] bytes;
+    private final int offset;
+    // Block hash in internal byte order, computed on first use.
+    private volatile byte[] hash;
+
+    /**
+     * Creates a header backed by the given 80 bytes, which are not copied.
+     * @param header
+     */
+    public BlockHeader(byte[] header) {
+        this(header, 0);
+    }
+
+    /**
+     * Creates a header backed by the 80 bytes at the given offset of the buffer, which is not copied.
+     * @param headers Buffer holding the header, e.g. concatenated headers
+     * @param offset Offset of the header in the buffer
+     */
+    public BlockHeader(byte[] headers, int offset) {
+        if (offset < 0 || offset + SIZE > headers.length) {
+            throw new IllegalArgumentException("No 80-byte header at offset " + offset + " of a " + headers.length + " bytes buffer");
+        }
+        this.bytes = headers;
+        this.offset = offset;
+    }
+
+    /**
+     * Decodes a header sent by the server in hex, e.g. BlockchainHeader.getHex().
+     * @param hex
+     */
+    public static BlockHeader fromHex(String hex) {
+        if (hex.length() != 2 * SIZE) {
+            throw new IllegalArgumentException("Not an 80-byte header: " + hex.length() + " hex chars");
+        }
+        byte[] header = new byte[SIZE];
+        Util.hexToBytes(hex, header, 0);
+        return new BlockHeader(header);
+    }
+
+    /**
+     * Decodes concatenated headers, e.g. BlockchainBlockHeadersResponse.getHex(), into a single array. The headers
+     * returned are views over that array.
+     * @param hex
+     */
+    public static List<BlockHeader> fromConcatenatedHex(String hex) {
+        if (hex.length() % (2 * SIZE) != 0) {
+            throw new IllegalArgumentException("Not a multiple of 80-byte headers: " + hex.length() + " hex chars");
+        }
+        byte[] headers = new byte[hex.length() / 2];
+        Util.hexToBytes(hex, headers, 0);
+        return fromConcatenated(headers);
+    }
+
+    /**
+     * Returns views over the concatenated 80-byte headers of the buffer, which is not copied.
+     * @param headers
+     */
+    public static List<BlockHeader> fromConcatenated(byte[] headers) {
+        if (headers.length % SIZE != 0) {
+            throw new IllegalArgumentException("Not a multiple of 80-byte headers: " + headers.length + " bytes");
+        }
+        BlockHeader[] views = new BlockHeader[headers.length / SIZE];
+        return new AbstractList<BlockHeader>() {
+            @Override
+            public BlockHeader get(int index) {
+                BlockHeader view = views[index];
+                if (view == null) {
+                    view = new BlockHeader(headers, index * SIZE);
+                    views[index] = view;
+                }
+                return view;
+            }
+
+            @Override
+            public int size() {
+                return views.length;
+            }
+        };
+    }
+
+    public int getVersion() {
+        return readInt(0);
+    }
+
+    /**
+     * Hash of the previous block, in internal byte order.
+     */
+    public byte[] getPrevHash() {
+        return Arrays.copyOfRange(bytes, offset + PREV_HASH_OFFSET, offset + PREV_HASH_OFFSET + Sha256Hasher.HASH_SIZE);
+    }
+
+    /**
+     * Merkle root of the block's transactions, in internal byte order.
+     */
+    public byte[] getMerkleRoot() {
+        return Arrays.copyOfRange(bytes, offset + MERKLE_ROOT_OFFSET, offset + MERKLE_ROOT_OFFSET + Sha256Hasher.HASH_SIZE);
+    }
+
+    /**
+     * Block timestamp, in seconds since the epoch.
+     */
+    public long getTime() {
+        return readInt(TIME_OFFSET) & 0xffffffffL;
+    }
+
+    /**
+     * Difficulty target, in compact form.
+     */
+    public long getBits() {
+        return readInt(BITS_OFFSET) & 0xffffffffL;
+    }
+
+    public long getNonce() {
+        return readInt(NONCE_OFFSET) & 0xffffffffL;
+    }
+
+    /**
+     * Hash of the block, in internal byte order.
+     */
+    public byte[] getHash() {
+        return hash().clone();
+    }
+
+    /**
+     * Hash of the block in hex, as displayed by block explorers, i.e. in reverse byte order.
+     */
+    public String getHashHex() {
+        byte[] hash = hash();
+        char[] hex = new char[2 * Sha256Hasher.HASH_SIZE];
+        for (int i = 0; i < Sha256Hasher.HASH_SIZE; i++) {
+            int b = hash[Sha256Hasher.HASH_SIZE - 1 - i] & 0xff;
+            hex[2 * i] = Character.forDigit(b >>> 4, 16);
+            hex[2 * i + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Whether this header's prevHash is the hash of the given header.
+     * @param previous
+     */
+    public boolean linksTo(BlockHeader previous) {
+        return HeaderStore.linksTo(bytes, offset, previous.hash());
+    }
+
+    /**
+     * Returns a copy of the 80 bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(bytes, offset, offset + SIZE);
+    }
+
+    /**
+     * Copies the 80 bytes into dst.
+     */
+    public void copyTo(byte[] dst, int dstOffset) {
+        System.arraycopy(bytes, offset, dst, dstOffset, SIZE);
+    }
+
+    /**
+     * The 80 bytes in hex, as sent by the server.
+     */
+    public String toHex() {
+        char[] hex = new char[2 * SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            int b = bytes[offset + i] & 0xff;
+            hex[2 * i] = Character.forDigit(b >>> 4, 16);
+            hex[2 * i + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    // Backing buffer and offset, for readers that work on the bytes in place.
+    byte[] array() {
+        return bytes;
+    }
+
+    int arrayOffset() {
+        return offset;
+    }
+
+    /**
+     * The block hash, not copied.
+     */
+    byte[] hash() {
+        byte[] h = hash;
+        if (h == null) {
+            h = new byte[Sha256Hasher.HASH_SIZE];
+            Sha256Hasher.forCurrentThread().sha256d(bytes, offset, SIZE, h, 0);
+            hash = h;
+        }
+        return h;
+    }
+
+    private int readInt(int fieldOffset) {
+        int position = offset + fieldOffset;
+        return (bytes[position] & 0xff)
+                | (bytes[position + 1] & 0xff) << 8
+                | (bytes[position + 2] & 0xff) << 16
+                | (bytes[position + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BlockHeader)) {
+            return false;
+        }
+        BlockHeader other = (BlockHeader) o;
+        return Arrays.equals(bytes, offset, offset + SIZE, other.bytes, other.offset, other.offset + SIZE);
+    }
+
+    @Override
+    public int hashCode() {
+        // The bytes are already a hash: the start of the merkle root is as good as any.
+        return readInt(MERKLE_ROOT_OFFSET);
+    }
+
+    @Override
+    public String toString() {
+        return "BlockHeader(hash=" + getHashHex() + ")";
+    }
+}
@@ -4,6 +4,12 @@ import org.electrumj.dto.BlockchainHeader;
 
 /**
  * Classes interested in listening to new blockchain headers should implement this interface.
+ *
+ * A listener set on an ElectrumClient is called on a thread of that client, one header at a time, never on the
+ * thread reading the connection: it can send requests and wait for their responses, but the next notifications
+ * wait for it to return. A listener added to a NotificationDispatcher is called on the dispatcher's threads.
+ * Blocking requests made in a dependent stage of a request future, which runs on the thread reading the
+ * connection, fail with an IllegalStateException.
  */
 public interface BlockchainHeadersListener {
     void notifyNewBlockchainHeader(final BlockchainHeader header);
@@ -4,6 +4,12 @@ import org.electrumj.dto.BlockchainScripthashStatus;
 
 /**
  * Classes interested in listening to new scripthashes status changes should implement this interface.
+ *
+ * A listener set on an ElectrumClient is called on a thread of that client, one status at a time in the order the
+ * server sent them, never on the thread reading the connection: it can e.g. fetch the history of the scripthash and
+ * wait for it, but the next notifications wait for it to return. A listener added to a NotificationDispatcher is
+ * called on the dispatcher's threads. Blocking requests made in a dependent stage of a request future, which runs
+ * on the thread reading the connection, fail with an IllegalStateException.
  */
 public interface BlockchainScripthashesListener {
     void notifyNewScripthashStatus(final BlockchainScripthashStatus status);
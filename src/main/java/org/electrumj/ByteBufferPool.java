@@ -0,0 +1,43 @@
+package org.electrumj;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of direct ByteBuffers, so connections opened and closed over time reuse the same native memory.
+ * Buffers are pooled by capacity: the TLS buffers of all connections created from the same SSLContext have the
+ * same size.
+ */
+class ByteBufferPool {
+
+    // Maximum number of idle buffers kept per capacity.
+    private static final int MAX_POOLED_PER_CAPACITY = 1024;
+
+    private final Map<Integer, Queue<ByteBuffer>> pooledBuffers = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a cleared direct buffer of exactly the given capacity.
+     */
+    ByteBuffer acquire(int capacity) {
+        Queue<ByteBuffer> queue = pooledBuffers.get(capacity);
+        ByteBuffer buffer = queue == null ? null : queue.poll();
+        return buffer == null ? ByteBuffer.allocateDirect(capacity) : buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used after releasing it.
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        Queue<ByteBuffer> queue = pooledBuffers.computeIfAbsent(buffer.capacity(), capacity -> new ConcurrentLinkedQueue<>());
+        if (queue.size() < MAX_POOLED_PER_CAPACITY) {
+            buffer.clear();
+            queue.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.electrumj;
+
+/**
+ * Receives the measures of what the connections do, per JSON-RPC method, e.g. to export them to a monitoring system.
+ * See JmxClientMetrics for an implementation exporting them through JMX.
+ *
+ * The methods are called on the threads sending the requests and reading the connections, for every request and
+ * notification, so implementations should be thread-safe, should not block, and should not allocate so they can
+ * stay enabled in production.
+ *
+ * A request is in flight from requestSent until responseReceived or requestFailed, exactly one of them is called.
+ * Requests that could not be sent at all, e.g. on a closed connection, are not reported.
+ * Sizes are in characters, which are bytes for the ASCII JSON sent by Electrum servers.
+ *
+ * Sample usage:
+ * <pre>
+ *     client.setMetrics(new JmxClientMetrics("wallet"));
+ * </pre>
+ */
+public interface ClientMetrics {
+
+    /**
+     * A request was written to the connection.
+     * @param method The JSON-RPC method
+     * @param bytes Size of the request
+     */
+    void requestSent(String method, int bytes);
+
+    /**
+     * The response of a request was read.
+     * @param method The JSON-RPC method
+     * @param latencyNanos Time between sending the request and reading its response
+     * @param bytes Size of the response
+     * @param error Whether the server answered with an error
+     */
+    void responseReceived(String method, long latencyNanos, int bytes, boolean error);
+
+    /**
+     * A request sent will not get its response: it timed out, was cancelled or the connection was lost.
+     * @param method The JSON-RPC method
+     */
+    void requestFailed(String method);
+
+    /**
+     * A notification was read.
+     * @param method The notification method, e.g. "blockchain.scripthash.subscribe"
+     * @param bytes Size of the notification
+     */
+    void notificationReceived(String method, int bytes);
+
+    /**
+     * The listeners of a notification are about to be called, on the listener thread of the client for the
+     * listeners set on the client, or on its own thread for the listeners of a NotificationDispatcher.
+     * @param method The notification method
+     * @param lagNanos Time between reading the notification and calling its listeners
+     */
+    void notificationDispatched(String method, long lagNanos);
+}
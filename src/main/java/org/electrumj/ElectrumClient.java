@@ -1,7 +1,6 @@
 package org.electrumj;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.googlecode.jsonrpc4j.JsonRpcClient;
+import com.fasterxml.jackson.core.JsonParser;
 import org.electrumj.dto.*;
 import org.electrumj.dto.transactionget.BlockchainTransactionGetVerboseResponse;
 import org.slf4j.Logger;
@@ -10,18 +9,42 @@ import org.slf4j.LoggerFactory;
 import javax.net.ssl.*;
 import java.io.*;
 import java.lang.reflect.Type;
-import java.nio.channels.SocketChannel;
 import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * ElectrumClient is the central class of this project.
  *
+ * Every request method has a blocking variant and an async variant (suffixed with "Async") that returns a
+ * CompletableFuture. Requests are pipelined: many requests can be in flight on the same connection and their
+ * responses are matched by JSON-RPC id. The "Batch" methods send one request per element of a collection as
+ * JSON-RPC batch arrays, and report a result or an error per element.
+ * Requests wait for their response as long as the connection is open, unless a request timeout is set, see
+ * setRequestTimeoutMillis and withTimeout.
+ *
  * Sample usage:
  * <pre>
  *     ElectrumClient client = new ElectrumClient("electrumx-core.1209k.com", 50002);
@@ -35,25 +58,82 @@ public class ElectrumClient {
 
     private static final Logger log = LoggerFactory.getLogger(ElectrumClient.class);
 
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    public static final long DEFAULT_MIN_RECONNECT_DELAY_MILLIS = 100;
+    public static final long DEFAULT_MAX_RECONNECT_DELAY_MILLIS = 30_000;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+    // Time the server has to answer the "server.version" handshake after connecting or reconnecting.
+    static final long HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    // Weight of the latest ping in the round trip time moving average.
+    private static final double RTT_EWMA_ALPHA = 0.2;
+    // Tracked status of a subscribed scripthash whose history is empty.
+    private static final String NO_STATUS = "";
+
     // The server hostname or ip to connect to
     private String serverHostnameOrIp;
     // The server port to connect to
     private int serverPort;
 
-    // Socket connection to the server.
-    private SSLSocket socket;
-    // OutputStrem to write into to send data to the server.
-    private OutputStream socketOutputStream;
-    // InputStream to read from to read data from the server.
-    private InputStream socketInputStream;
+    // Selector threads to use for a non-blocking connection, or null to use a blocking socket.
+    private SelectorPool selectorPool;
+    // Connection to the server, replaced when reconnecting.
+    private volatile Transport transport;
+    // Creates the transports instead of connecting to the server, in tests.
+    private Supplier<Transport> transportFactory;
 
     // Whether the socket connection is already established
-    boolean connectionOpened = false;
+    volatile boolean connectionOpened = false;
+
+    // Sends the requests and matches the responses read from the connection, replaced when reconnecting.
+    private volatile RequestPipeline requestPipeline;
+    // Maximum number of requests sent in a single JSON-RPC batch.
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    // Cache of the transactions fetched, possibly shared with other connections, or null.
+    private volatile TransactionCache transactionCache;
+    // Shares identical requests in flight, possibly with other connections, or null.
+    private volatile RequestCoalescer requestCoalescer;
+    // Time the response of a request has to arrive, or 0 to wait as long as the connection is open.
+    private volatile long requestTimeoutMillis = 0;
+    // Timeout of the requests sent by withTimeout on the current thread, or null outside of it.
+    private static final ThreadLocal<Long> callTimeoutMillis = new ThreadLocal<>();
 
     // Listener to inform to of new block headers
-    private BlockchainHeadersListener blockchainHeadersListener;
+    private volatile BlockchainHeadersListener blockchainHeadersListener;
     // Listener to inform to of changes of subscribed scripthashes.
-    private BlockchainScripthashesListener blockchainScripthashesListener;
+    private volatile BlockchainScripthashesListener blockchainScripthashesListener;
+    // Passes the notifications to more listeners, on its own threads, or null.
+    private volatile NotificationDispatcher notificationDispatcher;
+    // Calls blockchainHeadersListener and blockchainScripthashesListener, in order, off the thread reading the
+    // connection. Created on first use, shut down when closing the connection.
+    private ExecutorService listenerExecutor;
+    // Time connecting and the TLS handshake have to complete, or 0 to wait as long as the OS allows.
+    private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    // Whether the thread reading a blocking connection is a virtual thread, when supported.
+    private boolean useVirtualThreads = false;
+    // Limits the requests in flight, or null to send them all right away.
+    private AdaptiveLimiter adaptiveLimiter;
+    // Receives the measures of the requests and notifications, or null.
+    private ClientMetrics metrics;
+    // Whether the connection is opened again when lost, and the subscriptions replayed.
+    private boolean autoReconnect = false;
+    // Guards opening and closing the connection against a reconnection.
+    private final Object connectionLock = new Object();
+    // Set from the loss of the connection until the handshake on the new one succeeds.
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+    // Failed attempts since the connection was lost, to back off.
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
+    private final AtomicInteger reconnectCount = new AtomicInteger();
+    // Last status of each subscribed scripthash, NO_STATUS for an empty history. Only tracked with autoReconnect.
+    private final Map<String, String> subscribedScripthashes = new ConcurrentHashMap<>();
+    private volatile boolean headersSubscribed = false;
+    private volatile BlockchainHeader lastHeader;
+    // Round trip times of the pings sent by a KeepaliveScheduler.
+    private final LatencyHistogram rttHistogram = new LatencyHistogram();
+    // Only the thread reading the connection updates it. Negative until the first ping is answered.
+    private volatile double rttEwmaNanos = -1;
+    // Created on first use.
+    private volatile NotificationPublisher<BlockchainHeader> blockchainHeadersPublisher;
+    private volatile NotificationPublisher<BlockchainScripthashStatus> blockchainScripthashesPublisher;
 
     // Section constructors
 
@@ -76,6 +156,29 @@ public class ElectrumClient {
         this.serverPort = Integer.valueOf(serverHostnameOrIpAndPort.substring(serverHostnameOrIpAndPort.indexOf(":") + 1));
     }
 
+    /**
+     * Creates a new ElectrumClient with the given parameters, whose connection is non-blocking and served by the
+     * selector threads of the given pool instead of a dedicated thread.
+     * @param serverHostnameOrIp
+     * @param serverPort
+     * @param selectorPool
+     */
+    public ElectrumClient(String serverHostnameOrIp, int serverPort, SelectorPool selectorPool) {
+        this(serverHostnameOrIp, serverPort);
+        this.selectorPool = selectorPool;
+    }
+
+    /**
+     * Creates a new ElectrumClient with the given parameters, whose connection is non-blocking and served by the
+     * selector threads of the given pool instead of a dedicated thread.
+     * @param serverHostnameOrIpAndPort
+     * @param selectorPool
+     */
+    public ElectrumClient(String serverHostnameOrIpAndPort, SelectorPool selectorPool) {
+        this(serverHostnameOrIpAndPort);
+        this.selectorPool = selectorPool;
+    }
+
     // Section get server data
 
     public String getServerHostnameOrIp() {
@@ -87,6 +190,95 @@ public class ElectrumClient {
 
     // Section connection
 
+    /**
+     * Fails opening the connection with a java.net.SocketTimeoutException if connecting to the server and the TLS
+     * handshake take longer than the given time, DEFAULT_CONNECT_TIMEOUT_MILLIS by default. Must be set before
+     * opening the connection.
+     * @param connectTimeoutMillis The timeout, or 0 to wait as long as the OS allows
+     */
+    public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+        assert !connectionOpened;
+        assert connectTimeoutMillis >= 0 && connectTimeoutMillis <= Integer.MAX_VALUE;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * The timeout set with setConnectTimeoutMillis.
+     */
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Makes the thread reading the connection a virtual thread, when running on Java 21 or later, so a JVM holding
+     * many connections doesn't need a platform thread per connection. Has no effect on connections served by a
+     * SelectorPool, or on older JVMs. Must be set before opening the connection.
+     * See VirtualThreads to run the blocking calls themselves on virtual threads.
+     * @param useVirtualThreads
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        assert !connectionOpened;
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * Limits the requests in flight with the given limiter, adapting to the throttling of the server. Requests
+     * beyond the limit wait to be sent until responses make room for them. Must be set before opening the connection.
+     * @param adaptiveLimiter The limiter, not shared with other connections, or null to send all requests right away
+     */
+    public void setAdaptiveLimiter(AdaptiveLimiter adaptiveLimiter) {
+        assert !connectionOpened;
+        this.adaptiveLimiter = adaptiveLimiter;
+    }
+
+    /**
+     * The limiter set with setAdaptiveLimiter, or null.
+     */
+    public AdaptiveLimiter getAdaptiveLimiter() {
+        return adaptiveLimiter;
+    }
+
+    /**
+     * Reports every request, response and notification of the connection to the given metrics, e.g. a
+     * JmxClientMetrics shared with other connections. Must be set before opening the connection.
+     * @param metrics The metrics, or null to not measure anything
+     */
+    public void setMetrics(ClientMetrics metrics) {
+        assert !connectionOpened;
+        this.metrics = metrics;
+    }
+
+    /**
+     * The metrics set with setMetrics, or null.
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Opens the connection again when it is lost, e.g. closed by the server or by a network failure, and redoes the
+     * "server.version" handshake. Attempts are spaced by a random delay growing exponentially from
+     * DEFAULT_MIN_RECONNECT_DELAY_MILLIS to DEFAULT_MAX_RECONNECT_DELAY_MILLIS, so the clients of a server that
+     * restarts don't all come back at once.
+     *
+     * The subscriptions are then replayed, the scripthashes as JSON-RPC batches, and the listeners are only notified
+     * of the headers and the scripthash statuses that differ from the ones known before the connection was lost.
+     * Requests pending when the connection was lost, or sent while reconnecting, fail with an IOException.
+     * Must be set before opening the connection.
+     * @param autoReconnect
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        assert !connectionOpened;
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Number of times the connection was opened again after being lost.
+     */
+    public int getReconnectCount() {
+        return reconnectCount.get();
+    }
+
     /**
      * Opens the connection to the electrum server.*
      * @throws KeyManagementException
@@ -95,13 +287,44 @@ public class ElectrumClient {
      */
     public void openConnection() throws GeneralSecurityException, IOException {
         assert !connectionOpened;
-        SSLSocketFactory factory = createTrustAllCertsSocketFactory();
-        socket = (SSLSocket)factory.createSocket(this.getServerHostnameOrIp(), this.getServerPort());
-        socket.startHandshake();
-        socketOutputStream = new AppendNewLineOutputStream(socket.getOutputStream());
-        socketInputStream = socket.getInputStream();
-        SocketChannel channel = socket.getChannel();
-        connectionOpened = true;
+        synchronized (connectionLock) {
+            open();
+            connectionOpened = true;
+        }
+    }
+
+    void setTransportFactory(Supplier<Transport> transportFactory) {
+        this.transportFactory = transportFactory;
+    }
+
+    /**
+     * Opens a new transport and the pipeline reading it.
+     */
+    private void open() throws GeneralSecurityException, IOException {
+        Transport newTransport;
+        if (transportFactory != null) {
+            newTransport = transportFactory.get();
+        } else {
+            SSLContext sslContext = createTrustAllCertsSslContext();
+            newTransport = selectorPool == null
+                    ? new SocketTransport(this.getServerHostnameOrIp(), this.getServerPort(), sslContext.getSocketFactory(), useVirtualThreads, connectTimeoutMillis)
+                    : new NioTransport(this.getServerHostnameOrIp(), this.getServerPort(), sslContext, selectorPool, connectTimeoutMillis);
+        }
+        RequestPipeline newPipeline = new RequestPipeline(newTransport, this::handleNotification, adaptiveLimiter, metrics);
+        newTransport.open(new Transport.Listener() {
+            @Override
+            public void onMessage(String message) {
+                newPipeline.onMessage(message);
+            }
+
+            @Override
+            public void onClosed(IOException cause) {
+                newPipeline.onClosed(cause);
+                connectionLost(newPipeline, cause);
+            }
+        });
+        transport = newTransport;
+        requestPipeline = newPipeline;
     }
 
     /**
@@ -110,16 +333,153 @@ public class ElectrumClient {
      */
     public void closeConnection() throws IOException {
         assert connectionOpened;
-        socketInputStream.close();
-        //socket.getOutputStream().close();
-        socket.close();
+        synchronized (connectionLock) {
+            connectionOpened = false;
+            requestPipeline.close();
+            transport.close();
+        }
+        synchronized (this) {
+            if (listenerExecutor != null) {
+                // The notifications already read are still passed to the listeners.
+                listenerExecutor.shutdown();
+                listenerExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Closes the connection as if it was lost, e.g. because it stopped answering. With auto reconnect, a new
+     * connection is opened.
+     */
+    void recycleConnection(IOException cause) {
+        RequestPipeline lostPipeline = requestPipeline;
+        try {
+            transport.close();
+        } catch (IOException e) {
+            log.debug(e.getMessage(), e);
+        }
+        lostPipeline.onClosed(cause);
+        connectionLost(lostPipeline, cause);
+    }
+
+    private void connectionLost(RequestPipeline lostPipeline, IOException cause) {
+        if (!autoReconnect || !connectionOpened || lostPipeline != requestPipeline || !reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        log.info("Connection to " + serverHostnameOrIp + ":" + serverPort + " lost, reconnecting: " + cause.getMessage());
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        int attempt = Math.min(reconnectAttempts.getAndIncrement(), 20);
+        long maxDelay = Math.min(DEFAULT_MAX_RECONNECT_DELAY_MILLIS, DEFAULT_MIN_RECONNECT_DELAY_MILLIS << attempt);
+        long delay = ThreadLocalRandom.current().nextLong(DEFAULT_MIN_RECONNECT_DELAY_MILLIS, maxDelay + 1);
+        Reconnector.executor.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a new connection, does the handshake and replays the subscriptions. Schedules another attempt on failure.
+     */
+    private void reconnect() {
+        synchronized (connectionLock) {
+            if (!connectionOpened) {
+                reconnecting.set(false);
+                return;
+            }
+            try {
+                // The lost socket may be half closed.
+                transport.close();
+            } catch (IOException e) {
+                log.debug(e.getMessage(), e);
+            }
+            try {
+                open();
+            } catch (GeneralSecurityException | IOException e) {
+                log.warn("Could not reconnect to " + serverHostnameOrIp + ":" + serverPort + ": " + e.getMessage());
+                scheduleReconnect();
+                return;
+            }
+        }
+        try {
+            serverVersionAsync().get(HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Handshake with " + serverHostnameOrIp + ":" + serverPort + " failed: " + e.getMessage());
+            try {
+                transport.close();
+            } catch (IOException closeException) {
+                log.debug(closeException.getMessage(), closeException);
+            }
+            scheduleReconnect();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        reconnectAttempts.set(0);
+        reconnectCount.incrementAndGet();
+        reconnecting.set(false);
+        replaySubscriptions();
     }
 
     /**
-     * Creates a SSLSocketFactory that ignore certificate chain validation because Electrum servers use mostly
+     * Subscribes again to the headers and to the scripthashes, and notifies the listeners of what changed while
+     * disconnected.
+     */
+    private void replaySubscriptions() {
+        if (headersSubscribed) {
+            BlockchainHeader previous = lastHeader;
+            blockchainHeadersSubscribeAsync().thenAccept(header -> {
+                if (!header.equals(previous)) {
+                    notifyHeader(header, System.nanoTime());
+                }
+            }).exceptionally(e -> {
+                log.warn("Could not subscribe again to the headers: " + e.getMessage(), e);
+                return null;
+            });
+        }
+        Map<String, String> previousStatuses = new HashMap<>(subscribedScripthashes);
+        if (previousStatuses.isEmpty()) {
+            return;
+        }
+        blockchainScripthashSubscribeBatchAsync(previousStatuses.keySet()).thenAccept(statuses -> statuses.forEach((scripthash, status) -> {
+            if (!status.isSuccess()) {
+                log.warn("Could not subscribe again to " + scripthash + ": " + status.getError().getMessage(), status.getError());
+            } else if (!Objects.equals(previousStatuses.get(scripthash), trackedStatus(status.getResult()))) {
+                notifyScripthashStatus(new BlockchainScripthashStatus(scripthash, status.getResult()), System.nanoTime());
+            }
+        })).exceptionally(e -> {
+            log.warn("Could not subscribe again to the scripthashes: " + e.getMessage(), e);
+            return null;
+        });
+    }
+
+    private static String trackedStatus(String status) {
+        return status == null ? NO_STATUS : status;
+    }
+
+    /**
+     * Schedules the reconnections of all the clients, created on first use.
+     */
+    private static class Reconnector {
+        private static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "electrumj-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Whether the connection is opened and was not closed by the server or by a network failure.
+     */
+    public boolean isConnectionOpen() {
+        return connectionOpened && requestPipeline.isOpen();
+    }
+
+    /**
+     * Creates a SSLContext that ignore certificate chain validation because Electrum servers use mostly
      * self signed certificates.
      */
-    private static SSLSocketFactory createTrustAllCertsSocketFactory() throws NoSuchAlgorithmException, KeyManagementException {
+    private static SSLContext createTrustAllCertsSslContext() throws NoSuchAlgorithmException, KeyManagementException {
         // Create a trust manager that does not validate certificate chains
         TrustManager[] trustAllCerts = new TrustManager[] {new X509TrustManager() {
             public X509Certificate[] getAcceptedIssuers() {
@@ -134,15 +494,15 @@ public class ElectrumClient {
         // Install the all-trusting trust manager
         SSLContext sc = SSLContext.getInstance("SSL");
         sc.init(null, trustAllCerts, new java.security.SecureRandom());
-        return sc.getSocketFactory();
+        return sc;
     }
 
     /**
-     * Creates a SSLSocketFactory that does certificate chain validation.
+     * Creates a SSLContext that does certificate chain validation.
      * Currently not being used.
      */
-    private static SSLSocketFactory createSocketFactory() throws NoSuchAlgorithmException, KeyManagementException {
-        return (SSLSocketFactory)SSLSocketFactory.getDefault();
+    private static SSLContext createSslContext() throws NoSuchAlgorithmException {
+        return SSLContext.getDefault();
     }
 
     // Section notifications
@@ -178,36 +538,300 @@ public class ElectrumClient {
     }
 
     /**
-     * Starts a new thread that reads the socket input stream and invokes the associated listener when
-     * the server sends notifications.
+     * Sets a dispatcher the notifications are passed to, in addition to the listeners set on this connection. The
+     * listeners set on this connection are called on a single thread of this connection, the dispatcher's listeners
+     * on its own threads.
+     * @param notificationDispatcher
+     */
+    public void setNotificationDispatcher(NotificationDispatcher notificationDispatcher) {
+        this.notificationDispatcher = notificationDispatcher;
+    }
+
+    /**
+     * Removes the notificationDispatcher
+     */
+    public void cleanNotificationDispatcher() {
+        this.notificationDispatcher = null;
+    }
+
+    /**
+     * Returns the Flow.Publisher of the new block headers. Only the latest header waits for a subscriber that
+     * didn't request more items, the headers it didn't request meanwhile are skipped.
+     */
+    public synchronized NotificationPublisher<BlockchainHeader> getBlockchainHeadersPublisher() {
+        if (blockchainHeadersPublisher == null) {
+            blockchainHeadersPublisher = new NotificationPublisher<>(1, header -> Boolean.TRUE);
+        }
+        return blockchainHeadersPublisher;
+    }
+
+    /**
+     * Returns the Flow.Publisher of the status changes of the subscribed scripthashes. Only the latest status of
+     * each scripthash waits for a subscriber that didn't request more items, up to
+     * NotificationPublisher.DEFAULT_BUFFER_CAPACITY scripthashes.
+     */
+    public synchronized NotificationPublisher<BlockchainScripthashStatus> getBlockchainScripthashesPublisher() {
+        if (blockchainScripthashesPublisher == null) {
+            blockchainScripthashesPublisher = new NotificationPublisher<>(NotificationPublisher.DEFAULT_BUFFER_CAPACITY, BlockchainScripthashStatus::getScripthash);
+        }
+        return blockchainScripthashesPublisher;
+    }
+
+    /**
+     * Notifications sent by the server are now always passed to the associated listeners, read by the same thread
+     * that reads the responses, so calling this method is no longer needed.
+     * @deprecated notifications are dispatched as soon as the connection is opened
      */
+    @Deprecated
     public void listenNotifications() {
-        new Thread() {
-            @Override
-            public void run() {
-                BufferedReader in = new BufferedReader(new InputStreamReader(socketInputStream));
-                while (true) {
-                    try {
-                        String notificationJsonString = in.readLine();
-                        ObjectMapper mapper = new ObjectMapper();
-                        Map notificationMap = mapper.readValue(notificationJsonString, Map.class);
-                        if (notificationMap.get("method").equals("blockchain.headers.subscribe")) {
-                            Map blockchainHeadersSubscribeResponeMap = (Map) ((List)notificationMap.get("params")).get(0);
-                            BlockchainHeader header = new BlockchainHeader(blockchainHeadersSubscribeResponeMap);
-                            blockchainHeadersListener.notifyNewBlockchainHeader(header);
-                        } else if (notificationMap.get("method").equals("blockchain.scripthash.subscribe")) {
-                            List blockchainScripthashNotificationList = (List) notificationMap.get("params");
-                            BlockchainScripthashStatus status = new BlockchainScripthashStatus(blockchainScripthashNotificationList);
-                            blockchainScripthashesListener.notifyNewScripthashStatus(status);
-                        } else {
-                            throw new IllegalArgumentException("Unrecognized notification: " + notificationJsonString);
-                        }
-                    } catch (Exception e) {
-                        log.warn(e.getMessage(), e);
-                    }
+    }
+
+    /**
+     * Invoked by the request pipeline with each notification sent by the server, decoding the params straight from
+     * the parser.
+     */
+    private void handleNotification(String method, JsonParser params) {
+        long receivedNanos = System.nanoTime();
+        try {
+            if ("blockchain.headers.subscribe".equals(method)) {
+                BlockchainHeader header = ElectrumJson.readHeaderNotification(params);
+                TransactionCache cache = transactionCache;
+                if (cache != null) {
+                    cache.notifyNewTip(this, header.getHeight(), toBlockHeader(header));
+                }
+                notifyHeader(header, receivedNanos);
+            } else if ("blockchain.scripthash.subscribe".equals(method)) {
+                notifyScripthashStatus(ElectrumJson.readScripthashNotification(params), receivedNanos);
+            } else {
+                throw new IllegalArgumentException("Unrecognized notification: " + method);
+            }
+        } catch (Exception e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param receivedNanos When the notification was read, as given by System.nanoTime, to measure the dispatch lag
+     */
+    private void notifyHeader(BlockchainHeader header, long receivedNanos) {
+        if (headersSubscribed) {
+            lastHeader = header;
+        }
+        BlockchainHeadersListener listener = blockchainHeadersListener;
+        if (listener != null) {
+            callListener(() -> {
+                if (metrics != null) {
+                    metrics.notificationDispatched("blockchain.headers.subscribe", System.nanoTime() - receivedNanos);
+                }
+                listener.notifyNewBlockchainHeader(header);
+            });
+        }
+        NotificationDispatcher dispatcher = notificationDispatcher;
+        if (dispatcher != null) {
+            dispatcher.dispatchHeader(header, metrics, receivedNanos);
+        }
+        NotificationPublisher<BlockchainHeader> publisher = blockchainHeadersPublisher;
+        if (publisher != null) {
+            publisher.submit(header);
+        }
+    }
+
+    private void notifyScripthashStatus(BlockchainScripthashStatus status, long receivedNanos) {
+        subscribedScripthashes.replace(status.getScripthash(), trackedStatus(status.getStatus()));
+        BlockchainScripthashesListener listener = blockchainScripthashesListener;
+        if (listener != null) {
+            callListener(() -> {
+                if (metrics != null) {
+                    metrics.notificationDispatched("blockchain.scripthash.subscribe", System.nanoTime() - receivedNanos);
                 }
+                listener.notifyNewScripthashStatus(status);
+            });
+        }
+        NotificationDispatcher dispatcher = notificationDispatcher;
+        if (dispatcher != null) {
+            dispatcher.dispatchScripthashStatus(status, metrics, receivedNanos);
+        }
+        NotificationPublisher<BlockchainScripthashStatus> publisher = blockchainScripthashesPublisher;
+        if (publisher != null) {
+            publisher.submit(status);
+        }
+    }
+
+
+    /**
+     * Calls a listener set on this connection on the listener thread, so it can send requests and wait for their
+     * responses while the connection keeps being read.
+     */
+    private void callListener(Runnable call) {
+        ExecutorService executor = getListenerExecutor();
+        if (executor == null) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                log.warn(e.getMessage(), e);
             }
-        }.start();
+        });
+    }
+
+    /**
+     * Runs a task on the listener thread, after the listeners already called, e.g. a dependent stage of a request
+     * future that must not run on the thread reading the connection. Once the connection is closed, runs it on the
+     * calling thread.
+     */
+    void executeOnListenerThread(Runnable task) {
+        ExecutorService executor = getListenerExecutor();
+        if (executor != null) {
+            try {
+                executor.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile.
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Returns the listener executor, created on first use, or null if the connection is closed.
+     */
+    private synchronized ExecutorService getListenerExecutor() {
+        if (!connectionOpened) {
+            return null;
+        }
+        if (listenerExecutor == null) {
+            listenerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "electrumj-listener");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return listenerExecutor;
+    }
+
+
+    // Section transaction cache
+
+    /**
+     * Sets the cache "blockchain.transaction.get" requests are answered from when possible, e.g. a cache shared
+     * by all the connections of a pool. The confirmations of the cached verbose responses follow the
+     * "blockchain.headers.subscribe" notifications, so the connection should be subscribed to the headers.
+     * @param transactionCache
+     */
+    public void setTransactionCache(TransactionCache transactionCache) {
+        this.transactionCache = transactionCache;
+    }
+
+    /**
+     * Removes the transactionCache
+     */
+    public void cleanTransactionCache() {
+        this.transactionCache = null;
+    }
+
+    /**
+     * Returns the transaction cache, or null if none is set.
+     */
+    public TransactionCache getTransactionCache() {
+        return transactionCache;
+    }
+
+    /**
+     * The header notified, or null if missing or malformed: the cache then only compares the heights.
+     */
+    private static BlockHeader toBlockHeader(BlockchainHeader header) {
+        if (header.getHex() == null) {
+            return null;
+        }
+        try {
+            return BlockHeader.fromHex(header.getHex());
+        } catch (IllegalArgumentException e) {
+            log.debug(e.getMessage(), e);
+            return null;
+        }
+    }
+
+
+    // Section request coalescing
+
+    /**
+     * Sets the coalescer sharing the responses of identical requests in flight, e.g. a coalescer shared by all the
+     * connections of a pool.
+     * @param requestCoalescer
+     */
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Removes the requestCoalescer
+     */
+    public void cleanRequestCoalescer() {
+        this.requestCoalescer = null;
+    }
+
+    /**
+     * Returns the request coalescer, or null if none is set.
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+
+    // Section request deadlines
+
+    /**
+     * Sets the time the response of a request has to arrive. A request not answered in time fails with a
+     * java.util.concurrent.TimeoutException, the blocking methods throw it, and is forgotten: its response is dropped
+     * if it arrives later, and the connection stays open. Applies to the requests sent afterwards, see withTimeout
+     * to override it for some calls.
+     * @param requestTimeoutMillis The timeout, or 0 to wait for the responses as long as the connection is open
+     */
+    public void setRequestTimeoutMillis(long requestTimeoutMillis) {
+        assert requestTimeoutMillis >= 0;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    /**
+     * The timeout set with setRequestTimeoutMillis, 0 if none.
+     */
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Runs the call with the given timeout for the requests it sends on the current thread, instead of the one set
+     * with setRequestTimeoutMillis. Works with the blocking and the async methods, and the batch requests created
+     * within the call. Cancelling the future of an async request also forgets it.
+     * Sample usage: <code>String banner = client.withTimeout(200, () -&gt; client.serverBanner());</code>
+     * @param timeoutMillis The timeout, or 0 to wait for the responses as long as the connection is open
+     * @param call Sends the requests
+     * @return what the call returns
+     * @throws Throwable what the call throws, e.g. a TimeoutException
+     */
+    public <T> T withTimeout(long timeoutMillis, Call<T> call) throws Throwable {
+        assert timeoutMillis >= 0;
+        Long previous = callTimeoutMillis.get();
+        callTimeoutMillis.set(timeoutMillis);
+        try {
+            return call.call();
+        } finally {
+            callTimeoutMillis.set(previous);
+        }
+    }
+
+    private long timeoutMillis() {
+        Long timeout = callTimeoutMillis.get();
+        return timeout != null ? timeout : requestTimeoutMillis;
+    }
+
+    /**
+     * A call sending requests, see withTimeout.
+     */
+    public interface Call<T> {
+        T call() throws Throwable;
     }
 
 
@@ -220,11 +844,20 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public String blockchainBlockHeader(long height) throws Throwable {
-        Map params =new HashMap<String,Object>();
+        return await(blockchainBlockHeaderAsync(height));
+    }
+
+    /**
+     * Sends a "blockchain.block.header" request to the server with cp_height hardcoded to 0, without waiting for
+     * the response.
+     * @param height
+     * @return
+     */
+    public CompletableFuture<String> blockchainBlockHeaderAsync(long height) {
+        Map<String,Object> params = new HashMap<>();
         params.put("height", height);
         params.put("cp_height", 0);
-        String response = doRequest("blockchain.block.header", params, String.class);
-        return response;
+        return doRequestAsync("blockchain.block.header", params, String.class);
     }
 
     /**
@@ -235,12 +868,47 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public BlockchainBlockHeaderWithProofResponse blockchainBlockHeader(long height, long cpHeight) throws Throwable {
+        return await(blockchainBlockHeaderAsync(height, cpHeight));
+    }
+
+    /**
+     * Sends a "blockchain.block.header" request to the server, without waiting for the response.
+     * @param height
+     * @param cpHeight
+     * @return
+     */
+    public CompletableFuture<BlockchainBlockHeaderWithProofResponse> blockchainBlockHeaderAsync(long height, long cpHeight) {
         assert cpHeight > 0;
-        Map params = new HashMap<String,Object>();
+        Map<String,Object> params = new HashMap<>();
         params.put("height", height);
         params.put("cp_height", cpHeight);
-        BlockchainBlockHeaderWithProofResponse response = doRequest("blockchain.block.header", params, BlockchainBlockHeaderWithProofResponse.class);
-        return response;
+        return doRequestAsync("blockchain.block.header", params, BlockchainBlockHeaderWithProofResponse.class);
+    }
+
+    /**
+     * Sends a "blockchain.block.headers" request to the server with cp_height hardcoded to 0.
+     * @param startHeight
+     * @param count
+     * @return
+     * @throws Throwable
+     */
+    public BlockchainBlockHeadersResponse blockchainBlockHeaders(long startHeight, long count) throws Throwable {
+        return await(blockchainBlockHeadersAsync(startHeight, count));
+    }
+
+    /**
+     * Sends a "blockchain.block.headers" request to the server with cp_height hardcoded to 0, without waiting for
+     * the response.
+     * @param startHeight
+     * @param count
+     * @return
+     */
+    public CompletableFuture<BlockchainBlockHeadersResponse> blockchainBlockHeadersAsync(long startHeight, long count) {
+        Map<String,Object> params = new HashMap<>();
+        params.put("start_height", startHeight);
+        params.put("count", count);
+        params.put("cp_height", 0);
+        return doRequestAsync("blockchain.block.headers", params, BlockchainBlockHeadersResponse.class);
     }
 
     /**
@@ -252,13 +920,23 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public BlockchainBlockHeadersResponse blockchainBlockHeaders(long startHeight, long count, long cpHeight) throws Throwable {
+        return await(blockchainBlockHeadersAsync(startHeight, count, cpHeight));
+    }
+
+    /**
+     * Sends a "blockchain.block.headers" request to the server, without waiting for the response.
+     * @param startHeight
+     * @param count
+     * @param cpHeight
+     * @return
+     */
+    public CompletableFuture<BlockchainBlockHeadersResponse> blockchainBlockHeadersAsync(long startHeight, long count, long cpHeight) {
         assert cpHeight > 0;
-        Map params = new HashMap<String,Object>();
+        Map<String,Object> params = new HashMap<>();
         params.put("start_height", startHeight);
         params.put("count", count);
         params.put("cp_height", cpHeight);
-        BlockchainBlockHeadersResponse response = doRequest("blockchain.block.headers", params, BlockchainBlockHeadersResponse.class);
-        return response;
+        return doRequestAsync("blockchain.block.headers", params, BlockchainBlockHeadersResponse.class);
     }
 
     /**
@@ -268,10 +946,18 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public double blockchainEstimatefee(long targetNumberOfBlocks) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainEstimatefeeAsync(targetNumberOfBlocks));
+    }
+
+    /**
+     * Sends a "blockchain.estimatefee" request to the server, without waiting for the response.
+     * @param targetNumberOfBlocks
+     * @return
+     */
+    public CompletableFuture<Double> blockchainEstimatefeeAsync(long targetNumberOfBlocks) {
+        Map<String,Object> params = new HashMap<>();
         params.put("number", targetNumberOfBlocks);
-        double response = doRequest("blockchain.estimatefee", params, Double.class);
-        return response;
+        return doRequestAsync("blockchain.estimatefee", params, Double.class);
     }
 
     /**
@@ -280,9 +966,25 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public BlockchainHeader blockchainHeadersSubscribe() throws Throwable {
-        Map params = new HashMap<String,Object>();
-        BlockchainHeader response = doRequest("blockchain.headers.subscribe", params, BlockchainHeader.class);
-        return response;
+        return await(blockchainHeadersSubscribeAsync());
+    }
+
+    /**
+     * Sends a "blockchain.headers.subscribe" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<BlockchainHeader> blockchainHeadersSubscribeAsync() {
+        Map<String,Object> params = new HashMap<>();
+        CompletableFuture<BlockchainHeader> future = doRequestAsync("blockchain.headers.subscribe", params, BlockchainHeader.class);
+        TransactionCache cache = transactionCache;
+        if (cache != null) {
+            future.thenAccept(header -> cache.notifyNewTip(this, header.getHeight(), toBlockHeader(header)));
+        }
+        if (autoReconnect) {
+            headersSubscribed = true;
+            future.thenAccept(header -> lastHeader = header);
+        }
+        return future;
     }
 
     /**
@@ -291,8 +993,15 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public double blockchainRelayfee() throws Throwable {
-        double response = doRequest("blockchain.relayfee", Double.class);
-        return response;
+        return await(blockchainRelayfeeAsync());
+    }
+
+    /**
+     * Sends a "blockchain.relayfee" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<Double> blockchainRelayfeeAsync() {
+        return doRequestAsync("blockchain.relayfee", Double.class);
     }
 
     /**
@@ -302,10 +1011,18 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public BlockchainScripthashGetBalanceResponse blockchainScripthashGetBalance(String scripthash) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainScripthashGetBalanceAsync(scripthash));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.get_balance" request to the server, without waiting for the response.
+     * @param scripthash
+     * @return
+     */
+    public CompletableFuture<BlockchainScripthashGetBalanceResponse> blockchainScripthashGetBalanceAsync(String scripthash) {
+        Map<String,Object> params = new HashMap<>();
         params.put("scripthash", scripthash);
-        BlockchainScripthashGetBalanceResponse response = doRequest("blockchain.scripthash.get_balance", params, BlockchainScripthashGetBalanceResponse.class);
-        return response;
+        return doRequestAsync("blockchain.scripthash.get_balance", params, BlockchainScripthashGetBalanceResponse.class);
     }
 
     /**
@@ -315,11 +1032,19 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public List<BlockchainScripthashGetTxsResponseEntry> blockchainScripthashGetHistory(String scripthash) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainScripthashGetHistoryAsync(scripthash));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.get_history" request to the server, without waiting for the response.
+     * @param scripthash
+     * @return
+     */
+    public CompletableFuture<List<BlockchainScripthashGetTxsResponseEntry>> blockchainScripthashGetHistoryAsync(String scripthash) {
+        Map<String,Object> params = new HashMap<>();
         params.put("scripthash", scripthash);
         Type returnType = Util.getParametrizedListType(BlockchainScripthashGetTxsResponseEntry.class);
-        List<BlockchainScripthashGetTxsResponseEntry> response = (List<BlockchainScripthashGetTxsResponseEntry>) doRequest("blockchain.scripthash.get_history", params, returnType);
-        return response;
+        return doRequestAsync("blockchain.scripthash.get_history", params, returnType);
     }
 
     /**
@@ -329,11 +1054,19 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public List<BlockchainScripthashGetTxsResponseEntry> blockchainScripthashGetMempool(String scripthash) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainScripthashGetMempoolAsync(scripthash));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.get_mempool" request to the server, without waiting for the response.
+     * @param scripthash
+     * @return
+     */
+    public CompletableFuture<List<BlockchainScripthashGetTxsResponseEntry>> blockchainScripthashGetMempoolAsync(String scripthash) {
+        Map<String,Object> params = new HashMap<>();
         params.put("scripthash", scripthash);
         Type returnType = Util.getParametrizedListType(BlockchainScripthashGetTxsResponseEntry.class);
-        List<BlockchainScripthashGetTxsResponseEntry> response = (List<BlockchainScripthashGetTxsResponseEntry>) doRequest("blockchain.scripthash.get_mempool", params, returnType);
-        return response;
+        return doRequestAsync("blockchain.scripthash.get_mempool", params, returnType);
     }
 
     /**
@@ -343,11 +1076,19 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public List<BlockchainScripthashListUnspentResponseEntry> blockchainScripthashListUnspent(String scripthash) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainScripthashListUnspentAsync(scripthash));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.listunspent" request to the server, without waiting for the response.
+     * @param scripthash
+     * @return
+     */
+    public CompletableFuture<List<BlockchainScripthashListUnspentResponseEntry>> blockchainScripthashListUnspentAsync(String scripthash) {
+        Map<String,Object> params = new HashMap<>();
         params.put("scripthash", scripthash);
         Type returnType = Util.getParametrizedListType(BlockchainScripthashListUnspentResponseEntry.class);
-        List<BlockchainScripthashListUnspentResponseEntry> response = (List<BlockchainScripthashListUnspentResponseEntry>) doRequest("blockchain.scripthash.listunspent", params, returnType);
-        return response;
+        return doRequestAsync("blockchain.scripthash.listunspent", params, returnType);
     }
 
     /**
@@ -357,10 +1098,22 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public String blockchainScripthashSubscribe(String scripthash) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainScripthashSubscribeAsync(scripthash));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.subscribe" request to the server, without waiting for the response.
+     * @param scripthash
+     * @return
+     */
+    public CompletableFuture<String> blockchainScripthashSubscribeAsync(String scripthash) {
+        Map<String,Object> params = new HashMap<>();
         params.put("scripthash", scripthash);
-        String response = doRequest("blockchain.scripthash.subscribe", params, String.class);
-        return response;
+        CompletableFuture<String> future = doRequestAsync("blockchain.scripthash.subscribe", params, String.class);
+        if (autoReconnect) {
+            future.thenAccept(status -> subscribedScripthashes.put(scripthash, trackedStatus(status)));
+        }
+        return future;
     }
 
     /**
@@ -370,10 +1123,19 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public boolean blockchainScripthashUnsubscribe(String scripthash) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainScripthashUnsubscribeAsync(scripthash));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.unsubscribe" request to the server, without waiting for the response.
+     * @param scripthash
+     * @return
+     */
+    public CompletableFuture<Boolean> blockchainScripthashUnsubscribeAsync(String scripthash) {
+        Map<String,Object> params = new HashMap<>();
         params.put("scripthash", scripthash);
-        boolean response = doRequest("blockchain.scripthash.unsubscribe", params, Boolean.class);
-        return response;
+        subscribedScripthashes.remove(scripthash);
+        return doRequestAsync("blockchain.scripthash.unsubscribe", params, Boolean.class);
     }
 
     /**
@@ -383,10 +1145,18 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public String blockchainTransactionBroadcast(String rawTx) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainTransactionBroadcastAsync(rawTx));
+    }
+
+    /**
+     * Sends a "blockchain.transaction.broadcast" request to the server, without waiting for the response.
+     * @param rawTx
+     * @return
+     */
+    public CompletableFuture<String> blockchainTransactionBroadcastAsync(String rawTx) {
+        Map<String,Object> params = new HashMap<>();
         params.put("raw_tx", rawTx);
-        String response = doRequest("blockchain.transaction.broadcast", params, String.class);
-        return response;
+        return doRequestAsync("blockchain.transaction.broadcast", params, String.class);
     }
 
     /**
@@ -396,11 +1166,29 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public String blockchainTransactionGetNoVerbose(String txHash) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainTransactionGetNoVerboseAsync(txHash));
+    }
+
+    /**
+     * Sends a "blockchain.transaction.get" request to the server with verbose set to false, without waiting for
+     * the response. Answered from the transaction cache if it holds the transaction.
+     * @param txHash
+     * @return
+     */
+    public CompletableFuture<String> blockchainTransactionGetNoVerboseAsync(String txHash) {
+        TransactionCache cache = transactionCache;
+        String cached = cache == null ? null : cache.getRaw(txHash);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        Map<String,Object> params = new HashMap<>();
         params.put("tx_hash", txHash);
         params.put("verbose", false);
-        String response = doRequest("blockchain.transaction.get", params, String.class);
-        return response;
+        CompletableFuture<String> future = doRequestAsync("blockchain.transaction.get", params, String.class);
+        if (cache != null) {
+            future.thenAccept(rawTx -> cache.putRaw(txHash, rawTx, false));
+        }
+        return future;
     }
 
     /**
@@ -410,11 +1198,29 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public BlockchainTransactionGetVerboseResponse blockchainTransactionGetVerbose(String txHash) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainTransactionGetVerboseAsync(txHash));
+    }
+
+    /**
+     * Sends a "blockchain.transaction.get" request to the server with verbose set to true, without waiting for
+     * the response. Answered from the transaction cache if it holds the transaction.
+     * @param txHash
+     * @return
+     */
+    public CompletableFuture<BlockchainTransactionGetVerboseResponse> blockchainTransactionGetVerboseAsync(String txHash) {
+        TransactionCache cache = transactionCache;
+        BlockchainTransactionGetVerboseResponse cached = cache == null ? null : cache.getVerbose(txHash);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        Map<String,Object> params = new HashMap<>();
         params.put("tx_hash", txHash);
         params.put("verbose", true);
-        BlockchainTransactionGetVerboseResponse response = doRequest("blockchain.transaction.get", params, BlockchainTransactionGetVerboseResponse.class);
-        return response;
+        CompletableFuture<BlockchainTransactionGetVerboseResponse> future = doRequestAsync("blockchain.transaction.get", params, BlockchainTransactionGetVerboseResponse.class);
+        if (cache != null) {
+            future.thenAccept(verbose -> cache.putVerbose(txHash, verbose));
+        }
+        return future;
     }
 
     /**
@@ -425,11 +1231,26 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public BlockchainTransactionGetMerkleResponse blockchainTransactionGetMerkle(String txHash, long height) throws Throwable {
-        Map params = new HashMap<String,Object>();
+        return await(blockchainTransactionGetMerkleAsync(txHash, height));
+    }
+
+    /**
+     * Sends a "blockchain.transaction.get_merkle" request to the server, without waiting for the response.
+     * @param txHash
+     * @param height
+     * @return
+     */
+    public CompletableFuture<BlockchainTransactionGetMerkleResponse> blockchainTransactionGetMerkleAsync(String txHash, long height) {
+        Map<String,Object> params = new HashMap<>();
         params.put("tx_hash", txHash);
         params.put("height", height);
-        BlockchainTransactionGetMerkleResponse response = doRequest("blockchain.transaction.get_merkle", params, BlockchainTransactionGetMerkleResponse.class);
-        return response;
+        CompletableFuture<BlockchainTransactionGetMerkleResponse> future = doRequestAsync("blockchain.transaction.get_merkle", params, BlockchainTransactionGetMerkleResponse.class);
+        TransactionCache cache = transactionCache;
+        if (cache != null) {
+            // Only confirmed transactions have a merkle proof.
+            future.thenAccept(merkle -> cache.markConfirmed(txHash));
+        }
+        return future;
     }
 
     /**
@@ -440,12 +1261,22 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public String blockchainTransactionIdFromPosNoMerkle(long height, long txPos) throws Throwable {
-        Map params =new HashMap<String,Object>();
+        return await(blockchainTransactionIdFromPosNoMerkleAsync(height, txPos));
+    }
+
+    /**
+     * Sends a "blockchain.transaction.id_from_pos" request to the server with merkle set to false, without waiting
+     * for the response.
+     * @param height
+     * @param txPos
+     * @return
+     */
+    public CompletableFuture<String> blockchainTransactionIdFromPosNoMerkleAsync(long height, long txPos) {
+        Map<String,Object> params = new HashMap<>();
         params.put("height", height);
         params.put("tx_pos", txPos);
         params.put("merkle", false);
-        String response = doRequest("blockchain.transaction.id_from_pos", params, String.class);
-        return response;
+        return doRequestAsync("blockchain.transaction.id_from_pos", params, String.class);
     }
 
     /**
@@ -456,12 +1287,22 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public BlockchainTransactionIdFromPosMerkleResponse blockchainTransactionIdFromPosMerkle(long height, long txPos) throws Throwable {
-        Map params =new HashMap<String,Object>();
+        return await(blockchainTransactionIdFromPosMerkleAsync(height, txPos));
+    }
+
+    /**
+     * Sends a "blockchain.transaction.id_from_pos" request to the server with merkle set to true, without waiting
+     * for the response.
+     * @param height
+     * @param txPos
+     * @return
+     */
+    public CompletableFuture<BlockchainTransactionIdFromPosMerkleResponse> blockchainTransactionIdFromPosMerkleAsync(long height, long txPos) {
+        Map<String,Object> params = new HashMap<>();
         params.put("height", height);
         params.put("tx_pos", txPos);
         params.put("merkle", true);
-        BlockchainTransactionIdFromPosMerkleResponse response = doRequest("blockchain.transaction.id_from_pos", params, BlockchainTransactionIdFromPosMerkleResponse.class);
-        return response;
+        return doRequestAsync("blockchain.transaction.id_from_pos", params, BlockchainTransactionIdFromPosMerkleResponse.class);
     }
 
     /**
@@ -470,10 +1311,17 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public List<MempoolGetFeeHistogramResponseEntry> mempoolGetFeeHistogram() throws Throwable {
-        Map params =new HashMap<String,Object>();
+        return await(mempoolGetFeeHistogramAsync());
+    }
+
+    /**
+     * Sends a "mempool.get_fee_histogram" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<List<MempoolGetFeeHistogramResponseEntry>> mempoolGetFeeHistogramAsync() {
+        Map<String,Object> params = new HashMap<>();
         Type returnType = Util.getParametrizedListType(MempoolGetFeeHistogramResponseEntry.class);
-        List<MempoolGetFeeHistogramResponseEntry> response = (List<MempoolGetFeeHistogramResponseEntry>) doRequest("mempool.get_fee_histogram", params, returnType);
-        return response;
+        return doRequestAsync("mempool.get_fee_histogram", params, returnType);
     }
 
     /**
@@ -482,8 +1330,15 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public String serverBanner() throws Throwable {
-        String response = doRequest("server.banner", String.class);
-        return response;
+        return await(serverBannerAsync());
+    }
+
+    /**
+     * Sends a "server.banner" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<String> serverBannerAsync() {
+        return doRequestAsync("server.banner", String.class);
     }
 
     /**
@@ -492,8 +1347,15 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public String serverDonationAddress() throws Throwable {
-        String response = doRequest("server.donation_address", String.class);
-        return response;
+        return await(serverDonationAddressAsync());
+    }
+
+    /**
+     * Sends a "server.donation_address" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<String> serverDonationAddressAsync() {
+        return doRequestAsync("server.donation_address", String.class);
     }
 
     /**
@@ -502,8 +1364,15 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public ServerFeaturesResponse serverFeatures() throws Throwable {
-        ServerFeaturesResponse response = doRequest("server.features", ServerFeaturesResponse.class);
-        return response;
+        return await(serverFeaturesAsync());
+    }
+
+    /**
+     * Sends a "server.features" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<ServerFeaturesResponse> serverFeaturesAsync() {
+        return doRequestAsync("server.features", ServerFeaturesResponse.class);
     }
 
     /**
@@ -512,10 +1381,17 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public List<ServerPeersSubscribeResponseEntry> serverPeersSubscribe() throws Throwable {
-        Map params =new HashMap<String,Object>();
+        return await(serverPeersSubscribeAsync());
+    }
+
+    /**
+     * Sends a "server.peers.subscribe" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<List<ServerPeersSubscribeResponseEntry>> serverPeersSubscribeAsync() {
+        Map<String,Object> params = new HashMap<>();
         Type returnType = Util.getParametrizedListType(ServerPeersSubscribeResponseEntry.class);
-        List<ServerPeersSubscribeResponseEntry> response = (List<ServerPeersSubscribeResponseEntry>) doRequest("server.peers.subscribe", params, returnType);
-        return response;
+        return doRequestAsync("server.peers.subscribe", params, returnType);
     }
 
     /**
@@ -523,7 +1399,15 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public void serverPing() throws Throwable {
-        doRequest("server.ping", null, Object.class);
+        await(serverPingAsync());
+    }
+
+    /**
+     * Sends a "server.ping" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<Object> serverPingAsync() {
+        return doRequestAsync("server.ping", null, Object.class);
     }
 
     /**
@@ -532,33 +1416,303 @@ public class ElectrumClient {
      * @throws Throwable
      */
     public ServerVersionResponse serverVersion() throws Throwable {
+        return await(serverVersionAsync());
+    }
+
+    /**
+     * Sends a "server.version" request to the server, without waiting for the response.
+     * @return
+     */
+    public CompletableFuture<ServerVersionResponse> serverVersionAsync() {
         String clientName = "electrumj 0.1-SNAPSHOT";
         String protocolVersion = "1.4.2";
-        Map params =new HashMap<String,Object>();
+        Map<String,Object> params = new HashMap<>();
         params.put("client_name", clientName);
         params.put("protocol_version", protocolVersion);
-        ServerVersionResponse response = doRequest("server.version", params, ServerVersionResponse.class);
-        return response;
+        return doRequestAsync("server.version", params, ServerVersionResponse.class);
+    }
+
+
+    // Section batch requests
+
+    /**
+     * Sends a "blockchain.scripthash.get_balance" request for each of the scripthashes, as JSON-RPC batches.
+     * @param scripthashes
+     * @return the result of each scripthash, in iteration order
+     * @throws Throwable
+     */
+    public Map<String, BatchResult<BlockchainScripthashGetBalanceResponse>> blockchainScripthashGetBalanceBatch(Collection<String> scripthashes) throws Throwable {
+        return await(blockchainScripthashGetBalanceBatchAsync(scripthashes));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.get_balance" request for each of the scripthashes, as JSON-RPC batches,
+     * without waiting for the responses.
+     * @param scripthashes
+     * @return
+     */
+    public CompletableFuture<Map<String, BatchResult<BlockchainScripthashGetBalanceResponse>>> blockchainScripthashGetBalanceBatchAsync(Collection<String> scripthashes) {
+        return doBatchRequestAsync("blockchain.scripthash.get_balance", scripthashes, ElectrumClient::scripthashParams, BlockchainScripthashGetBalanceResponse.class);
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.get_history" request for each of the scripthashes, as JSON-RPC batches.
+     * @param scripthashes
+     * @return the result of each scripthash, in iteration order
+     * @throws Throwable
+     */
+    public Map<String, BatchResult<List<BlockchainScripthashGetTxsResponseEntry>>> blockchainScripthashGetHistoryBatch(Collection<String> scripthashes) throws Throwable {
+        return await(blockchainScripthashGetHistoryBatchAsync(scripthashes));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.get_history" request for each of the scripthashes, as JSON-RPC batches,
+     * without waiting for the responses.
+     * @param scripthashes
+     * @return
+     */
+    public CompletableFuture<Map<String, BatchResult<List<BlockchainScripthashGetTxsResponseEntry>>>> blockchainScripthashGetHistoryBatchAsync(Collection<String> scripthashes) {
+        Type returnType = Util.getParametrizedListType(BlockchainScripthashGetTxsResponseEntry.class);
+        return doBatchRequestAsync("blockchain.scripthash.get_history", scripthashes, ElectrumClient::scripthashParams, returnType);
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.listunspent" request for each of the scripthashes, as JSON-RPC batches.
+     * @param scripthashes
+     * @return the result of each scripthash, in iteration order
+     * @throws Throwable
+     */
+    public Map<String, BatchResult<List<BlockchainScripthashListUnspentResponseEntry>>> blockchainScripthashListUnspentBatch(Collection<String> scripthashes) throws Throwable {
+        return await(blockchainScripthashListUnspentBatchAsync(scripthashes));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.listunspent" request for each of the scripthashes, as JSON-RPC batches,
+     * without waiting for the responses.
+     * @param scripthashes
+     * @return
+     */
+    public CompletableFuture<Map<String, BatchResult<List<BlockchainScripthashListUnspentResponseEntry>>>> blockchainScripthashListUnspentBatchAsync(Collection<String> scripthashes) {
+        Type returnType = Util.getParametrizedListType(BlockchainScripthashListUnspentResponseEntry.class);
+        return doBatchRequestAsync("blockchain.scripthash.listunspent", scripthashes, ElectrumClient::scripthashParams, returnType);
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.subscribe" request for each of the scripthashes, as JSON-RPC batches.
+     * @param scripthashes
+     * @return the status of each scripthash, in iteration order
+     * @throws Throwable
+     */
+    public Map<String, BatchResult<String>> blockchainScripthashSubscribeBatch(Collection<String> scripthashes) throws Throwable {
+        return await(blockchainScripthashSubscribeBatchAsync(scripthashes));
+    }
+
+    /**
+     * Sends a "blockchain.scripthash.subscribe" request for each of the scripthashes, as JSON-RPC batches,
+     * without waiting for the responses.
+     * @param scripthashes
+     * @return
+     */
+    public CompletableFuture<Map<String, BatchResult<String>>> blockchainScripthashSubscribeBatchAsync(Collection<String> scripthashes) {
+        CompletableFuture<Map<String, BatchResult<String>>> future = doBatchRequestAsync("blockchain.scripthash.subscribe", scripthashes, ElectrumClient::scripthashParams, String.class);
+        if (autoReconnect) {
+            future.thenAccept(statuses -> statuses.forEach((scripthash, status) -> {
+                if (status.isSuccess()) {
+                    subscribedScripthashes.put(scripthash, trackedStatus(status.getResult()));
+                }
+            }));
+        }
+        return future;
+    }
+
+    /**
+     * Sends a "blockchain.transaction.get" request with verbose set to false for each of the tx hashes, as
+     * JSON-RPC batches.
+     * @param txHashes
+     * @return the raw transaction of each tx hash, in iteration order
+     * @throws Throwable
+     */
+    public Map<String, BatchResult<String>> blockchainTransactionGetNoVerboseBatch(Collection<String> txHashes) throws Throwable {
+        return await(blockchainTransactionGetNoVerboseBatchAsync(txHashes));
+    }
+
+    /**
+     * Sends a "blockchain.transaction.get" request with verbose set to false for each of the tx hashes, as
+     * JSON-RPC batches, without waiting for the responses. Only the transactions missing from the transaction cache
+     * are requested.
+     * @param txHashes
+     * @return
+     */
+    public CompletableFuture<Map<String, BatchResult<String>>> blockchainTransactionGetNoVerboseBatchAsync(Collection<String> txHashes) {
+        TransactionCache cache = transactionCache;
+        Map<String, String> cached = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String txHash : txHashes) {
+            String rawTx = cache == null ? null : cache.getRaw(txHash);
+            if (rawTx != null) {
+                cached.put(txHash, rawTx);
+            } else {
+                missing.add(txHash);
+            }
+        }
+        CompletableFuture<Map<String, BatchResult<String>>> future = doBatchRequestAsync("blockchain.transaction.get", missing, txHash -> {
+            Map<String,Object> params = new HashMap<>();
+            params.put("tx_hash", txHash);
+            params.put("verbose", false);
+            return params;
+        }, String.class);
+        if (cache == null) {
+            return future;
+        }
+        return future.thenApply(fetched -> {
+            Map<String, BatchResult<String>> results = new LinkedHashMap<>();
+            for (String txHash : txHashes) {
+                String rawTx = cached.get(txHash);
+                BatchResult<String> result = rawTx != null ? BatchResult.success(rawTx) : fetched.get(txHash);
+                if (rawTx == null && result.isSuccess()) {
+                    cache.putRaw(txHash, result.getResult(), false);
+                }
+                results.put(txHash, result);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Creates a batch to send several arbitrary requests in one write.
+     */
+    public BatchRequest batchRequest() {
+        assert connectionOpened;
+        return new BatchRequest(requestPipeline, timeoutMillis());
+    }
+
+    /**
+     * Sets the maximum number of requests sent in a single JSON-RPC batch by the batch methods.
+     * Bigger collections are split in several batches, to stay below the server's maximum request size.
+     * @param maxBatchSize
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        assert maxBatchSize > 0;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    private static Map<String,Object> scripthashParams(String scripthash) {
+        Map<String,Object> params = new HashMap<>();
+        params.put("scripthash", scripthash);
+        return params;
+    }
+
+    /**
+     * Sends a request with the given method for each of the keys, e.g. scripthashes, as JSON-RPC batches of at most
+     * maxBatchSize requests.
+     */
+    private <T> CompletableFuture<Map<String, BatchResult<T>>> doBatchRequestAsync(String method, Collection<String> keys,
+            Function<String, Map<String,Object>> paramsFactory, Type returnType) {
+        assert connectionOpened;
+        Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        BatchRequest batch = batchRequest();
+        for (String key : keys) {
+            if (futures.containsKey(key)) {
+                continue;
+            }
+            futures.put(key, batch.add(method, paramsFactory.apply(key), returnType));
+            if (batch.size() == maxBatchSize) {
+                batch.send();
+                batch = batchRequest();
+            }
+        }
+        batch.send();
+        Map<String, CompletableFuture<BatchResult<T>>> results = new LinkedHashMap<>();
+        futures.forEach((key, future) -> results.put(key, future.handle((result, error) ->
+                error == null ? BatchResult.success(result) : BatchResult.failure(error))));
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, BatchResult<T>> response = new LinkedHashMap<>();
+            results.forEach((key, future) -> response.put(key, future.join()));
+            return response;
+        });
     }
 
 
     // Section request execution
 
-    private <T> T doRequest(String method, Class<T> returnType) throws Throwable {
-        return doRequest(method, new HashMap<String,Object>(), returnType);
+    /**
+     * Number of requests sent to the server whose response has not been received yet, including those waiting for
+     * room in the limit of the AdaptiveLimiter.
+     */
+    public int getPendingRequestCount() {
+        return requestPipeline == null ? 0 : requestPipeline.getPendingRequestCount();
+    }
+
+    /**
+     * Exponentially weighted moving average of the time the server takes to answer a request, in milliseconds,
+     * or a negative value if no response was received yet.
+     */
+    public double getLatencyEwmaMillis() {
+        return requestPipeline == null ? -1 : requestPipeline.getLatencyEwmaNanos() / 1_000_000;
+    }
+
+    /**
+     * Exponentially weighted moving average of the round trip time of the pings sent by a KeepaliveScheduler, in
+     * milliseconds, or a negative value if no ping was answered yet. Unlike getLatencyEwmaMillis, it doesn't depend
+     * on the cost of the requests sent.
+     */
+    public double getRttEwmaMillis() {
+        return rttEwmaNanos / 1_000_000;
     }
 
-    private  <T> T doRequest(String method, Map<String,Object> params, Class<T> returnType) throws Throwable {
-        Object result = doRequest(method, params, Type.class.cast(returnType));
-        return (T) result;
+    /**
+     * Round trip times of the pings sent by a KeepaliveScheduler, in nanoseconds.
+     */
+    public LatencyHistogram getRttHistogram() {
+        return rttHistogram;
     }
 
-    private Object doRequest(String method, Map<String,Object> params, Type returnType) throws Throwable {
+    void recordRtt(long rttNanos) {
+        rttHistogram.record(rttNanos);
+        double previous = rttEwmaNanos;
+        rttEwmaNanos = previous < 0 ? rttNanos : previous + RTT_EWMA_ALPHA * (rttNanos - previous);
+    }
+
+    /**
+     * When the last message was read from the connection, as given by System.nanoTime.
+     */
+    long getLastReceivedNanos() {
+        return requestPipeline.getLastReceivedNanos();
+    }
+
+    private <T> CompletableFuture<T> doRequestAsync(String method, Class<T> returnType) {
+        return doRequestAsync(method, new HashMap<String,Object>(), returnType);
+    }
+
+    private <T> CompletableFuture<T> doRequestAsync(String method, Map<String,Object> params, Type returnType) {
         assert connectionOpened;
-        JsonRpcClient client = new JsonRpcClient();
-        Object result = client.invokeAndReadResponse(method, params, returnType,
-                this.socketOutputStream,
-                this.socketInputStream);
-        return result;
+        long timeout = timeoutMillis();
+        RequestCoalescer coalescer = requestCoalescer;
+        if (coalescer != null) {
+            // The shared request is sent without a timeout, each caller's own timeout applies to its own future. The
+            // coalescer cancels the shared request once all its callers timed out.
+            CompletableFuture<T> future = coalescer.coalesce(method, params, returnType,
+                    () -> requestPipeline.sendRequest(method, params, returnType, 0));
+            return timeout > 0 ? future.orTimeout(timeout, TimeUnit.MILLISECONDS) : future;
+        }
+        return requestPipeline.sendRequest(method, params, returnType, timeout);
+    }
+
+    /**
+     * Waits for the response of an async request and returns its result, rethrowing the exception the request
+     * failed with, e.g. a JsonRpcClientException if the server answered with an error.
+     * Fails right away with an IllegalStateException on the thread reading the connection, e.g. in a dependent stage
+     * of a request future, instead of hanging the connection.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Throwable {
+        if (!future.isDone() && RequestPipeline.isReadingThread()) {
+            throw new IllegalStateException("Blocking request made on the thread reading the connection, which would "
+                    + "wait forever for its response: use the async method, or a listener");
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
     }
 }
@@ -0,0 +1,654 @@
+package org.electrumj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a number of warm connections spread over a set of Electrum servers and routes each request to the
+ * connection that should answer it first.
+ *
+ * Sample usage:
+ * <pre>
+ *     ElectrumClientPool pool = new ElectrumClientPool(Arrays.asList(ElectrumServers.EMZY_URL, ElectrumServers.BLOCKSTREAM_URL), 4);
+ *     pool.open();
+ *     CompletableFuture&lt;BlockchainScripthashGetBalanceResponse&gt; balance = pool.submit(client -&gt; client.blockchainScripthashGetBalanceAsync(scripthash));
+ *     double fee = pool.getClient().blockchainEstimatefee(6);
+ *     pool.close();
+ * </pre>
+ *
+ * Periodically, connections closed by the server are replaced, and a connection is moved away from a server whose
+ * latency becomes much worse than the others'.
+ *
+ * With hedging enabled, a read-only request sent with submitHedged that is still waiting for its response after
+ * the usual latency of its method, e.g. its 95th percentile, is sent again to another server. The first response
+ * wins and the other request is cancelled, so a stalled server doesn't hold the request for seconds. Only the
+ * methods of the hedged methods allow-list are hedged: broadcasts are never sent twice.
+ */
+public class ElectrumClientPool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ElectrumClientPool.class);
+
+    /**
+     * How the pool picks the connection a request is routed to.
+     */
+    public enum BalancingStrategy {
+        /** The connection with the fewest requests waiting for a response, ties broken by latency. */
+        LEAST_OUTSTANDING_REQUESTS,
+        /** The connection with the lowest latency moving average, weighted by its requests waiting for a response. */
+        LOWEST_LATENCY
+    }
+
+    public static final long DEFAULT_MAINTENANCE_INTERVAL_MILLIS = 10_000;
+    // A server is considered slow when its latency is this many times the latency of the fastest server.
+    public static final double DEFAULT_SLOW_SERVER_FACTOR = 3;
+    public static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+    // Hedging delay until enough latencies of a method were measured.
+    public static final long DEFAULT_INITIAL_HEDGE_DELAY_MILLIS = 500;
+    public static final long DEFAULT_MIN_HEDGE_DELAY_MILLIS = 5;
+    // Read-only methods, hedged by default when hedging is enabled.
+    public static final Set<String> DEFAULT_HEDGED_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "blockchain.block.header",
+            "blockchain.block.headers",
+            "blockchain.estimatefee",
+            "blockchain.relayfee",
+            "blockchain.scripthash.get_balance",
+            "blockchain.scripthash.get_history",
+            "blockchain.scripthash.get_mempool",
+            "blockchain.scripthash.listunspent",
+            "blockchain.transaction.get",
+            "blockchain.transaction.get_merkle",
+            "blockchain.transaction.id_from_pos",
+            "mempool.get_fee_histogram")));
+    // Latencies measured before the percentile is trusted.
+    private static final long MIN_HEDGE_SAMPLES = 20;
+
+    // The servers to connect to, as "host:port"
+    private final List<String> servers;
+    // Number of connections to keep open across the servers.
+    private final int connectionCount;
+    private BalancingStrategy balancingStrategy = BalancingStrategy.LEAST_OUTSTANDING_REQUESTS;
+    private SelectorPool selectorPool;
+    private long maintenanceIntervalMillis = DEFAULT_MAINTENANCE_INTERVAL_MILLIS;
+    private double slowServerFactor = DEFAULT_SLOW_SERVER_FACTOR;
+    private TransactionCache transactionCache;
+    private RequestCoalescer requestCoalescer;
+    private NotificationDispatcher notificationDispatcher;
+    private boolean useVirtualThreads = false;
+    private Supplier<AdaptiveLimiter> adaptiveLimiterFactory;
+    private KeepaliveScheduler keepaliveScheduler;
+    private ClientMetrics metrics;
+    private boolean hedging = false;
+    private double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+    private long minHedgeDelayMillis = DEFAULT_MIN_HEDGE_DELAY_MILLIS;
+    private Set<String> hedgedMethods = DEFAULT_HEDGED_METHODS;
+
+    private final List<ElectrumClient> clients = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService maintenanceExecutor;
+    // Sends the hedged requests, created when opening if hedging is enabled.
+    private ScheduledExecutorService hedgingExecutor;
+    // Latencies of the requests sent with submitHedged, by method.
+    private final Map<String, LatencyHistogram> latencyHistograms = new ConcurrentHashMap<>();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+    private volatile boolean opened = false;
+
+    // Section constructors
+
+    /**
+     * Creates a new pool with the given parameters.
+     * @param servers The servers to connect to, as "host:port", e.g. ElectrumServers.EMZY_URL
+     * @param connectionCount Number of connections to keep open, spread evenly over the servers
+     */
+    public ElectrumClientPool(Collection<String> servers, int connectionCount) {
+        assert !servers.isEmpty();
+        assert connectionCount > 0;
+        this.servers = new ArrayList<>(servers);
+        this.connectionCount = connectionCount;
+    }
+
+    // Section configuration
+
+    /**
+     * Sets how requests are routed. Defaults to LEAST_OUTSTANDING_REQUESTS.
+     * @param balancingStrategy
+     */
+    public void setBalancingStrategy(BalancingStrategy balancingStrategy) {
+        this.balancingStrategy = balancingStrategy;
+    }
+
+    /**
+     * Makes the connections non-blocking, served by the given selector threads. Must be set before opening.
+     * @param selectorPool
+     */
+    public void setSelectorPool(SelectorPool selectorPool) {
+        assert !opened;
+        this.selectorPool = selectorPool;
+    }
+
+    /**
+     * Sets how often closed connections are replaced and slow servers are checked. Must be set before opening.
+     * @param maintenanceIntervalMillis
+     */
+    public void setMaintenanceIntervalMillis(long maintenanceIntervalMillis) {
+        assert !opened;
+        this.maintenanceIntervalMillis = maintenanceIntervalMillis;
+    }
+
+    /**
+     * Sets how many times slower than the fastest server a server must be for one of its connections to be moved.
+     * @param slowServerFactor
+     */
+    public void setSlowServerFactor(double slowServerFactor) {
+        this.slowServerFactor = slowServerFactor;
+    }
+
+    /**
+     * Sets the transaction cache shared by all the connections. Must be set before opening.
+     * @param transactionCache
+     */
+    public void setTransactionCache(TransactionCache transactionCache) {
+        assert !opened;
+        this.transactionCache = transactionCache;
+    }
+
+    /**
+     * Sets the request coalescer shared by all the connections, so identical requests sent through different
+     * connections at once also cost a single round trip. Must be set before opening.
+     * @param requestCoalescer
+     */
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        assert !opened;
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Sets the dispatcher the notifications of all the connections are passed to. Must be set before opening.
+     * @param notificationDispatcher
+     */
+    public void setNotificationDispatcher(NotificationDispatcher notificationDispatcher) {
+        assert !opened;
+        this.notificationDispatcher = notificationDispatcher;
+    }
+
+    /**
+     * Makes the threads reading the connections virtual threads, when running on Java 21 or later. Must be set
+     * before opening.
+     * @param useVirtualThreads
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        assert !opened;
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * Limits the requests in flight on each connection with its own limiter, e.g.
+     * <code>pool.setAdaptiveLimiterFactory(AdaptiveLimiter::new)</code>. Must be set before opening.
+     * @param adaptiveLimiterFactory Creates the limiter of each new connection, or null not to limit the requests
+     */
+    public void setAdaptiveLimiterFactory(Supplier<AdaptiveLimiter> adaptiveLimiterFactory) {
+        assert !opened;
+        this.adaptiveLimiterFactory = adaptiveLimiterFactory;
+    }
+
+    /**
+     * Sets the scheduler keeping the idle connections alive. The round trip times of its pings are used to route
+     * requests to the connections with no request latency measured yet, and connections missing its pings are
+     * replaced. Must be set before opening.
+     * @param keepaliveScheduler
+     */
+    public void setKeepaliveScheduler(KeepaliveScheduler keepaliveScheduler) {
+        assert !opened;
+        this.keepaliveScheduler = keepaliveScheduler;
+    }
+
+    /**
+     * Reports the requests, responses and notifications of all the connections to the given metrics, e.g. a
+     * JmxClientMetrics. Must be set before opening.
+     * @param metrics
+     */
+    public void setMetrics(ClientMetrics metrics) {
+        assert !opened;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Enables hedging of the requests sent with submitHedged. Must be set before opening.
+     * @param hedging
+     */
+    public void setHedging(boolean hedging) {
+        assert !opened;
+        this.hedging = hedging;
+    }
+
+    /**
+     * Sets the percentile of the latency of a method after which its request is hedged, DEFAULT_HEDGE_PERCENTILE by
+     * default. The higher the percentile, the fewer requests are sent twice.
+     * @param hedgePercentile Between 0 and 1, e.g. 0.95
+     */
+    public void setHedgePercentile(double hedgePercentile) {
+        assert 0 < hedgePercentile && hedgePercentile <= 1;
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * Sets the minimum delay before a request is hedged, DEFAULT_MIN_HEDGE_DELAY_MILLIS by default.
+     * @param minHedgeDelayMillis
+     */
+    public void setMinHedgeDelayMillis(long minHedgeDelayMillis) {
+        assert minHedgeDelayMillis >= 0;
+        this.minHedgeDelayMillis = minHedgeDelayMillis;
+    }
+
+    /**
+     * Sets the methods whose requests may be hedged, DEFAULT_HEDGED_METHODS by default. They must be read-only:
+     * "blockchain.transaction.broadcast" can't be hedged.
+     * @param hedgedMethods
+     */
+    public void setHedgedMethods(Collection<String> hedgedMethods) {
+        assert !hedgedMethods.contains("blockchain.transaction.broadcast");
+        this.hedgedMethods = Collections.unmodifiableSet(new HashSet<>(hedgedMethods));
+    }
+
+    // Section connection
+
+    /**
+     * Opens the connections, spread evenly over the servers. Servers that can't be connected to are skipped,
+     * their connections are opened on the other servers.
+     * @throws IOException if no connection could be opened
+     */
+    public void open() throws IOException {
+        assert !opened;
+        for (int i = 0; clients.size() < connectionCount && i < connectionCount * servers.size(); i++) {
+            ElectrumClient client = connect(servers.get(i % servers.size()));
+            if (client != null) {
+                clients.add(client);
+            }
+        }
+        if (clients.isEmpty()) {
+            throw new IOException("Could not connect to any of " + servers);
+        }
+        opened = true;
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "electrumj-pool-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintain, maintenanceIntervalMillis, maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
+        if (hedging) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "electrumj-pool-hedging");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Most hedges are cancelled, as the first response arrives in time.
+            executor.setRemoveOnCancelPolicy(true);
+            hedgingExecutor = executor;
+        }
+    }
+
+    /**
+     * Closes all the connections.
+     */
+    @Override
+    public void close() {
+        opened = false;
+        // Not created yet if open() was not called or failed.
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+        if (hedgingExecutor != null) {
+            hedgingExecutor.shutdownNow();
+        }
+        for (ElectrumClient client : clients) {
+            closeQuietly(client);
+        }
+        clients.clear();
+    }
+
+    // Section routing
+
+    /**
+     * Returns the connection the next request should be sent to, according to the balancing strategy.
+     */
+    public ElectrumClient getClient() {
+        ElectrumClient best = getClientOtherThan(null);
+        if (best == null) {
+            throw new IllegalStateException("No open connection to any of " + servers);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the best connection to another server than the given client's, or else another connection to the
+     * same server, or null if there is none.
+     * @param excluded The client to avoid, or null
+     */
+    private ElectrumClient getClientOtherThan(ElectrumClient excluded) {
+        String excludedServer = excluded == null ? null : serverOf(excluded);
+        ElectrumClient best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (ElectrumClient client : clients) {
+            if (client == excluded || !client.isConnectionOpen()) {
+                continue;
+            }
+            double score = score(client);
+            if (excludedServer != null && excludedServer.equals(serverOf(client))) {
+                // The same server is likely as stalled: only used when there is no other server.
+                score += Integer.MAX_VALUE;
+            }
+            if (score < bestScore) {
+                best = client;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sends a request through the connection returned by getClient.
+     * Sample usage: <code>pool.submit(client -&gt; client.blockchainScripthashGetBalanceAsync(scripthash))</code>
+     * @param request Sends the request using the given client
+     * @return the future returned by the request
+     */
+    public <T> CompletableFuture<T> submit(Function<ElectrumClient, CompletableFuture<T>> request) {
+        return request.apply(getClient());
+    }
+
+    /**
+     * Sends a request through the connection returned by getClient and, if hedging is enabled for its method and the
+     * response takes longer than usual, sends it again through a connection to another server. The future completes
+     * with the first response, the other request is cancelled. Hedged requests are never coalesced.
+     * Sample usage: <code>pool.submitHedged("blockchain.scripthash.listunspent", client -&gt; client.blockchainScripthashListUnspentAsync(scripthash))</code>
+     * @param method The JSON-RPC method the request sends, to check it can be hedged and measure its latency
+     * @param request Sends the request using the given client
+     * @return a future completed with the first response
+     */
+    public <T> CompletableFuture<T> submitHedged(String method, Function<ElectrumClient, CompletableFuture<T>> request) {
+        if (!hedging || !hedgedMethods.contains(method)) {
+            return submit(request);
+        }
+        LatencyHistogram histogram = latencyHistograms.computeIfAbsent(method, m -> new LatencyHistogram());
+        ElectrumClient primaryClient = getClient();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Requests sent and not answered yet.
+        AtomicInteger pendingAttempts = new AtomicInteger();
+        CompletableFuture<T> primary = sendHedgeable(primaryClient, request, histogram, result, pendingAttempts, false);
+        if (primary.isDone()) {
+            return result;
+        }
+        ScheduledFuture<?> hedge = hedgingExecutor.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            ElectrumClient hedgeClient = getClientOtherThan(primaryClient);
+            if (hedgeClient == null) {
+                return;
+            }
+            hedgeCount.incrementAndGet();
+            CompletableFuture<T> hedged = sendHedgeable(hedgeClient, request, histogram, result, pendingAttempts, true);
+            result.whenComplete((value, error) -> hedged.cancel(false));
+        }, hedgeDelayNanos(histogram), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, error) -> {
+            hedge.cancel(false);
+            primary.cancel(false);
+        });
+        return result;
+    }
+
+    /**
+     * Sends the request and completes the result with its response, unless completed by the other request first.
+     * A failure only completes the result if no other request is pending, the hedge is then not sent.
+     */
+    private <T> CompletableFuture<T> sendHedgeable(ElectrumClient client, Function<ElectrumClient, CompletableFuture<T>> request,
+                                                   LatencyHistogram histogram, CompletableFuture<T> result,
+                                                   AtomicInteger pendingAttempts, boolean hedge) {
+        pendingAttempts.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            // Coalesced, the request would share the response of an identical request, possibly stalled on another
+            // server than the client's.
+            future = RequestCoalescer.bypass(() -> request.apply(client));
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                histogram.record(System.nanoTime() - start);
+                if (result.complete(value) && hedge) {
+                    hedgeWinCount.incrementAndGet();
+                }
+                return;
+            }
+            if (isCancellation(error)) {
+                // Cancelled once the other request answered: its latency is at least that long. Left out, the slow
+                // requests would never be recorded, and the hedge delay would shrink.
+                histogram.record(System.nanoTime() - start);
+            }
+            if (pendingAttempts.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+        return future;
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        return error instanceof CancellationException
+                || error instanceof CompletionException && error.getCause() instanceof CancellationException;
+    }
+
+    /**
+     * Percentile of the latency of the method, or DEFAULT_INITIAL_HEDGE_DELAY_MILLIS until enough latencies are known.
+     */
+    private long hedgeDelayNanos(LatencyHistogram histogram) {
+        long delay = histogram.getCount() < MIN_HEDGE_SAMPLES
+                ? TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_HEDGE_DELAY_MILLIS)
+                : histogram.getPercentile(hedgePercentile);
+        return Math.max(delay, TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis));
+    }
+
+    /**
+     * Number of requests sent again to another server because the first one was slow.
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * Number of hedged requests answered before the first one.
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    /**
+     * Latencies of the requests of the given method sent with submitHedged, or null if none was sent. A request
+     * cancelled because the other one answered first is recorded with the time it waited, a lower bound of its
+     * latency.
+     * @param method
+     */
+    public LatencyHistogram getLatencyHistogram(String method) {
+        return latencyHistograms.get(method);
+    }
+
+    /**
+     * The open connections of the pool.
+     */
+    public List<ElectrumClient> getClients() {
+        return new ArrayList<>(clients);
+    }
+
+    private double score(ElectrumClient client) {
+        int pending = client.getPendingRequestCount();
+        double latency = latencyOf(client);
+        switch (balancingStrategy) {
+            case LOWEST_LATENCY:
+                return latency * (pending + 1);
+            default:
+                // Latency in the fractional part only breaks ties between equal pending counts.
+                return pending + latency / (latency + 1);
+        }
+    }
+
+    /**
+     * The latency moving average of the requests, or else of the keepalive pings. A connection that has not
+     * answered yet is assumed as fast as possible, so it gets tried.
+     */
+    private static double latencyOf(ElectrumClient client) {
+        double latency = client.getLatencyEwmaMillis();
+        return Math.max(latency >= 0 ? latency : client.getRttEwmaMillis(), 0);
+    }
+
+    // Section maintenance
+
+    /**
+     * Replaces the connections closed by the server, and moves a connection from a slow server to the fastest one.
+     */
+    private void maintain() {
+        try {
+            for (ElectrumClient client : clients) {
+                if (!client.isConnectionOpen()) {
+                    String server = serverOf(client);
+                    log.info("Connection to " + server + " closed, reconnecting");
+                    replace(client, server);
+                }
+            }
+            rebalance();
+        } catch (RuntimeException e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
+
+    private void rebalance() {
+        if (servers.size() < 2) {
+            return;
+        }
+        Map<String, List<ElectrumClient>> clientsByServer = new HashMap<>();
+        Map<String, Double> latencyByServer = new HashMap<>();
+        for (ElectrumClient client : clients) {
+            double latency = client.getLatencyEwmaMillis();
+            if (latency < 0) {
+                latency = client.getRttEwmaMillis();
+            }
+            if (latency < 0) {
+                continue;
+            }
+            String server = serverOf(client);
+            clientsByServer.computeIfAbsent(server, s -> new ArrayList<>()).add(client);
+            latencyByServer.merge(server, latency, Math::min);
+        }
+        if (latencyByServer.size() < 2) {
+            return;
+        }
+        Comparator<String> byLatency = Comparator.comparing(latencyByServer::get);
+        String fastest = latencyByServer.keySet().stream().min(byLatency).get();
+        String slowest = latencyByServer.keySet().stream().max(byLatency).get();
+        // Keep one connection on the slow server, so its latency keeps being measured.
+        if (latencyByServer.get(slowest) > slowServerFactor * latencyByServer.get(fastest)
+                && clientsByServer.get(slowest).size() > 1) {
+            log.info("Server " + slowest + " is slow, moving a connection to " + fastest);
+            replace(clientsByServer.get(slowest).get(0), fastest);
+        }
+    }
+
+    /**
+     * Replaces the client by a new connection to the given server. The old connection is closed once the requests
+     * already sent through it are answered.
+     */
+    private void replace(ElectrumClient client, String server) {
+        ElectrumClient newClient = connect(server);
+        if (newClient == null) {
+            return;
+        }
+        clients.add(newClient);
+        clients.remove(client);
+        closeWhenIdle(client);
+    }
+
+    private void closeWhenIdle(ElectrumClient client) {
+        if (client.getPendingRequestCount() == 0 || !client.isConnectionOpen()) {
+            closeQuietly(client);
+        } else {
+            maintenanceExecutor.schedule(() -> closeWhenIdle(client), 100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Opens a connection to the server and does the "server.version" handshake.
+     * @return the connection, or null if it could not be opened
+     */
+    private ElectrumClient connect(String server) {
+        ElectrumClient client = selectorPool == null ? new ElectrumClient(server) : new ElectrumClient(server, selectorPool);
+        client.setTransactionCache(transactionCache);
+        client.setRequestCoalescer(requestCoalescer);
+        client.setNotificationDispatcher(notificationDispatcher);
+        client.setUseVirtualThreads(useVirtualThreads);
+        client.setMetrics(metrics);
+        if (adaptiveLimiterFactory != null) {
+            client.setAdaptiveLimiter(adaptiveLimiterFactory.get());
+        }
+        try {
+            client.openConnection();
+            // Bounded, as for a reconnection: a server that never answers must not hold the maintenance thread.
+            client.serverVersionAsync().get(ElectrumClient.HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (keepaliveScheduler != null) {
+                keepaliveScheduler.register(client);
+            }
+            return client;
+        } catch (Throwable e) {
+            log.warn("Could not connect to " + server + ": " + e.getMessage());
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (client.connectionOpened) {
+                closeQuietly(client);
+            }
+            return null;
+        }
+    }
+
+    private static String serverOf(ElectrumClient client) {
+        return client.getServerHostnameOrIp() + ":" + client.getServerPort();
+    }
+
+    private void closeQuietly(ElectrumClient client) {
+        if (keepaliveScheduler != null) {
+            keepaliveScheduler.unregister(client);
+        }
+        try {
+            if (client.connectionOpened) {
+                client.closeConnection();
+            }
+        } catch (IOException e) {
+            log.debug(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.electrumj;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.electrumj.dto.BlockchainHeader;
+import org.electrumj.dto.BlockchainScripthashStatus;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * The JSON mapper shared by all the connections, and the streaming decoders of the notifications.
+ *
+ * The mapper is thread-safe once configured, so a single instance, with its serializers and deserializers cache,
+ * serves every connection. Fields the DTOs don't have are ignored, so a server sending fields added in a later
+ * version of the protocol can still be read.
+ */
+final class ElectrumJson {
+
+    static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    static final JsonFactory factory = mapper.getFactory();
+
+    private static final ObjectReader headerReader = mapper.readerFor(BlockchainHeader.class);
+
+    private ElectrumJson() {
+    }
+
+    /**
+     * Reads the params of a "blockchain.headers.subscribe" notification: <code>[{"hex": ..., "height": ...}]</code>.
+     * @param params Parser positioned on the start of the params array
+     */
+    static BlockchainHeader readHeaderNotification(JsonParser params) throws IOException {
+        expect(params, params.getCurrentToken(), JsonToken.START_ARRAY);
+        expect(params, params.nextToken(), JsonToken.START_OBJECT);
+        BlockchainHeader header = headerReader.readValue(params);
+        expect(params, params.nextToken(), JsonToken.END_ARRAY);
+        return header;
+    }
+
+    /**
+     * Reads the params of a "blockchain.scripthash.subscribe" notification: <code>[scripthash, status]</code>, the
+     * status being null when the history is empty.
+     * @param params Parser positioned on the start of the params array
+     */
+    static BlockchainScripthashStatus readScripthashNotification(JsonParser params) throws IOException {
+        expect(params, params.getCurrentToken(), JsonToken.START_ARRAY);
+        expect(params, params.nextToken(), JsonToken.VALUE_STRING);
+        String scripthash = params.getText();
+        JsonToken statusToken = params.nextToken();
+        if (statusToken != JsonToken.VALUE_NULL) {
+            expect(params, statusToken, JsonToken.VALUE_STRING);
+        }
+        String status = statusToken == JsonToken.VALUE_NULL ? null : params.getText();
+        expect(params, params.nextToken(), JsonToken.END_ARRAY);
+        return new BlockchainScripthashStatus(scripthash, status);
+    }
+
+    /**
+     * Moves the parser past the rest of the current value, up to the given context, e.g. after a decoder failed
+     * halfway through the value.
+     * @param context The context the value is in, e.g. the context of the object holding it
+     */
+    static void skipTo(JsonParser parser, JsonStreamContext context) throws IOException {
+        while (parser.getParsingContext() != context) {
+            if (parser.nextToken() == null) {
+                throw new EOFException("Unexpected end of message");
+            }
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonMappingException {
+        if (actual != expected) {
+            throw JsonMappingException.from(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+}
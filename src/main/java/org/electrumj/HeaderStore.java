@@ -0,0 +1,240 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local store of block headers, kept in a flat memory-mapped file of 80-byte records indexed by height: the header
+ * at height h is at offset h * 80. Looking up a header is a single read at that offset.
+ *
+ * Headers are appended in order and must link to the previous one. The file is pre-extended while syncing, records
+ * above the tip are all zeros, so the tip is found again when the store is reopened.
+ *
+ * Sample usage:
+ * <pre>
+ *     HeaderStore store = new HeaderStore(Paths.get("headers.dat"));
+ *     new HeaderSync(store, pool).sync().get();
+ *     byte[] header = store.getHeader(655136);
+ * </pre>
+ */
+public class HeaderStore implements Closeable {
+
+    public static final int HEADER_SIZE = 80;
+    // The file grows by at least this many headers each time it is remapped.
+    private static final int GROWTH_HEADERS = 2016 * 64;
+
+    private final FileChannel channel;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MappedByteBuffer buffer;
+    // Number of headers stored, i.e. the tip height + 1.
+    private volatile int headerCount;
+
+    /**
+     * Opens the store kept in the given file, creating it if it doesn't exist.
+     * @param file
+     * @throws IOException
+     */
+    public HeaderStore(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileHeaders = channel.size() / HEADER_SIZE;
+        if (fileHeaders > Integer.MAX_VALUE / HEADER_SIZE) {
+            throw new IOException("Header file too big: " + file);
+        }
+        map((int) Math.max(fileHeaders, GROWTH_HEADERS));
+        int count = (int) fileHeaders;
+        while (count > 0 && isZero(count - 1)) {
+            count--;
+        }
+        headerCount = count;
+    }
+
+    /**
+     * Height of the last header stored, or -1 if the store is empty.
+     */
+    public int getHeight() {
+        return headerCount - 1;
+    }
+
+    /**
+     * Returns the header at the given height, or null if it is not stored.
+     * @param height
+     */
+    public byte[] getHeader(int height) {
+        byte[] header = new byte[HEADER_SIZE];
+        return getHeader(height, header, 0) ? header : null;
+    }
+
+    /**
+     * Copies the header at the given height into dst.
+     * @return false if the header is not stored
+     */
+    public boolean getHeader(int height, byte[] dst, int offset) {
+        lock.readLock().lock();
+        try {
+            if (height < 0 || height >= headerCount) {
+                return false;
+            }
+            int position = height * HEADER_SIZE;
+            for (int i = 0; i < HEADER_SIZE; i++) {
+                dst[offset + i] = buffer.get(position + i);
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the header at the given height, or null if it is not stored.
+     * @param height
+     */
+    public BlockHeader getBlockHeader(int height) {
+        byte[] header = getHeader(height);
+        return header == null ? null : new BlockHeader(header);
+    }
+
+    /**
+     * Returns the header at the given height as a hex string, as sent by the Electrum server, or null if it is not
+     * stored.
+     * @param height
+     */
+    public String getHeaderHex(int height) {
+        byte[] header = getHeader(height);
+        return header == null ? null : Utils.HEX.encode(header);
+    }
+
+    /**
+     * Returns the hash of the block at the given height, in internal byte order, or null if it is not stored.
+     * @param height
+     */
+    public byte[] getBlockHash(int height) {
+        BlockHeader header = getBlockHeader(height);
+        return header == null ? null : header.hash();
+    }
+
+    /**
+     * Appends a header after the tip.
+     * @param height Height of the header, must be getHeight() + 1
+     * @param header
+     * @throws IllegalArgumentException if the header doesn't link to the tip
+     */
+    public void putHeader(int height, BlockHeader header) throws IOException {
+        putHeaders(height, header.array(), header.arrayOffset(), 1);
+    }
+
+    /**
+     * Appends consecutive headers after the tip.
+     * @param startHeight Height of the first header, must be getHeight() + 1
+     * @param headers Buffer holding the concatenated 80-byte headers
+     * @param offset Offset of the first header in the buffer
+     * @param count Number of headers to append
+     * @throws IllegalArgumentException if the headers don't start right after the tip or don't link to each other
+     */
+    public void putHeaders(int startHeight, byte[] headers, int offset, int count) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (startHeight != headerCount) {
+                throw new IllegalArgumentException("Headers start at " + startHeight + " but the tip is " + getHeight());
+            }
+            Sha256Hasher hasher = Sha256Hasher.forCurrentThread();
+            byte[] previousHash = startHeight == 0 ? null : getBlockHash(startHeight - 1);
+            byte[] hash = new byte[Sha256Hasher.HASH_SIZE];
+            for (int i = 0; i < count; i++) {
+                int headerOffset = offset + i * HEADER_SIZE;
+                if (previousHash != null && !linksTo(headers, headerOffset, previousHash)) {
+                    throw new IllegalArgumentException("Header at height " + (startHeight + i) + " does not link to the previous header");
+                }
+                hasher.sha256d(headers, headerOffset, HEADER_SIZE, hash, 0);
+                previousHash = hash;
+            }
+            ensureCapacity(startHeight + count);
+            int position = startHeight * HEADER_SIZE;
+            for (int i = 0; i < count * HEADER_SIZE; i++) {
+                buffer.put(position + i, headers[offset + i]);
+            }
+            headerCount = startHeight + count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the headers above the given height, e.g. the blocks orphaned by a reorg.
+     * @param height The new tip height, -1 to empty the store
+     */
+    public void truncate(int height) {
+        lock.writeLock().lock();
+        try {
+            for (int position = (height + 1) * HEADER_SIZE; position < headerCount * HEADER_SIZE; position++) {
+                buffer.put(position, (byte) 0);
+            }
+            headerCount = Math.min(headerCount, height + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the changes to disk.
+     */
+    public void flush() {
+        lock.readLock().lock();
+        try {
+            buffer.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the changes to disk and closes the file, trimming the space reserved for headers not synced yet.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            buffer = null;
+            channel.truncate((long) headerCount * HEADER_SIZE);
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the header links to the block with the given hash, i.e. its prevHash field, at offset 4, is that hash.
+     */
+    static boolean linksTo(byte[] header, int offset, byte[] previousHash) {
+        return Arrays.equals(header, offset + 4, offset + 36, previousHash, 0, 32);
+    }
+
+    private boolean isZero(int height) {
+        int position = height * HEADER_SIZE;
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            if (buffer.get(position + i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int headers) throws IOException {
+        if ((long) headers * HEADER_SIZE > buffer.capacity()) {
+            map(Math.max(headers, buffer.capacity() / HEADER_SIZE + GROWTH_HEADERS));
+        }
+    }
+
+    private void map(int headers) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) headers * HEADER_SIZE);
+    }
+}
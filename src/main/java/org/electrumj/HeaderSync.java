@@ -0,0 +1,258 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Utils;
+import org.electrumj.dto.BlockchainBlockHeadersResponse;
+import org.electrumj.dto.BlockchainHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a HeaderStore in sync with the Electrum servers of a pool.
+ *
+ * The initial sync fetches the missing headers in chunks of 2016, several chunks in flight at once, spread over the
+ * connections of the pool. Afterwards, the "blockchain.headers.subscribe" notifications extend the store one header
+ * at a time, and roll it back when a notification reveals a reorg.
+ *
+ * Sample usage:
+ * <pre>
+ *     HeaderSync headerSync = new HeaderSync(store, pool);
+ *     headerSync.sync().get();
+ *     headerSync.subscribe(pool.getClient());
+ * </pre>
+ */
+public class HeaderSync implements BlockchainHeadersListener {
+
+    private static final Logger log = LoggerFactory.getLogger(HeaderSync.class);
+
+    // Maximum number of headers the Electrum servers return in a single "blockchain.block.headers" request.
+    public static final int CHUNK_SIZE = 2016;
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    private final HeaderStore store;
+    // Sends a request through one of the available connections.
+    private final Function<Function<ElectrumClient, CompletableFuture<BlockchainBlockHeadersResponse>>, CompletableFuture<BlockchainBlockHeadersResponse>> headersRequester;
+    private final Function<Long, CompletableFuture<String>> headerRequester;
+    private final Supplier<CompletableFuture<BlockchainHeader>> tipRequester;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    // Chains the updates of the store, so notifications are applied one after the other.
+    private CompletableFuture<Integer> lastUpdate = CompletableFuture.completedFuture(-1);
+
+    /**
+     * Creates a HeaderSync fetching the headers through the connections of the pool.
+     * @param store
+     * @param pool
+     */
+    public HeaderSync(HeaderStore store, ElectrumClientPool pool) {
+        this.store = store;
+        this.headersRequester = pool::submit;
+        this.headerRequester = height -> pool.submit(client -> client.blockchainBlockHeaderAsync(height));
+        this.tipRequester = () -> pool.submit(ElectrumClient::blockchainHeadersSubscribeAsync);
+    }
+
+    /**
+     * Creates a HeaderSync fetching the headers through a single connection.
+     * @param store
+     * @param client
+     */
+    public HeaderSync(HeaderStore store, ElectrumClient client) {
+        this.store = store;
+        this.headersRequester = request -> request.apply(client);
+        this.headerRequester = client::blockchainBlockHeaderAsync;
+        this.tipRequester = client::blockchainHeadersSubscribeAsync;
+    }
+
+    /**
+     * Sets the maximum number of chunks requested at once during the initial sync.
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        assert parallelism > 0;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Fetches the headers from the store's tip up to the given height.
+     * @return a future completed with the new height of the store
+     */
+    public synchronized CompletableFuture<Integer> sync(int tipHeight) {
+        lastUpdate = lastUpdate.handle((height, e) -> null).thenCompose(ignored -> fetchUpTo(tipHeight));
+        return lastUpdate;
+    }
+
+    /**
+     * Fetches the headers from the store's tip up to the current tip of the server.
+     * @return a future completed with the new height of the store
+     */
+    public CompletableFuture<Integer> sync() {
+        return serverTip().thenCompose(this::sync);
+    }
+
+    /**
+     * Subscribes to the new headers through the given connection and keeps the store in sync with them.
+     * The connection's headers listener is replaced by this HeaderSync.
+     * @param client
+     * @return a future completed with the height of the store once synced up to the current tip
+     */
+    public CompletableFuture<Integer> subscribe(ElectrumClient client) {
+        client.setBlockchainHeadersListener(this);
+        return client.blockchainHeadersSubscribeAsync().thenCompose(header -> sync((int) header.getHeight()));
+    }
+
+    /**
+     * Extends the store with the notified header, or rolls it back if the header reveals a reorg.
+     */
+    @Override
+    public synchronized void notifyNewBlockchainHeader(BlockchainHeader header) {
+        lastUpdate = lastUpdate.handle((height, e) -> null).thenCompose(ignored -> apply(header));
+        lastUpdate.exceptionally(e -> {
+            log.warn("Could not apply header " + header.getHeight() + ": " + e.getMessage(), e);
+            return null;
+        });
+    }
+
+    private CompletableFuture<Integer> serverTip() {
+        return tipRequester.get().thenApply(header -> (int) header.getHeight());
+    }
+
+    private CompletableFuture<Integer> apply(BlockchainHeader header) {
+        int height = (int) header.getHeight();
+        BlockHeader blockHeader;
+        try {
+            blockHeader = BlockHeader.fromHex(header.getHex());
+        } catch (IllegalArgumentException e) {
+            return failed(e);
+        }
+        int tip = store.getHeight();
+        try {
+            if (height == tip + 1 && (tip < 0 || blockHeader.linksTo(store.getBlockHeader(tip)))) {
+                store.putHeader(height, blockHeader);
+                return CompletableFuture.completedFuture(height);
+            }
+        } catch (IOException e) {
+            return failed(e);
+        }
+        if (height <= tip && blockHeader.equals(store.getBlockHeader(height))) {
+            return CompletableFuture.completedFuture(tip);
+        }
+        if (height > tip + 1 && tip >= 0) {
+            // Missed some headers: catch up, the fork point search below handles a reorg in between.
+            log.debug("Header " + height + " is ahead of the store tip " + tip + ", catching up");
+        } else {
+            log.info("Reorg detected at height " + height + ", looking for the fork point");
+        }
+        return findForkPoint(Math.min(tip, height - 1), 1).thenCompose(forkHeight -> {
+            store.truncate(forkHeight);
+            return fetchUpTo(height);
+        });
+    }
+
+    /**
+     * Walks back from the given height, with a doubling step, until the stored header matches the server's.
+     * @return a future completed with the height of the last header shared with the server
+     */
+    private CompletableFuture<Integer> findForkPoint(int height, int step) {
+        if (height < 0) {
+            return CompletableFuture.completedFuture(-1);
+        }
+        return headerRequester.apply((long) height).thenCompose(serverHex -> {
+            if (serverHex.equals(store.getHeaderHex(height))) {
+                return CompletableFuture.completedFuture(height);
+            }
+            return findForkPoint(height - step, step * 2);
+        });
+    }
+
+    /**
+     * Fetches the chunks between the store's tip and the given height, keeping up to parallelism chunks in flight.
+     * Chunks are appended to the store in order, as soon as all the previous ones are appended.
+     */
+    private CompletableFuture<Integer> fetchUpTo(int tipHeight) {
+        int start = store.getHeight() + 1;
+        if (start > tipHeight) {
+            return CompletableFuture.completedFuture(store.getHeight());
+        }
+        ChunkFetch fetch = new ChunkFetch(start, tipHeight);
+        fetch.start();
+        return fetch.result;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * State of one sync run: the chunks requested and the ones received but not appended yet.
+     */
+    private class ChunkFetch {
+        private final int tipHeight;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        // Start height of the next chunk to request.
+        private int nextRequestHeight;
+        // Received chunks waiting for the previous ones, by start height.
+        private final Map<Integer, byte[]> receivedChunks = new TreeMap<>();
+
+        private ChunkFetch(int startHeight, int tipHeight) {
+            this.tipHeight = tipHeight;
+            this.nextRequestHeight = startHeight;
+        }
+
+        private synchronized void start() {
+            for (int i = 0; i < parallelism; i++) {
+                requestNextChunk();
+            }
+        }
+
+        private synchronized void requestNextChunk() {
+            if (nextRequestHeight > tipHeight || result.isDone()) {
+                return;
+            }
+            int startHeight = nextRequestHeight;
+            int count = Math.min(CHUNK_SIZE, tipHeight - startHeight + 1);
+            nextRequestHeight += count;
+            headersRequester.apply(client -> client.blockchainBlockHeadersAsync(startHeight, count))
+                    .whenComplete((response, e) -> onChunk(startHeight, response, e));
+        }
+
+        private synchronized void onChunk(int startHeight, BlockchainBlockHeadersResponse response, Throwable e) {
+            if (result.isDone()) {
+                return;
+            }
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            receivedChunks.put(startHeight, Utils.HEX.decode(response.getHex()));
+            try {
+                byte[] chunk;
+                while ((chunk = receivedChunks.remove(store.getHeight() + 1)) != null) {
+                    int chunkStart = store.getHeight() + 1;
+                    int count = chunk.length / HeaderStore.HEADER_SIZE;
+                    store.putHeaders(chunkStart, chunk, 0, count);
+                    if (count < Math.min(CHUNK_SIZE, tipHeight - chunkStart + 1)) {
+                        // The server has no more headers, e.g. its tip is lower than the requested height.
+                        result.complete(store.getHeight());
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            if (store.getHeight() >= tipHeight) {
+                result.complete(store.getHeight());
+            } else {
+                requestNextChunk();
+            }
+        }
+    }
+}
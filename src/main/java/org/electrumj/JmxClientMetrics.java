@@ -0,0 +1,317 @@
+package org.electrumj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClientMetrics keeping counters and latency histograms per JSON-RPC method, exported as an MBean per method named
+ * org.electrumj:type=ClientMetrics,name="&lt;name&gt;",method="&lt;method&gt;", e.g. to be read with JConsole or a JMX
+ * exporter.
+ *
+ * The MBean of a method is registered when the method is first seen, recording afterwards is lock-free and doesn't
+ * allocate. A single instance can be shared by several connections, e.g. all the connections of a pool, to get their
+ * totals.
+ *
+ * Sample usage:
+ * <pre>
+ *     JmxClientMetrics metrics = new JmxClientMetrics("wallet");
+ *     pool.setMetrics(metrics);
+ *     ...
+ *     double p99 = metrics.getMethodMetrics("blockchain.scripthash.get_history").getLatencyP99Millis();
+ * </pre>
+ */
+public class JmxClientMetrics implements ClientMetrics, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(JmxClientMetrics.class);
+
+    private final String name;
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    /**
+     * Creates the metrics of the given name.
+     * @param name Distinguishes the MBeans of this instance from those of other instances, e.g. "wallet"
+     */
+    public JmxClientMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Methods seen so far.
+     */
+    public Set<String> getMethods() {
+        return methods.keySet();
+    }
+
+    /**
+     * Returns the metrics of the method, or null if it wasn't seen yet.
+     * @param method The JSON-RPC method
+     */
+    public MethodMetrics getMethodMetrics(String method) {
+        return methods.get(method);
+    }
+
+    /**
+     * Unregisters the MBeans. Recording afterwards registers them again.
+     */
+    @Override
+    public void close() {
+        for (String method : methods.keySet()) {
+            try {
+                mBeanServer.unregisterMBean(objectNameOf(method));
+            } catch (JMException e) {
+                log.warn(e.getMessage(), e);
+            }
+        }
+        methods.clear();
+    }
+
+    // Section recording
+
+    @Override
+    public void requestSent(String method, int bytes) {
+        MethodMetrics metrics = metricsOf(method);
+        metrics.inFlight.increment();
+        metrics.bytesWritten.add(bytes);
+    }
+
+    @Override
+    public void responseReceived(String method, long latencyNanos, int bytes, boolean error) {
+        MethodMetrics metrics = metricsOf(method);
+        metrics.inFlight.decrement();
+        metrics.requestCount.increment();
+        if (error) {
+            metrics.errorCount.increment();
+        }
+        metrics.bytesRead.add(bytes);
+        metrics.latency.record(latencyNanos);
+    }
+
+    @Override
+    public void requestFailed(String method) {
+        MethodMetrics metrics = metricsOf(method);
+        metrics.inFlight.decrement();
+        metrics.failedCount.increment();
+    }
+
+    @Override
+    public void notificationReceived(String method, int bytes) {
+        MethodMetrics metrics = metricsOf(method);
+        metrics.notificationCount.increment();
+        metrics.notificationBytes.add(bytes);
+    }
+
+    @Override
+    public void notificationDispatched(String method, long lagNanos) {
+        metricsOf(method).dispatchLag.record(lagNanos);
+    }
+
+    private MethodMetrics metricsOf(String method) {
+        MethodMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(method, this::register);
+        }
+        return metrics;
+    }
+
+    private MethodMetrics register(String method) {
+        MethodMetrics metrics = new MethodMetrics();
+        try {
+            ObjectName objectName = objectNameOf(method);
+            if (mBeanServer.isRegistered(objectName)) {
+                // Left by another instance of the same name.
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(new StandardMBean(metrics, MethodMetricsMBean.class), objectName);
+        } catch (JMException e) {
+            log.warn(e.getMessage(), e);
+        }
+        return metrics;
+    }
+
+    private ObjectName objectNameOf(String method) throws JMException {
+        return new ObjectName("org.electrumj:type=ClientMetrics,name=" + ObjectName.quote(name)
+                + ",method=" + ObjectName.quote(method));
+    }
+
+    /**
+     * The attributes of the MBean of a method. Latencies are in milliseconds.
+     */
+    public interface MethodMetricsMBean {
+        /** Number of responses received, including errors. */
+        long getRequestCount();
+        /** Number of responses that were JSON-RPC errors. */
+        long getErrorCount();
+        /** Number of requests that got no response: timed out, cancelled or lost with the connection. */
+        long getFailedCount();
+        /** Number of requests waiting for their response. */
+        long getInFlight();
+        long getBytesWritten();
+        long getBytesRead();
+        double getLatencyMeanMillis();
+        double getLatencyP50Millis();
+        double getLatencyP99Millis();
+        double getLatencyP999Millis();
+        double getLatencyMaxMillis();
+        long getNotificationCount();
+        long getNotificationBytes();
+        /** Notifications per second, as a one minute moving average. */
+        double getNotificationRate();
+        /** Time between reading a notification and calling its listeners. */
+        double getDispatchLagP99Millis();
+        double getDispatchLagMaxMillis();
+    }
+
+    /**
+     * The metrics of a method.
+     */
+    public static class MethodMetrics implements MethodMetricsMBean {
+
+        // The notification rate is updated every RATE_TICK_SECONDS, when read.
+        private static final int RATE_TICK_SECONDS = 5;
+        private static final long RATE_TICK_NANOS = TimeUnit.SECONDS.toNanos(RATE_TICK_SECONDS);
+        // Weight of the latest tick in the one minute moving average.
+        private static final double RATE_ALPHA = 1 - Math.exp(-RATE_TICK_SECONDS / 60.0);
+
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder errorCount = new LongAdder();
+        private final LongAdder failedCount = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder notificationCount = new LongAdder();
+        private final LongAdder notificationBytes = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram dispatchLag = new LatencyHistogram();
+
+        // Guarded by this.
+        private long rateTickNanos = System.nanoTime();
+        private long rateTickCount;
+        private double rate = -1;
+
+        private MethodMetrics() {
+        }
+
+        @Override
+        public long getRequestCount() {
+            return requestCount.sum();
+        }
+
+        @Override
+        public long getErrorCount() {
+            return errorCount.sum();
+        }
+
+        @Override
+        public long getFailedCount() {
+            return failedCount.sum();
+        }
+
+        @Override
+        public long getInFlight() {
+            return inFlight.sum();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return bytesWritten.sum();
+        }
+
+        @Override
+        public long getBytesRead() {
+            return bytesRead.sum();
+        }
+
+        @Override
+        public double getLatencyMeanMillis() {
+            return latency.getMean() / 1e6;
+        }
+
+        @Override
+        public double getLatencyP50Millis() {
+            return latency.getPercentile(0.5) / 1e6;
+        }
+
+        @Override
+        public double getLatencyP99Millis() {
+            return latency.getPercentile(0.99) / 1e6;
+        }
+
+        @Override
+        public double getLatencyP999Millis() {
+            return latency.getPercentile(0.999) / 1e6;
+        }
+
+        @Override
+        public double getLatencyMaxMillis() {
+            return latency.getMax() / 1e6;
+        }
+
+        @Override
+        public long getNotificationCount() {
+            return notificationCount.sum();
+        }
+
+        @Override
+        public long getNotificationBytes() {
+            return notificationBytes.sum();
+        }
+
+        @Override
+        public synchronized double getNotificationRate() {
+            long now = System.nanoTime();
+            long ticks = (now - rateTickNanos) / RATE_TICK_NANOS;
+            if (ticks > 0) {
+                long count = notificationCount.sum();
+                double tickRate = (double) (count - rateTickCount) / ticks / RATE_TICK_SECONDS;
+                if (rate < 0) {
+                    rate = tickRate;
+                } else {
+                    // The elapsed ticks all had the average rate, after a minute the previous rate doesn't count.
+                    for (long i = 0; i < Math.min(ticks, 60 / RATE_TICK_SECONDS * 10); i++) {
+                        rate += RATE_ALPHA * (tickRate - rate);
+                    }
+                }
+                rateTickCount = count;
+                rateTickNanos += ticks * RATE_TICK_NANOS;
+            }
+            return Math.max(rate, 0);
+        }
+
+        @Override
+        public double getDispatchLagP99Millis() {
+            return dispatchLag.getPercentile(0.99) / 1e6;
+        }
+
+        @Override
+        public double getDispatchLagMaxMillis() {
+            return dispatchLag.getMax() / 1e6;
+        }
+
+        /**
+         * Latencies of the responses, in nanoseconds.
+         */
+        public LatencyHistogram getLatencyHistogram() {
+            return latency;
+        }
+
+        /**
+         * Times between reading a notification and calling its listeners, in nanoseconds.
+         */
+        public LatencyHistogram getDispatchLagHistogram() {
+            return dispatchLag;
+        }
+    }
+}
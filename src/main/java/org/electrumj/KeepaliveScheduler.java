@@ -0,0 +1,199 @@
+package org.electrumj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pings the idle connections of any number of clients from a single thread, so servers and NATs don't drop them,
+ * and recycles the connections that stopped answering.
+ *
+ * A connection is idle when nothing was read from it for the ping interval. Its "server.ping" round trip time is
+ * recorded by the client, see ElectrumClient.getRttEwmaMillis and getRttHistogram, and used by ElectrumClientPool to
+ * route requests to fast servers. A ping not answered within the timeout is missed. After too many missed pings in a
+ * row the connection is closed as lost: a client with auto reconnect opens a new one, a pool replaces it.
+ *
+ * Sample usage:
+ * <pre>
+ *     KeepaliveScheduler keepalive = new KeepaliveScheduler();
+ *     keepalive.register(client);
+ *     ...
+ *     keepalive.close();
+ * </pre>
+ */
+public class KeepaliveScheduler implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(KeepaliveScheduler.class);
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 30_000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    public static final int DEFAULT_MAX_MISSED_PINGS = 2;
+
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final int maxMissedPings;
+    private final Map<ElectrumClient, PingState> clients = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong pingCount = new AtomicLong();
+    private final AtomicLong missedPingCount = new AtomicLong();
+    private final AtomicLong recycledCount = new AtomicLong();
+
+    /**
+     * Creates a scheduler pinging after DEFAULT_INTERVAL_MILLIS of idleness, recycling a connection after
+     * DEFAULT_MAX_MISSED_PINGS pings not answered within DEFAULT_TIMEOUT_MILLIS.
+     */
+    public KeepaliveScheduler() {
+        this(DEFAULT_INTERVAL_MILLIS, DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_MISSED_PINGS);
+    }
+
+    /**
+     * Creates a scheduler with the given parameters.
+     * @param intervalMillis A connection is pinged when nothing was read from it for this long
+     * @param timeoutMillis A ping not answered within this delay is missed
+     * @param maxMissedPings The connection is recycled after this many pings missed in a row
+     */
+    public KeepaliveScheduler(long intervalMillis, long timeoutMillis, int maxMissedPings) {
+        assert intervalMillis > 0 && timeoutMillis > 0 && maxMissedPings > 0;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxMissedPings = maxMissedPings;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "electrumj-keepalive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Checks often enough for a ping to be sent, or missed, at most a quarter of its delay late.
+        long checkIntervalMillis = Math.max(1, Math.min(intervalMillis, timeoutMillis) / 4);
+        executor.scheduleWithFixedDelay(this::check, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts keeping the connection of the client alive.
+     * @param client
+     */
+    public void register(ElectrumClient client) {
+        clients.putIfAbsent(client, new PingState());
+    }
+
+    /**
+     * Stops keeping the connection of the client alive, e.g. before closing it.
+     * @param client
+     */
+    public void unregister(ElectrumClient client) {
+        clients.remove(client);
+    }
+
+    /**
+     * Number of pings sent.
+     */
+    public long getPingCount() {
+        return pingCount.get();
+    }
+
+    /**
+     * Number of pings not answered within the timeout.
+     */
+    public long getMissedPingCount() {
+        return missedPingCount.get();
+    }
+
+    /**
+     * Number of connections closed because they missed too many pings.
+     */
+    public long getRecycledCount() {
+        return recycledCount.get();
+    }
+
+    /**
+     * Stops pinging. The clients are left open.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        clients.clear();
+    }
+
+    private void check() {
+        for (Map.Entry<ElectrumClient, PingState> entry : clients.entrySet()) {
+            try {
+                check(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                log.warn(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void check(ElectrumClient client, PingState state) {
+        if (!client.isConnectionOpen()) {
+            // Closed, or reconnecting: the next connection starts afresh.
+            synchronized (state) {
+                state.ping = null;
+                state.missedPings = 0;
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (state) {
+            if (state.ping != null) {
+                if (now - state.pingSentNanos < timeoutNanos) {
+                    return;
+                }
+                CompletableFuture<Object> missed = state.ping;
+                state.ping = null;
+                // Forgotten by the connection, its late response is dropped.
+                missed.cancel(false);
+                missedPingCount.incrementAndGet();
+                if (++state.missedPings >= maxMissedPings) {
+                    state.missedPings = 0;
+                    recycledCount.incrementAndGet();
+                    log.info("Connection to " + client.getServerHostnameOrIp() + ":" + client.getServerPort()
+                            + " missed " + maxMissedPings + " pings, closing it");
+                    client.recycleConnection(new IOException("Server not answering pings"));
+                    return;
+                }
+                // Otherwise pinged again right away.
+            } else if (now - client.getLastReceivedNanos() < intervalNanos) {
+                return;
+            }
+            state.pingSentNanos = now;
+            // Not coalesced, so the round trip is measured on this connection.
+            CompletableFuture<Object> ping = RequestCoalescer.bypass(client::serverPingAsync);
+            state.ping = ping;
+            pingCount.incrementAndGet();
+            ping.whenComplete((result, error) -> {
+                long rttNanos = System.nanoTime() - now;
+                synchronized (state) {
+                    if (state.ping != ping) {
+                        return;
+                    }
+                    state.ping = null;
+                    if (error == null) {
+                        state.missedPings = 0;
+                    }
+                }
+                if (error == null) {
+                    client.recordRtt(rttNanos);
+                }
+            });
+        }
+    }
+
+    /**
+     * The ping in flight on a connection and its pings missed in a row. Guarded by its own monitor.
+     */
+    private static class PingState {
+        private CompletableFuture<Object> ping;
+        private long pingSentNanos;
+        private int missedPings;
+    }
+}
@@ -0,0 +1,55 @@
+package org.electrumj;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Splits a stream of bytes into '\n' terminated lines. Bytes of an incomplete line are kept until the rest of the
+ * line arrives.
+ */
+class LineFramer {
+
+    private static final int INITIAL_LINE_CAPACITY = 8 * 1024;
+    // Lines bigger than this are not kept around once emitted, to release the memory of a huge response.
+    private static final int MAX_RETAINED_LINE_CAPACITY = 1024 * 1024;
+
+    private byte[] line = new byte[INITIAL_LINE_CAPACITY];
+    private int lineLength = 0;
+
+    /**
+     * Consumes all the remaining bytes of the buffer, passing each completed line, without the trailing '\n',
+     * to the consumer.
+     */
+    void feed(ByteBuffer buffer, Consumer<String> consumer) {
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            int end = start;
+            int limit = buffer.limit();
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            append(buffer, end - start);
+            if (end < limit) {
+                // Skip the '\n'
+                buffer.get();
+                int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                lineLength = 0;
+                String message = new String(line, 0, length, StandardCharsets.UTF_8);
+                if (line.length > MAX_RETAINED_LINE_CAPACITY) {
+                    line = new byte[INITIAL_LINE_CAPACITY];
+                }
+                consumer.accept(message);
+            }
+        }
+    }
+
+    private void append(ByteBuffer buffer, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        buffer.get(line, lineLength, length);
+        lineLength += length;
+    }
+}
@@ -0,0 +1,82 @@
+package org.electrumj;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes '\n' terminated lines into an OutputStream, coalescing the lines sent concurrently into a single write.
+ *
+ * Each line is copied, along with its '\n', into a buffer reused from write to write, so a line and its newline
+ * are written at once, i.e. in a single TLS record on an SSLSocket. A thread sending a line while another thread is
+ * writing only queues it: the writing thread writes all the lines queued meanwhile in the same write, so requests
+ * pipelined by many threads are gathered into few flushes.
+ */
+class LineWriter {
+
+    private static final int INITIAL_BUFFER_CAPACITY = 8 * 1024;
+    // Queued lines are written in writes of about this size, a few TLS records each.
+    private static final int MAX_WRITE_SIZE = 64 * 1024;
+    // A buffer grown bigger than this for a huge line is not kept around once written.
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 1024 * 1024;
+
+    private final OutputStream out;
+    private final Queue<byte[]> queuedLines = new ConcurrentLinkedQueue<>();
+    // Held by the thread writing into out.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guarded by writeLock.
+    private byte[] buffer = new byte[INITIAL_BUFFER_CAPACITY];
+
+    LineWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the line followed by '\n', or queues it if another thread is writing, in which case that thread writes
+     * it. Can be invoked from any thread.
+     * @param line The line, without the trailing '\n'
+     * @throws IOException if writing failed, the lines queued by other threads may then be lost
+     */
+    void send(byte[] line) throws IOException {
+        queuedLines.add(line);
+        // Checked again once the lock is released, so a line queued while the lock was held is never left behind.
+        while (!queuedLines.isEmpty() && writeLock.tryLock()) {
+            try {
+                writeQueuedLines();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private void writeQueuedLines() throws IOException {
+        int length = 0;
+        byte[] line;
+        while ((line = queuedLines.poll()) != null) {
+            if (length > 0 && length + line.length + 1 > MAX_WRITE_SIZE) {
+                out.write(buffer, 0, length);
+                length = 0;
+            }
+            if (length + line.length + 1 > buffer.length) {
+                byte[] bigger = new byte[Math.max(buffer.length * 2, length + line.length + 1)];
+                System.arraycopy(buffer, 0, bigger, 0, length);
+                buffer = bigger;
+            }
+            System.arraycopy(line, 0, buffer, length, line.length);
+            length += line.length;
+            buffer[length++] = '\n';
+        }
+        try {
+            if (length > 0) {
+                out.write(buffer, 0, length);
+                out.flush();
+            }
+        } finally {
+            if (buffer.length > MAX_RETAINED_BUFFER_CAPACITY) {
+                buffer = new byte[INITIAL_BUFFER_CAPACITY];
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainTransactionGetMerkleResponse;
+import org.electrumj.dto.BlockchainTransactionIdFromPosMerkleResponse;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifies the merkle proofs sent by Electrum servers, so a transaction's confirmation doesn't have to be trusted:
+ * hashing the txid up the merkle branch must give the merkle root of the block header.
+ *
+ * Many proofs are verified at once, spread over a ForkJoinPool. Each worker thread hashes with its own
+ * Sha256Hasher and scratch buffers, so verifying doesn't allocate.
+ *
+ * Sample usage:
+ * <pre>
+ *     List&lt;MerkleProofVerifier.Proof&gt; proofs = new ArrayList&lt;&gt;();
+ *     for (String txHash : txHashes) {
+ *         BlockchainTransactionGetMerkleResponse merkle = client.blockchainTransactionGetMerkle(txHash, height);
+ *         proofs.add(new MerkleProofVerifier.Proof(txHash, merkle, headerStore.getHeader((int) height)));
+ *     }
+ *     boolean[] valid = new MerkleProofVerifier().verify(proofs);
+ * </pre>
+ */
+public class MerkleProofVerifier {
+
+    // Below this number of proofs a task verifies them itself instead of splitting them.
+    private static final int SPLIT_THRESHOLD = 64;
+    // Offset of the merkle root in a block header.
+    private static final int MERKLE_ROOT_OFFSET = 36;
+
+    private static final ThreadLocal<byte[]> threadScratch = ThreadLocal.withInitial(() -> new byte[Sha256Hasher.HASH_SIZE]);
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a verifier running on the common ForkJoinPool.
+     */
+    public MerkleProofVerifier() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a verifier running on the given ForkJoinPool.
+     * @param pool
+     */
+    public MerkleProofVerifier(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Verifies all the proofs, in parallel.
+     * @param proofs
+     * @return whether each proof is valid, in the same order as the proofs
+     */
+    public boolean[] verify(List<Proof> proofs) {
+        boolean[] results = new boolean[proofs.size()];
+        pool.invoke(new VerifyTask(proofs, results, 0, proofs.size()));
+        return results;
+    }
+
+    /**
+     * Verifies a single proof on the calling thread.
+     * @param proof
+     * @return whether the proof is valid
+     */
+    public static boolean verify(Proof proof) {
+        byte[] current = threadScratch.get();
+        Sha256Hasher hasher = Sha256Hasher.forCurrentThread();
+        byte[] branch = proof.getBranch();
+        int branchLength = branch.length / Sha256Hasher.HASH_SIZE;
+        long index = proof.pos;
+        if (index < 0 || (branchLength < 63 && index >> branchLength != 0)) {
+            // The position does not fit in a tree of this depth.
+            return false;
+        }
+        System.arraycopy(proof.getTxHash(), 0, current, 0, Sha256Hasher.HASH_SIZE);
+        for (int i = 0; i < branchLength; i++) {
+            int siblingOffset = i * Sha256Hasher.HASH_SIZE;
+            if ((index & 1) == 1) {
+                hasher.sha256dPair(branch, siblingOffset, current, 0, current, 0);
+            } else {
+                hasher.sha256dPair(current, 0, branch, siblingOffset, current, 0);
+            }
+            index >>= 1;
+        }
+        byte[] header = proof.header;
+        int merkleRootOffset = proof.headerOffset + MERKLE_ROOT_OFFSET;
+        for (int i = 0; i < Sha256Hasher.HASH_SIZE; i++) {
+            if (current[i] != header[merkleRootOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A transaction's merkle proof and the header of the block it is claimed to be in.
+     */
+    public static class Proof {
+        private final String txHashHex;
+        private final List<String> merkleHex;
+        private final long pos;
+        private final byte[] header;
+        private final int headerOffset;
+        // Decoded from hex on first use, in the order they are hashed in.
+        private byte[] txHash;
+        private byte[] branch;
+
+        /**
+         * @param txHash The txid, as sent by the server
+         * @param merkle The merkle branch, as sent by the server
+         * @param pos The position of the transaction in the block
+         * @param header The 80-byte block header
+         */
+        public Proof(String txHash, List<String> merkle, long pos, byte[] header) {
+            this(txHash, merkle, pos, header, 0);
+            assert header.length == HeaderStore.HEADER_SIZE;
+        }
+
+        /**
+         * @param txHash The txid, as sent by the server
+         * @param merkle The merkle branch, as sent by the server
+         * @param pos The position of the transaction in the block
+         * @param header The block header, e.g. a view over a chunk of headers
+         */
+        public Proof(String txHash, List<String> merkle, long pos, BlockHeader header) {
+            this(txHash, merkle, pos, header.array(), header.arrayOffset());
+        }
+
+        private Proof(String txHash, List<String> merkle, long pos, byte[] header, int headerOffset) {
+            this.txHashHex = txHash;
+            this.merkleHex = merkle;
+            this.pos = pos;
+            this.header = header;
+            this.headerOffset = headerOffset;
+        }
+
+        /**
+         * @param txHash The txid, as sent by the server
+         * @param merkle The response to "blockchain.transaction.get_merkle"
+         * @param header The 80-byte block header
+         */
+        public Proof(String txHash, BlockchainTransactionGetMerkleResponse merkle, byte[] header) {
+            this(txHash, merkle.getMerkle(), merkle.getPos(), header);
+        }
+
+        /**
+         * @param txHash The txid, as sent by the server
+         * @param merkle The response to "blockchain.transaction.get_merkle"
+         * @param header The block header
+         */
+        public Proof(String txHash, BlockchainTransactionGetMerkleResponse merkle, BlockHeader header) {
+            this(txHash, merkle.getMerkle(), merkle.getPos(), header);
+        }
+
+        /**
+         * @param merkle The response to "blockchain.transaction.id_from_pos" with merkle set to true
+         * @param txPos The position requested
+         * @param header The 80-byte block header
+         */
+        public Proof(BlockchainTransactionIdFromPosMerkleResponse merkle, long txPos, byte[] header) {
+            this(merkle.getTxHash(), merkle.getMerkle(), txPos, header);
+        }
+
+        private byte[] getTxHash() {
+            if (txHash == null) {
+                txHash = new byte[Sha256Hasher.HASH_SIZE];
+                Util.reversedHexToBytes(txHashHex, txHash, 0);
+            }
+            return txHash;
+        }
+
+        private byte[] getBranch() {
+            if (branch == null) {
+                branch = new byte[merkleHex.size() * Sha256Hasher.HASH_SIZE];
+                for (int i = 0; i < merkleHex.size(); i++) {
+                    Util.reversedHexToBytes(merkleHex.get(i), branch, i * Sha256Hasher.HASH_SIZE);
+                }
+            }
+            return branch;
+        }
+    }
+
+    private static class VerifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Proof> proofs;
+        private final boolean[] results;
+        private final int from;
+        private final int to;
+
+        private VerifyTask(List<Proof> proofs, boolean[] results, int from, int to) {
+            this.proofs = proofs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    results[i] = verifyQuietly(proofs.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new VerifyTask(proofs, results, from, middle), new VerifyTask(proofs, results, middle, to));
+        }
+
+        private static boolean verifyQuietly(Proof proof) {
+            try {
+                return verify(proof);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // Malformed hex sent by the server
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package org.electrumj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking transport over a SocketChannel and an SSLEngine, driven by a selector thread of a SelectorPool.
+ *
+ * All the SSLEngine and channel operations run on the selector thread. Messages sent from other threads are queued
+ * and written by the selector thread. Received messages are framed by '\n' on the selector thread and passed to the
+ * listener from it.
+ */
+class NioTransport implements Transport, SelectorPool.ChannelHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(NioTransport.class);
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    // Maximum number of queued messages wrapped together into the same TLS records.
+    private static final int MAX_GATHERED_MESSAGES = 64;
+
+    private final String serverHostnameOrIp;
+    private final int serverPort;
+    private final SSLContext sslContext;
+    private final SelectorPool.SelectorLoop loop;
+    private final ByteBufferPool bufferPool;
+    // Time connecting and the TLS handshake have to complete, or 0 for no timeout.
+    private final long connectTimeoutMillis;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SSLEngine engine;
+    // Encrypted bytes read from the channel, not unwrapped yet. Kept in write mode.
+    private ByteBuffer netIn;
+    // Encrypted bytes to write into the channel. Kept in write mode.
+    private ByteBuffer netOut;
+    // Decrypted bytes, drained into the framer after each unwrap.
+    private ByteBuffer appIn;
+    private final LineFramer framer = new LineFramer();
+
+    // Messages sent by the callers, waiting to be wrapped by the selector thread.
+    private final Queue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Queued messages being wrapped together. Only used by the selector thread.
+    private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_MESSAGES];
+
+    private final CompletableFuture<Void> handshakeFuture = new CompletableFuture<>();
+    private boolean handshakeFinished = false;
+    private Listener listener;
+    private volatile boolean closed = false;
+
+    NioTransport(String serverHostnameOrIp, int serverPort, SSLContext sslContext, SelectorPool selectorPool,
+                 long connectTimeoutMillis) {
+        this.serverHostnameOrIp = serverHostnameOrIp;
+        this.serverPort = serverPort;
+        this.sslContext = sslContext;
+        this.loop = selectorPool.nextLoop();
+        this.bufferPool = selectorPool.getBufferPool();
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    public void open(Listener listener) throws IOException {
+        this.listener = listener;
+        engine = sslContext.createSSLEngine(serverHostnameOrIp, serverPort);
+        engine.setUseClientMode(true);
+        SSLSession session = engine.getSession();
+        netIn = bufferPool.acquire(session.getPacketBufferSize());
+        netOut = bufferPool.acquire(session.getPacketBufferSize());
+        appIn = bufferPool.acquire(session.getApplicationBufferSize());
+        boolean connected;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connected = channel.connect(new InetSocketAddress(serverHostnameOrIp, serverPort));
+            engine.beginHandshake();
+        } catch (IOException | RuntimeException e) {
+            closed = true;
+            release();
+            throw e;
+        }
+        int ops = connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT;
+        loop.register(channel, ops, this).exceptionally(e -> {
+            handshakeFuture.completeExceptionally(new IOException(e));
+            return null;
+        });
+        try {
+            if (connectTimeoutMillis > 0) {
+                handshakeFuture.get(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                handshakeFuture.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IOException(e);
+        } catch (TimeoutException e) {
+            close();
+            throw new SocketTimeoutException("Connect timed out after " + connectTimeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            if (!closed) {
+                // Not registered, so not owned by the selector thread. A failed handshake is already released.
+                closed = true;
+                release();
+            }
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(message.length + 1);
+        buffer.put(message).put((byte) '\n').flip();
+        outgoing.add(buffer);
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(() -> {
+                flushScheduled.set(false);
+                process();
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        loop.execute(() -> {
+            try {
+                engine.closeOutbound();
+                wrap(EMPTY);
+                flushNetOut();
+            } catch (IOException e) {
+                log.debug(e.getMessage(), e);
+            }
+            release();
+        });
+    }
+
+    @Override
+    public void onRegistered(SelectionKey key) {
+        this.key = key;
+        if (channel.isConnected()) {
+            process();
+        }
+    }
+
+    @Override
+    public void onReady(SelectionKey key) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (key.isConnectable()) {
+                if (!channel.finishConnect()) {
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            if (key.isReadable()) {
+                int read = channel.read(netIn);
+                if (read < 0) {
+                    fail(new IOException("Connection closed by the server"));
+                    return;
+                }
+            }
+            process();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onClosed(IOException cause) {
+        fail(cause);
+    }
+
+    /**
+     * Makes as much progress as possible with the data available: handshake steps, unwrapping received data and
+     * wrapping queued messages. Runs on the selector thread.
+     */
+    private void process() {
+        if (closed || key == null) {
+            return;
+        }
+        try {
+            boolean progress = true;
+            while (progress) {
+                if (!flushNetOut()) {
+                    // The socket send buffer is full, continue once the channel is writable.
+                    return;
+                }
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK:
+                        Runnable task;
+                        while ((task = engine.getDelegatedTask()) != null) {
+                            task.run();
+                        }
+                        progress = true;
+                        break;
+                    case NEED_WRAP:
+                        progress = wrap(EMPTY);
+                        break;
+                    case NEED_UNWRAP:
+                        progress = unwrap();
+                        break;
+                    default:
+                        if (!handshakeFinished) {
+                            handshakeFinished = true;
+                            handshakeFuture.complete(null);
+                        }
+                        boolean unwrapped = unwrap();
+                        boolean wrapped = wrapOutgoing();
+                        progress = unwrapped || wrapped;
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Wraps the queued messages into netOut, as long as it has room. The messages are wrapped several at a time, so
+     * small messages pipelined together share TLS records instead of taking one record each.
+     */
+    private boolean wrapOutgoing() throws SSLException {
+        boolean produced = false;
+        while (!outgoing.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer message : outgoing) {
+                gathered[count++] = message;
+                if (count == MAX_GATHERED_MESSAGES) {
+                    break;
+                }
+            }
+            boolean wrapped = wrap(gathered, count);
+            for (int i = 0; i < count && !gathered[i].hasRemaining(); i++) {
+                outgoing.poll();
+            }
+            Arrays.fill(gathered, 0, count, null);
+            if (!wrapped) {
+                break;
+            }
+            produced = true;
+        }
+        return produced;
+    }
+
+    /**
+     * @return true if the engine produced or consumed data
+     */
+    private boolean wrap(ByteBuffer source) throws SSLException {
+        return wrap(new ByteBuffer[] {source}, 1);
+    }
+
+    /**
+     * Wraps the first count sources, in order, into netOut.
+     * @return true if the engine produced or consumed data
+     */
+    private boolean wrap(ByteBuffer[] sources, int count) throws SSLException {
+        SSLEngineResult result = engine.wrap(sources, 0, count, netOut);
+        switch (result.getStatus()) {
+            case BUFFER_OVERFLOW:
+                // netOut is full, it will be wrapped into once flushed.
+                return false;
+            case CLOSED:
+                return result.bytesProduced() > 0;
+            default:
+                return result.bytesProduced() > 0 || result.bytesConsumed() > 0;
+        }
+    }
+
+    /**
+     * Unwraps the data in netIn and passes the completed lines to the listener.
+     * @return true if the engine produced or consumed data
+     */
+    private boolean unwrap() throws IOException {
+        netIn.flip();
+        SSLEngineResult result;
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+        appIn.flip();
+        framer.feed(appIn, this::deliver);
+        appIn.clear();
+        switch (result.getStatus()) {
+            case BUFFER_UNDERFLOW:
+                if (!netIn.hasRemaining()) {
+                    // A TLS record bigger than the buffer: make room for it.
+                    netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+                }
+                return false;
+            case BUFFER_OVERFLOW:
+                appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                return true;
+            case CLOSED:
+                fail(new IOException("Connection closed by the server"));
+                return false;
+            default:
+                return result.bytesProduced() > 0 || result.bytesConsumed() > 0;
+        }
+    }
+
+    /**
+     * Writes netOut into the channel.
+     * @return true if netOut was completely written
+     */
+    private boolean flushNetOut() throws IOException {
+        netOut.flip();
+        try {
+            if (netOut.hasRemaining()) {
+                channel.write(netOut);
+            }
+            boolean flushed = !netOut.hasRemaining();
+            if (key != null && key.isValid()) {
+                key.interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            return flushed;
+        } finally {
+            netOut.compact();
+        }
+    }
+
+    private void deliver(String message) {
+        try {
+            listener.onMessage(message);
+        } catch (RuntimeException e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
+
+    private ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, minCapacity));
+        buffer.flip();
+        bigger.put(buffer);
+        bufferPool.release(buffer);
+        return bigger;
+    }
+
+    private void fail(IOException cause) {
+        if (!closed) {
+            closed = true;
+            release();
+            listener.onClosed(cause);
+        }
+        // Completed last, so open() sees the transport released.
+        handshakeFuture.completeExceptionally(cause);
+    }
+
+    /**
+     * Closes the channel and returns the buffers to the pool. Runs on the selector thread, or on the thread opening
+     * the transport if it was never registered.
+     */
+    private void release() {
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug(e.getMessage(), e);
+            }
+        }
+        if (netIn != null) {
+            bufferPool.release(netIn);
+            bufferPool.release(netOut);
+            bufferPool.release(appIn);
+            netIn = netOut = appIn = null;
+        }
+        outgoing.clear();
+    }
+}
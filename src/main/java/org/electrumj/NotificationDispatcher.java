@@ -0,0 +1,304 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainHeader;
+import org.electrumj.dto.BlockchainScripthashStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes the notifications of one or more connections to any number of listeners, on its own threads, so a slow
+ * listener doesn't stall the thread reading the connection.
+ *
+ * Notifications are striped over a fixed number of threads: the notifications of a scripthash always go to the same
+ * thread, so the listeners see them in the order the server sent them, while different scripthashes are handled in
+ * parallel. Headers notifications all go to the same thread too.
+ *
+ * Each thread has a bounded queue. When a queue is full, the overflow policy decides whether the reading thread
+ * waits for room, pushing back on the server through TCP, or whether a notification is dropped.
+ *
+ * Sample usage:
+ * <pre>
+ *     NotificationDispatcher dispatcher = new NotificationDispatcher(4, 10_000, NotificationDispatcher.OverflowPolicy.DROP_OLDEST);
+ *     dispatcher.addBlockchainScripthashesListener(status -&gt; ...);
+ *     dispatcher.addBlockchainScripthashesListener(walletSync);
+ *     client.setNotificationDispatcher(dispatcher);
+ * </pre>
+ */
+public class NotificationDispatcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    /**
+     * What to do with a notification when the queue of its thread is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The reading thread waits until there is room in the queue. Listeners must then not wait for a response
+         * from a connection they are notified of, as its notifications may be waiting for them.
+         */
+        BLOCK,
+        /** The new notification is dropped. */
+        DROP_NEWEST,
+        /** The oldest notification of the queue is dropped to make room for the new one. */
+        DROP_OLDEST
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    private final Stripe[] stripes;
+    private final OverflowPolicy overflowPolicy;
+    private final List<BlockchainHeadersListener> blockchainHeadersListeners = new CopyOnWriteArrayList<>();
+    private final List<BlockchainScripthashesListener> blockchainScripthashesListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    // Highest number of notifications seen waiting in a single queue.
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a dispatcher with a thread per available processor, queues of DEFAULT_QUEUE_CAPACITY and the BLOCK
+     * policy.
+     */
+    public NotificationDispatcher() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Creates a dispatcher with the given parameters.
+     * @param threadCount Number of threads the notifications are striped over
+     * @param queueCapacity Maximum number of notifications waiting for each thread
+     * @param overflowPolicy What to do with a notification when the queue of its thread is full
+     */
+    public NotificationDispatcher(int threadCount, int queueCapacity, OverflowPolicy overflowPolicy) {
+        assert threadCount > 0;
+        assert queueCapacity > 0;
+        this.overflowPolicy = overflowPolicy;
+        stripes = new Stripe[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            stripes[i] = new Stripe("electrumj-notifications-" + i, queueCapacity);
+        }
+    }
+
+    // Section listeners
+
+    /**
+     * Adds a listener notified of the new block headers.
+     * @param blockchainHeadersListener
+     */
+    public void addBlockchainHeadersListener(BlockchainHeadersListener blockchainHeadersListener) {
+        blockchainHeadersListeners.add(blockchainHeadersListener);
+    }
+
+    /**
+     * Removes a listener added with addBlockchainHeadersListener.
+     * @param blockchainHeadersListener
+     */
+    public void removeBlockchainHeadersListener(BlockchainHeadersListener blockchainHeadersListener) {
+        blockchainHeadersListeners.remove(blockchainHeadersListener);
+    }
+
+    /**
+     * Adds a listener notified of the status changes of the subscribed scripthashes.
+     * @param blockchainScripthashesListener
+     */
+    public void addBlockchainScripthashesListener(BlockchainScripthashesListener blockchainScripthashesListener) {
+        blockchainScripthashesListeners.add(blockchainScripthashesListener);
+    }
+
+    /**
+     * Removes a listener added with addBlockchainScripthashesListener.
+     * @param blockchainScripthashesListener
+     */
+    public void removeBlockchainScripthashesListener(BlockchainScripthashesListener blockchainScripthashesListener) {
+        blockchainScripthashesListeners.remove(blockchainScripthashesListener);
+    }
+
+    // Section dispatch
+
+    /**
+     * Queues a new header for the headers listeners.
+     * @param header
+     */
+    void dispatchHeader(BlockchainHeader header) {
+        dispatchHeader(header, null, 0);
+    }
+
+    /**
+     * Queues a new header for the headers listeners, and reports the time it waited to the metrics.
+     * @param header
+     * @param metrics The metrics of the connection, or null
+     * @param receivedNanos When the notification was read, as given by System.nanoTime
+     */
+    void dispatchHeader(BlockchainHeader header, ClientMetrics metrics, long receivedNanos) {
+        if (blockchainHeadersListeners.isEmpty()) {
+            return;
+        }
+        enqueue(stripes[0], () -> {
+            if (metrics != null) {
+                metrics.notificationDispatched("blockchain.headers.subscribe", System.nanoTime() - receivedNanos);
+            }
+            for (BlockchainHeadersListener listener : blockchainHeadersListeners) {
+                try {
+                    listener.notifyNewBlockchainHeader(header);
+                } catch (RuntimeException e) {
+                    log.warn(e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues a scripthash status for the scripthashes listeners, on the thread of the scripthash.
+     * @param status
+     */
+    void dispatchScripthashStatus(BlockchainScripthashStatus status) {
+        dispatchScripthashStatus(status, null, 0);
+    }
+
+    /**
+     * Queues a scripthash status for the scripthashes listeners, on the thread of the scripthash, and reports the
+     * time it waited to the metrics.
+     * @param status
+     * @param metrics The metrics of the connection, or null
+     * @param receivedNanos When the notification was read, as given by System.nanoTime
+     */
+    void dispatchScripthashStatus(BlockchainScripthashStatus status, ClientMetrics metrics, long receivedNanos) {
+        if (blockchainScripthashesListeners.isEmpty()) {
+            return;
+        }
+        enqueue(stripeOf(status.getScripthash()), () -> {
+            if (metrics != null) {
+                metrics.notificationDispatched("blockchain.scripthash.subscribe", System.nanoTime() - receivedNanos);
+            }
+            for (BlockchainScripthashesListener listener : blockchainScripthashesListeners) {
+                try {
+                    listener.notifyNewScripthashStatus(status);
+                } catch (RuntimeException e) {
+                    log.warn(e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    private Stripe stripeOf(String scripthash) {
+        return stripes[Math.floorMod(scripthash.hashCode(), stripes.length)];
+    }
+
+    private void enqueue(Stripe stripe, Runnable notification) {
+        if (closed) {
+            return;
+        }
+        BlockingDeque<Runnable> queue = stripe.queue;
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(notification);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(notification)) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+                break;
+            default:
+                while (!queue.offer(notification)) {
+                    if (queue.pollFirst() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+        }
+        int depth = queue.size();
+        if (depth > maxQueueDepth.get()) {
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+        }
+    }
+
+    // Section metrics
+
+    /**
+     * Number of notifications waiting in the queues.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Stripe stripe : stripes) {
+            depth += stripe.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Highest number of notifications seen waiting in the queue of a single thread.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * Number of notifications passed to the listeners.
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * Number of notifications dropped because a queue was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stops the threads. The notifications still queued are not passed to the listeners.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Stripe stripe : stripes) {
+            stripe.thread.interrupt();
+            stripe.queue.clear();
+        }
+    }
+
+    /**
+     * A thread and the notifications waiting for it.
+     */
+    private class Stripe implements Runnable {
+        private final BlockingDeque<Runnable> queue;
+        private final Thread thread;
+
+        private Stripe(String name, int queueCapacity) {
+            queue = new LinkedBlockingDeque<>(queueCapacity);
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                Runnable notification;
+                try {
+                    notification = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                notification.run();
+                dispatchedCount.incrementAndGet();
+            }
+        }
+    }
+}
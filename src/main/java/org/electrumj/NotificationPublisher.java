@@ -0,0 +1,262 @@
+package org.electrumj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A Flow.Publisher of notifications, delivering to each subscriber only as many items as it requested.
+ *
+ * Each subscriber has its own bounded buffer holding the items published but not requested yet. When the buffer is
+ * full, its oldest item is dropped. With a conflation key, the buffer only keeps the latest item of each key: a newer
+ * header tip replaces the one not delivered yet, a newer status of a scripthash replaces its previous status, and a
+ * slow subscriber skips the intermediate values instead of falling behind.
+ *
+ * Items are delivered on the given executor, never on the thread publishing them, one at a time per subscriber.
+ *
+ * Sample usage:
+ * <pre>
+ *     client.getBlockchainScripthashesPublisher().subscribe(subscriber);
+ *     client.blockchainScripthashSubscribe(scripthash);
+ * </pre>
+ */
+public class NotificationPublisher<T> implements Flow.Publisher<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationPublisher.class);
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 1024;
+
+    private final int bufferCapacity;
+    // Items with the same key replace each other in the buffers, or null to keep every item.
+    private final Function<? super T, ?> conflationKey;
+    private final Executor executor;
+    private final List<NotificationSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong conflatedCount = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a publisher delivering on the common ForkJoinPool.
+     * @param bufferCapacity Maximum number of items waiting for each subscriber
+     * @param conflationKey Items with the same key replace each other while waiting, or null to keep every item
+     */
+    public NotificationPublisher(int bufferCapacity, Function<? super T, ?> conflationKey) {
+        this(bufferCapacity, conflationKey, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a publisher with the given parameters.
+     * @param bufferCapacity Maximum number of items waiting for each subscriber
+     * @param conflationKey Items with the same key replace each other while waiting, or null to keep every item
+     * @param executor Runs the subscribers' callbacks
+     */
+    public NotificationPublisher(int bufferCapacity, Function<? super T, ?> conflationKey, Executor executor) {
+        assert bufferCapacity > 0;
+        this.bufferCapacity = bufferCapacity;
+        this.conflationKey = conflationKey;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        NotificationSubscription subscription = new NotificationSubscription(subscriber);
+        if (closed) {
+            subscription.complete();
+        } else {
+            subscriptions.add(subscription);
+        }
+        subscription.signal();
+    }
+
+    /**
+     * Publishes an item to all the current subscribers. Can be passed as a listener, e.g.
+     * <code>dispatcher.addBlockchainScripthashesListener(publisher::submit)</code>.
+     * @param item
+     */
+    public void submit(T item) {
+        if (closed) {
+            return;
+        }
+        for (NotificationSubscription subscription : subscriptions) {
+            subscription.offer(item);
+        }
+    }
+
+    /**
+     * Completes all the subscribers, once they received the items already published.
+     */
+    public void close() {
+        closed = true;
+        for (NotificationSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * Number of current subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Number of items dropped because the buffer of a subscriber was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Number of items replaced by a newer item with the same conflation key before being delivered.
+     */
+    public long getConflatedCount() {
+        return conflatedCount.get();
+    }
+
+    /**
+     * A subscriber, its demand and the items waiting for it.
+     */
+    private class NotificationSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        // Items waiting to be delivered, by conflation key, oldest first. Guarded by this.
+        private final LinkedHashMap<Object, T> buffer = new LinkedHashMap<>();
+        // Key of the next item when not conflating.
+        private long sequence;
+        private boolean completed;
+        // Items requested and not delivered yet.
+        private final AtomicLong demand = new AtomicLong();
+        // Number of times the delivery loop was asked to run, it runs on a single thread at a time.
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+        // Only read and written by the delivery loop.
+        private boolean onSubscribeCalled;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        private NotificationSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " items, must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            synchronized (this) {
+                buffer.clear();
+            }
+        }
+
+        private void offer(T item) {
+            synchronized (this) {
+                Object key = conflationKey == null ? sequence++ : conflationKey.apply(item);
+                if (buffer.containsKey(key)) {
+                    // Keeps the position of the replaced item, so a frequently updated key isn't delayed forever.
+                    conflatedCount.incrementAndGet();
+                } else if (buffer.size() >= bufferCapacity) {
+                    Iterator<T> oldest = buffer.values().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    droppedCount.incrementAndGet();
+                }
+                buffer.put(key, item);
+            }
+            // Without demand, the item is delivered when requested.
+            if (demand.get() > 0) {
+                signal();
+            }
+        }
+
+        private void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            signal();
+        }
+
+        private void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    log.warn("Could not deliver notifications: " + e.getMessage(), e);
+                    pendingSignals.set(0);
+                }
+            }
+        }
+
+        /**
+         * Delivers the items requested, on the executor. Runs again as long as it was signaled meanwhile.
+         */
+        @Override
+        public void run() {
+            int signals = pendingSignals.get();
+            do {
+                deliver();
+                signals = pendingSignals.addAndGet(-signals);
+            } while (signals != 0);
+        }
+
+        private void deliver() {
+            try {
+                if (!onSubscribeCalled) {
+                    onSubscribeCalled = true;
+                    subscriber.onSubscribe(this);
+                }
+                while (!cancelled) {
+                    if (error != null) {
+                        cancel();
+                        subscriber.onError(error);
+                        return;
+                    }
+                    T item = null;
+                    boolean complete = false;
+                    synchronized (this) {
+                        if (!buffer.isEmpty() && demand.get() > 0) {
+                            Iterator<T> oldest = buffer.values().iterator();
+                            item = oldest.next();
+                            oldest.remove();
+                        } else if (buffer.isEmpty() && completed) {
+                            complete = true;
+                        }
+                    }
+                    if (complete) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (item == null) {
+                        return;
+                    }
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    subscriber.onNext(item);
+                }
+            } catch (RuntimeException e) {
+                // A subscriber must not throw: it is considered cancelled.
+                log.warn(e.getMessage(), e);
+                cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.electrumj;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Shares a single request in flight between the callers asking for the same thing at once: a request with the same
+ * method, params and result type as one still waiting for its response isn't sent, it completes with the response
+ * of the first one instead.
+ *
+ * Many threads typically ask for the same transaction, fee estimate or balance right after a notification: with a
+ * coalescer they cost a single round trip. Once the response arrived, the next identical request is sent again.
+ *
+ * "blockchain.transaction.broadcast" and "server.version" are never coalesced, as sending them is the point, nor are
+ * the subscribe and unsubscribe methods, which register state on the connection they are sent on. All the callers of
+ * a coalesced request get the same result object, so they should not modify it.
+ *
+ * Each caller gets its own future: a caller timing out or cancelling it doesn't affect the other callers. The shared
+ * request is cancelled once all its callers gave up on it.
+ *
+ * A coalescer can be shared by several connections, e.g. all the connections of an ElectrumClientPool: the request
+ * is then sent by the connection of the first caller.
+ *
+ * Sample usage:
+ * <pre>
+ *     client.setRequestCoalescer(new RequestCoalescer());
+ * </pre>
+ */
+public class RequestCoalescer {
+
+    // Set while sending requests that must not be coalesced, e.g. hedged requests.
+    private static final ThreadLocal<Boolean> bypassed = ThreadLocal.withInitial(() -> false);
+
+    private final Set<String> excludedMethods = ConcurrentHashMap.newKeySet();
+    // Requests waiting for their response.
+    private final Map<Key, Shared> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public RequestCoalescer() {
+        excludedMethods.add("blockchain.transaction.broadcast");
+        excludedMethods.add("server.version");
+        // Subscriptions are registered on the connection the request is sent on, not the connections of the callers.
+        excludedMethods.add("blockchain.headers.subscribe");
+        excludedMethods.add("blockchain.scripthash.subscribe");
+        excludedMethods.add("blockchain.scripthash.unsubscribe");
+    }
+
+    /**
+     * Never coalesces the requests of the given method, e.g. because sending them has side effects.
+     * @param method The JSON-RPC method
+     */
+    public void exclude(String method) {
+        excludedMethods.add(method);
+    }
+
+    /**
+     * Number of requests sent through the coalescer.
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * Number of requests not sent because an identical one was in flight.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Number of distinct requests waiting for their response.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Returns a future completed with the response of the identical request in flight, or sends the request.
+     * Each caller gets its own future, so completing or cancelling it doesn't affect the other callers.
+     * @param method The JSON-RPC method
+     * @param params The params, compared with equals
+     * @param returnType The type the result is converted to
+     * @param send Sends the request
+     */
+    <T> CompletableFuture<T> coalesce(String method, Object params, Type returnType, Supplier<CompletableFuture<T>> send) {
+        if (excludedMethods.contains(method) || bypassed.get()) {
+            return send.get();
+        }
+        Key key = new Key(method, params, returnType);
+        while (true) {
+            Shared shared = inFlight.get(key);
+            if (shared == null) {
+                Shared placeholder = new Shared(key);
+                shared = inFlight.putIfAbsent(key, placeholder);
+                if (shared == null) {
+                    sentCount.incrementAndGet();
+                    CompletableFuture<T> copy = placeholder.join();
+                    CompletableFuture<T> sent;
+                    try {
+                        sent = send.get();
+                    } catch (RuntimeException e) {
+                        inFlight.remove(key, placeholder);
+                        placeholder.future.completeExceptionally(e);
+                        throw e;
+                    }
+                    placeholder.setSent(sent);
+                    sent.whenComplete((result, error) -> {
+                        // Removed first, so a caller arriving now sends a new request instead of getting this response.
+                        inFlight.remove(key, placeholder);
+                        if (error != null) {
+                            placeholder.future.completeExceptionally(error);
+                        } else {
+                            placeholder.future.complete(result);
+                        }
+                    });
+                    return copy;
+                }
+            }
+            CompletableFuture<T> copy = shared.join();
+            if (copy != null) {
+                coalescedCount.incrementAndGet();
+                return copy;
+            }
+            // All its callers gave up on it just now: sent again.
+        }
+    }
+
+    /**
+     * Sends requests on the current thread without coalescing them, e.g. hedged requests, which must not share the
+     * response of a request stalled on another server.
+     * @param send Sends the requests
+     * @return what send returns
+     */
+    static <T> T bypass(Supplier<T> send) {
+        bypassed.set(true);
+        try {
+            return send.get();
+        } finally {
+            bypassed.set(false);
+        }
+    }
+
+    /**
+     * A request in flight and the number of callers still waiting for it.
+     */
+    private class Shared {
+        private final Key key;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        // Guarded by this.
+        private CompletableFuture<?> sent;
+        private int waiting;
+        private boolean abandoned;
+
+        private Shared(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Returns a future completed with the response, or null if all the callers gave up on the request.
+         */
+        private synchronized <T> CompletableFuture<T> join() {
+            if (abandoned) {
+                return null;
+            }
+            waiting++;
+            // The callers sharing the request have the same key, so the same return type, which T stands for.
+            @SuppressWarnings("unchecked")
+            CompletableFuture<T> copy = (CompletableFuture<T>) future.copy();
+            copy.whenComplete((result, error) -> leave());
+            return copy;
+        }
+
+        private void setSent(CompletableFuture<?> sent) {
+            boolean cancel;
+            synchronized (this) {
+                this.sent = sent;
+                cancel = abandoned;
+            }
+            if (cancel) {
+                sent.cancel(false);
+            }
+        }
+
+        /**
+         * Cancels the request once no caller waits for it anymore, e.g. they all timed out.
+         */
+        private void leave() {
+            CompletableFuture<?> cancelled;
+            synchronized (this) {
+                if (--waiting > 0 || future.isDone()) {
+                    return;
+                }
+                abandoned = true;
+                cancelled = sent;
+            }
+            inFlight.remove(key, this);
+            if (cancelled != null) {
+                cancelled.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Identifies identical requests.
+     */
+    private static class Key {
+        private final String method;
+        private final Object params;
+        private final Type returnType;
+        private final int hashCode;
+
+        private Key(String method, Object params, Type returnType) {
+            this.method = method;
+            this.params = params;
+            this.returnType = returnType;
+            this.hashCode = Objects.hash(method, params, returnType);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode && method.equals(key.method) && Objects.equals(params, key.params)
+                    && Objects.equals(returnType, key.returnType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,668 @@
+package org.electrumj;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.base.ParserBase;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.googlecode.jsonrpc4j.DefaultExceptionResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends JSON-RPC requests over a single connection without waiting for the previous response, and matches
+ * the responses to their requests by JSON-RPC id.
+ *
+ * Requests are written back-to-back on the caller thread, either one by one or as JSON-RPC batch arrays, and handed to
+ * the transport, which gathers the requests sent concurrently into few writes.
+ * The transport passes every message it reads to this single reader, in whatever order the server sends them.
+ * Each message is read in a single streaming pass and routed by its shape: responses complete the future of the
+ * matching request and notifications are passed to the notification handler. Results and params are decoded straight
+ * from the parser, without building a tree first. Futures are completed, and notifications handled, on the
+ * transport's reading thread, so dependent stages and listeners should not block.
+ *
+ * With an AdaptiveLimiter, requests that don't fit in its limit wait, in order, until responses make room for them.
+ *
+ * A request whose future completes before its response arrives, because it timed out or was cancelled, is forgotten:
+ * it isn't sent if it was still waiting, its room in the limit is given back, and its late response is dropped.
+ * The connection stays open.
+ *
+ * With ClientMetrics, every request sent, response and notification read is reported to it.
+ */
+class RequestPipeline implements Transport.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestPipeline.class);
+
+    static final ObjectMapper mapper = ElectrumJson.mapper;
+    // Set on the thread reading the connection while it handles a message, to detect blocking calls made there.
+    private static final ThreadLocal<Boolean> readingThread = ThreadLocal.withInitial(() -> false);
+    // Each thread sending requests writes them into its own reused buffer.
+    private static final ThreadLocal<MessageBuffer> threadMessageBuffer = ThreadLocal.withInitial(MessageBuffer::new);
+
+    // Transport to send the requests with.
+    private final Transport transport;
+    // Receives the notifications sent by the server.
+    private final NotificationHandler notificationHandler;
+    // Limits the requests in flight, or null to send them all right away.
+    private final AdaptiveLimiter limiter;
+    // Receives the measures of the requests and notifications, or null.
+    private final ClientMetrics metrics;
+
+    private final AtomicLong nextId = new AtomicLong();
+    // Requests already sent whose response has not been read yet, by id.
+    private final Map<Long, Request> pendingRequests = new ConcurrentHashMap<>();
+    // Requests waiting for room in the limit, as sent: a single request or a batch. Guarded by itself.
+    private final Queue<List<Request>> waitingRequests = new ArrayDeque<>();
+    private int waitingRequestCount;
+
+    private volatile boolean closed = false;
+    // Exponentially weighted moving average of the response latency, in nanoseconds. Only the reading thread
+    // updates it. Negative until the first response arrives.
+    private volatile double latencyEwmaNanos = -1;
+    // When the last message was read, or the pipeline created, from System.nanoTime.
+    private volatile long lastReceivedNanos = System.nanoTime();
+
+    RequestPipeline(Transport transport, NotificationHandler notificationHandler) {
+        this(transport, notificationHandler, null);
+    }
+
+    RequestPipeline(Transport transport, NotificationHandler notificationHandler, AdaptiveLimiter limiter) {
+        this(transport, notificationHandler, limiter, null);
+    }
+
+    RequestPipeline(Transport transport, NotificationHandler notificationHandler, AdaptiveLimiter limiter, ClientMetrics metrics) {
+        this.transport = transport;
+        this.notificationHandler = notificationHandler;
+        this.limiter = limiter;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Stops reading responses and fails the requests still pending.
+     */
+    void close() {
+        closed = true;
+        failPendingRequests(new IOException("Connection closed"));
+    }
+
+    /**
+     * Number of requests sent whose response has not been received yet, including those waiting to be sent.
+     */
+    int getPendingRequestCount() {
+        synchronized (waitingRequests) {
+            return pendingRequests.size() + waitingRequestCount;
+        }
+    }
+
+    /**
+     * Exponentially weighted moving average of the time between sending a request and receiving its response,
+     * or a negative value if no response was received yet.
+     */
+    double getLatencyEwmaNanos() {
+        return latencyEwmaNanos;
+    }
+
+    /**
+     * When the last message was read from the connection, or the pipeline was created if none was, as given by
+     * System.nanoTime.
+     */
+    long getLastReceivedNanos() {
+        return lastReceivedNanos;
+    }
+
+    /**
+     * Whether the connection is still usable, i.e. it was not closed locally or by the server.
+     */
+    boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Sends a request and returns a future that completes when the response arrives.
+     * @param method The JSON-RPC method
+     * @param params The named params, or null to send no params
+     * @param returnType The type the result is converted to
+     */
+    <T> CompletableFuture<T> sendRequest(String method, Map<String,Object> params, Type returnType) {
+        return sendRequest(method, params, returnType, 0);
+    }
+
+    /**
+     * Sends a request and returns a future that completes when the response arrives, or fails with a
+     * TimeoutException if it doesn't arrive in time.
+     * @param method The JSON-RPC method
+     * @param params The named params, or null to send no params
+     * @param returnType The type the result is converted to
+     * @param timeoutMillis Time the response has to arrive, or 0 to wait for it as long as the connection is open
+     */
+    <T> CompletableFuture<T> sendRequest(String method, Map<String,Object> params, Type returnType, long timeoutMillis) {
+        Request request = new Request(method, params, returnType);
+        send(Collections.singletonList(request), false, timeoutMillis);
+        // Completed with the result read as returnType, which T stands for.
+        @SuppressWarnings("unchecked")
+        CompletableFuture<T> future = (CompletableFuture<T>) request.future;
+        return future;
+    }
+
+    /**
+     * Sends the requests as a single JSON-RPC batch array, in one write. The future of each request completes
+     * when its element of the response array is read.
+     */
+    void sendBatch(List<Request> requests) {
+        sendBatch(requests, 0);
+    }
+
+    /**
+     * Sends the requests as a single JSON-RPC batch array, in one write. The future of each request completes
+     * when its element of the response array is read, or fails with a TimeoutException if it doesn't arrive in time.
+     * @param timeoutMillis Time the responses have to arrive, or 0 to wait for them as long as the connection is open
+     */
+    void sendBatch(List<Request> requests, long timeoutMillis) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        send(requests, true, timeoutMillis);
+    }
+
+    private void send(List<Request> requests, boolean batch, long timeoutMillis) {
+        for (Request request : requests) {
+            if (timeoutMillis > 0) {
+                request.future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            request.future.whenComplete((result, error) -> forget(request));
+        }
+        if (limiter != null) {
+            for (Request request : requests) {
+                request.weight = limiter.getMethodWeight(request.method);
+                request.batch = batch;
+            }
+            synchronized (waitingRequests) {
+                if (closed) {
+                    requests.forEach(request -> request.future.completeExceptionally(new IOException("Connection closed")));
+                    return;
+                }
+                // Requests waiting go first.
+                if (!waitingRequests.isEmpty() || !limiter.tryAcquire(weightOf(requests))) {
+                    waitingRequests.add(requests);
+                    waitingRequestCount += requests.size();
+                    return;
+                }
+            }
+        }
+        doSend(requests, batch);
+    }
+
+    /**
+     * Forgets a request completed before its response arrived, e.g. timed out or cancelled: it is removed from the
+     * pending requests, or skipped if still waiting, and its room in the limit is given back.
+     */
+    private void forget(Request request) {
+        if (!request.pending) {
+            // Still waiting, or being sent: dropped when its turn comes, or by doSend.
+            if (limiter != null && !closed) {
+                sendWaitingRequests();
+            }
+        } else if (pendingRequests.remove(request.id, request)) {
+            abandon(request);
+        }
+    }
+
+    /**
+     * Sends the waiting requests the limit now has room for. The requests already completed, e.g. timed out, are
+     * dropped.
+     */
+    private void sendWaitingRequests() {
+        List<List<Request>> sendable = null;
+        synchronized (waitingRequests) {
+            List<Request> requests;
+            while ((requests = waitingRequests.peek()) != null) {
+                List<Request> live = notDone(requests);
+                if (!live.isEmpty() && !limiter.tryAcquire(weightOf(live))) {
+                    break;
+                }
+                waitingRequests.remove();
+                waitingRequestCount -= requests.size();
+                if (live.isEmpty()) {
+                    continue;
+                }
+                if (sendable == null) {
+                    sendable = new ArrayList<>();
+                }
+                sendable.add(live);
+            }
+        }
+        if (sendable != null) {
+            for (List<Request> requests : sendable) {
+                doSend(requests, requests.get(0).batch);
+            }
+        }
+    }
+
+    private static List<Request> notDone(List<Request> requests) {
+        for (Request request : requests) {
+            if (request.future.isDone()) {
+                List<Request> live = new ArrayList<>(requests.size());
+                for (Request other : requests) {
+                    if (!other.future.isDone()) {
+                        live.add(other);
+                    }
+                }
+                return live;
+            }
+        }
+        return requests;
+    }
+
+    private static double weightOf(List<Request> requests) {
+        double weight = 0;
+        for (Request request : requests) {
+            weight += request.weight;
+        }
+        return weight;
+    }
+
+    /**
+     * Gives back the room of an answered request to the limiter, and sends the requests waiting for it.
+     * @param latencyNanos Time the server took to answer, or a negative value if it did not
+     * @param error The JSON-RPC error of the response, or null
+     */
+    private void release(Request request, long latencyNanos, JsonNode error) {
+        if (limiter == null) {
+            return;
+        }
+        boolean overloaded = false;
+        if (error != null && error.has("code")) {
+            int code = error.get("code").asInt();
+            overloaded = code == AdaptiveLimiter.EXCESSIVE_RESOURCE_USAGE || code == AdaptiveLimiter.SERVER_BUSY;
+        }
+        limiter.release(request.weight, latencyNanos, overloaded);
+        if (!closed) {
+            sendWaitingRequests();
+        }
+    }
+
+    /**
+     * Gives up on a request removed from the pending requests without its response.
+     */
+    private void abandon(Request request) {
+        if (metrics != null) {
+            metrics.requestFailed(request.method);
+        }
+        release(request, -1, null);
+    }
+
+    private void doSend(List<Request> requests, boolean batch) {
+        if (closed) {
+            requests.forEach(request -> {
+                request.future.completeExceptionally(new IOException("Connection closed"));
+                release(request, -1, null);
+            });
+            return;
+        }
+        byte[] message;
+        try {
+            message = write(requests, batch);
+        } catch (IOException e) {
+            requests.forEach(request -> {
+                request.future.completeExceptionally(e);
+                release(request, -1, null);
+            });
+            return;
+        }
+        long now = System.nanoTime();
+        for (Request request : requests) {
+            request.sentNanos = now;
+            if (metrics != null) {
+                metrics.requestSent(request.method, request.bytes);
+            }
+            pendingRequests.put(request.id, request);
+            request.pending = true;
+        }
+        try {
+            transport.send(message);
+        } catch (IOException e) {
+            for (Request request : requests) {
+                if (pendingRequests.remove(request.id) != null) {
+                    request.future.completeExceptionally(e);
+                    abandon(request);
+                }
+            }
+            return;
+        }
+        for (Request request : requests) {
+            // Completed while being sent, before forget could find it pending.
+            if (request.future.isDone() && pendingRequests.remove(request.id, request)) {
+                abandon(request);
+            }
+        }
+    }
+
+    /**
+     * Assigns the ids of the requests and writes them, straight from their fields, without building a tree first.
+     */
+    private byte[] write(List<Request> requests, boolean batch) throws IOException {
+        MessageBuffer bytes = threadMessageBuffer.get();
+        try (JsonGenerator generator = ElectrumJson.factory.createGenerator(bytes)) {
+            if (batch) {
+                generator.writeStartArray();
+            }
+            for (Request request : requests) {
+                int start = bytes.size + generator.getOutputBuffered();
+                request.id = nextId.incrementAndGet();
+                generator.writeStartObject();
+                generator.writeStringField("jsonrpc", "2.0");
+                generator.writeNumberField("id", request.id);
+                generator.writeStringField("method", request.method);
+                if (request.params != null) {
+                    generator.writeFieldName("params");
+                    mapper.writeValue(generator, request.params);
+                }
+                generator.writeEndObject();
+                request.bytes = bytes.size + generator.getOutputBuffered() - start;
+            }
+            if (batch) {
+                generator.writeEndArray();
+            }
+            generator.flush();
+            return bytes.builder.toByteArray();
+        } finally {
+            bytes.reset();
+        }
+    }
+
+    // Weight of the latest sample in the latency moving average.
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+
+    @Override
+    public void onMessage(String message) {
+        lastReceivedNanos = System.nanoTime();
+        readingThread.set(true);
+        try {
+            handleMessage(message);
+        } catch (Exception e) {
+            log.warn(e.getMessage(), e);
+        } finally {
+            readingThread.set(false);
+        }
+    }
+
+    @Override
+    public void onClosed(IOException cause) {
+        closed = true;
+        readingThread.set(true);
+        try {
+            failPendingRequests(cause);
+        } finally {
+            readingThread.set(false);
+        }
+    }
+
+    /**
+     * Whether the current thread is reading a connection, i.e. is running a dependent stage of a request future or
+     * a notification handler. Waiting for a response there would wait forever, as no other thread reads it.
+     */
+    static boolean isReadingThread() {
+        return readingThread.get();
+    }
+
+    /**
+     * Parses a message read from the server and routes it by its shape: an array answers a batch, an object with
+     * a method is a notification and an object with an id answers a single request.
+     */
+    private void handleMessage(String line) throws IOException {
+        try (JsonParser parser = ElectrumJson.factory.createParser(line)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                // Response to a batch: each element answers one of its requests.
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    handleObject(parser);
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                handleObject(parser);
+            } else {
+                log.warn("Received unexpected message: " + line);
+            }
+        }
+    }
+
+    /**
+     * Reads a response or a notification object, in one pass. The result, or the params, is decoded straight from
+     * the parser when the id, or the method, comes before it. Otherwise it is buffered as tokens until the end of
+     * the object.
+     */
+    private void handleObject(JsonParser parser) throws IOException {
+        JsonStreamContext object = parser.getParsingContext();
+        long start = metrics == null ? 0 : tokenOffset(parser);
+        JsonNode id = null;
+        Request request = null;
+        long latencyNanos = -1;
+        String method = null;
+        JsonNode error = null;
+        TokenBuffer bufferedValue = null;
+        boolean resultRead = false;
+        boolean notificationHandled = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = mapper.readTree(parser);
+                    request = id.canConvertToLong() ? pendingRequests.remove(id.asLong()) : null;
+                    if (request != null) {
+                        latencyNanos = System.nanoTime() - request.sentNanos;
+                        recordLatency(latencyNanos);
+                    }
+                    break;
+                case "method":
+                    method = parser.getValueAsString();
+                    break;
+                case "error":
+                    error = mapper.readTree(parser);
+                    break;
+                case "params":
+                case "result":
+                    if ("params".equals(field) && method != null) {
+                        handleNotification(method, parser, object);
+                        notificationHandled = true;
+                    } else if ("result".equals(field) && request != null) {
+                        readResult(request, parser, object);
+                        resultRead = true;
+                    } else {
+                        bufferedValue = new TokenBuffer(parser);
+                        bufferedValue.copyCurrentStructure(parser);
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        int size = metrics == null ? 0 : (int) (tokenOffset(parser) - start + 1);
+        if (method != null) {
+            if (metrics != null) {
+                metrics.notificationReceived(method, size);
+            }
+            if (notificationHandled) {
+                return;
+            }
+            if (bufferedValue != null) {
+                try (JsonParser params = bufferedValue.asParser()) {
+                    JsonStreamContext root = params.getParsingContext();
+                    params.nextToken();
+                    handleNotification(method, params, root);
+                }
+            } else {
+                log.warn("Received notification without params: " + method);
+            }
+            return;
+        }
+        if (id == null || id.isNull()) {
+            // The server could not tell which request this is about, e.g. an unparseable request.
+            log.warn("Received response without id" + (error == null ? "" : ": " + error));
+            return;
+        }
+        if (request == null) {
+            if (id.canConvertToLong() && id.asLong() > 0 && id.asLong() <= nextId.get()) {
+                // Answers a request that timed out or was cancelled.
+                log.debug("Dropped late response to request " + id);
+            } else {
+                log.warn("Received response to unknown request: " + id);
+            }
+            return;
+        }
+        if (metrics != null) {
+            metrics.responseReceived(request.method, latencyNanos, size, error != null && !error.isNull());
+        }
+        if (error != null && !error.isNull()) {
+            ObjectNode response = mapper.createObjectNode();
+            response.set("error", error);
+            request.future.completeExceptionally(DefaultExceptionResolver.INSTANCE.resolveException(response));
+        } else if (bufferedValue != null) {
+            try (JsonParser result = bufferedValue.asParser()) {
+                JsonStreamContext root = result.getParsingContext();
+                result.nextToken();
+                readResult(request, result, root);
+            }
+        } else if (!resultRead) {
+            request.future.complete(null);
+        }
+        release(request, latencyNanos, error);
+    }
+
+    /**
+     * Completes the request with the result the parser is positioned on.
+     */
+    private void readResult(Request request, JsonParser parser, JsonStreamContext object) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            request.future.complete(null);
+            return;
+        }
+        try {
+            request.future.complete(mapper.readValue(parser, request.returnType));
+        } catch (IOException e) {
+            request.future.completeExceptionally(e);
+            ElectrumJson.skipTo(parser, object);
+        }
+    }
+
+    private void handleNotification(String method, JsonParser params, JsonStreamContext object) throws IOException {
+        try {
+            notificationHandler.handleNotification(method, params);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not handle notification " + method + ": " + e.getMessage(), e);
+        }
+        ElectrumJson.skipTo(params, object);
+    }
+
+    /**
+     * Offset of the current token in the message, in characters.
+     */
+    private static long tokenOffset(JsonParser parser) {
+        return parser instanceof ParserBase ? ((ParserBase) parser).getTokenCharacterOffset() : 0;
+    }
+
+    private void recordLatency(long latencyNanos) {
+        double previous = latencyEwmaNanos;
+        latencyEwmaNanos = previous < 0 ? latencyNanos : previous + LATENCY_EWMA_ALPHA * (latencyNanos - previous);
+    }
+
+    private void failPendingRequests(Throwable cause) {
+        for (Long id : pendingRequests.keySet()) {
+            Request request = pendingRequests.remove(id);
+            if (request != null) {
+                request.future.completeExceptionally(cause);
+                abandon(request);
+            }
+        }
+        List<List<Request>> waiting;
+        synchronized (waitingRequests) {
+            waiting = new ArrayList<>(waitingRequests);
+            waitingRequests.clear();
+            waitingRequestCount = 0;
+        }
+        for (List<Request> requests : waiting) {
+            requests.forEach(request -> request.future.completeExceptionally(cause));
+        }
+    }
+
+    /**
+     * Receives the notifications sent by the server.
+     */
+    interface NotificationHandler {
+        /**
+         * Handles a notification.
+         * @param method The notification method, e.g. "blockchain.headers.subscribe"
+         * @param params Parser positioned on the first token of the params, they should be read up to their last token
+         */
+        void handleNotification(String method, JsonParser params) throws IOException;
+    }
+
+    /**
+     * Reused buffer of the messages written by a thread, counting the bytes written so far to measure each request.
+     */
+    private static class MessageBuffer extends OutputStream {
+        private final ByteArrayBuilder builder = new ByteArrayBuilder();
+        private int size;
+
+        @Override
+        public void write(int b) {
+            builder.write(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            builder.write(b, off, len);
+            size += len;
+        }
+
+        private void reset() {
+            builder.reset();
+            size = 0;
+        }
+    }
+
+    /**
+     * A request to send, and the future completed with its response.
+     */
+    static class Request {
+        private final String method;
+        private final Map<String,Object> params;
+        private final JavaType returnType;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        // Assigned when the request is sent.
+        private long id;
+        private long sentNanos;
+        private int bytes;
+        // Set once the request is in pendingRequests.
+        private volatile boolean pending;
+        // Assigned when the request goes through the limiter.
+        private double weight;
+        private boolean batch;
+
+        Request(String method, Map<String,Object> params, Type returnType) {
+            this.method = method;
+            this.params = params;
+            this.returnType = mapper.getTypeFactory().constructType(returnType);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.LegacyAddress;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.SegwitAddress;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.Script;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Derives the Electrum scripthashes of many addresses or scriptPubKeys at once, e.g. all the addresses of a wallet
+ * at startup.
+ * See <a href="https://electrumx-spesmilo.readthedocs.io/en/latest/protocol-basics.html#script-hashes">Electrum documentation on script hash</a>.
+ *
+ * The scriptPubKey of an address is written straight into a per-thread buffer and hashed with the thread's
+ * Sha256Hasher, large inputs are spread over the common ForkJoinPool, and the scripthashes of the last addresses
+ * derived are kept in a bounded memo, so addresses seen again are not decoded again.
+ *
+ * The scripthashes are returned in the byte order of their hex form, i.e. the order used by the Electrum servers.
+ *
+ * Sample usage:
+ * <pre>
+ *     ScripthashDeriver deriver = new ScripthashDeriver(MainNetParams.get(), 500000);
+ *     String[] scripthashes = deriver.fromAddressesHex(addresses);
+ * </pre>
+ */
+public class ScripthashDeriver {
+
+    public static final int DEFAULT_MEMO_SIZE = 100000;
+    // Inputs smaller than this are derived on the calling thread.
+    private static final int PARALLEL_THRESHOLD = 1024;
+    // Longest standard scriptPubKey: a segwit version byte, a push byte and a 40-byte witness program.
+    private static final int MAX_SCRIPT_SIZE = 42;
+
+    private static final ThreadLocal<byte[]> threadScript = ThreadLocal.withInitial(() -> new byte[MAX_SCRIPT_SIZE]);
+
+    private final NetworkParameters networkParameters;
+    private final int memoSize;
+    // Scripthashes of the last addresses derived, least recently used first.
+    private final Map<String, byte[]> memo;
+
+    /**
+     * Creates a deriver of mainnet addresses with the default memo size.
+     */
+    public ScripthashDeriver() {
+        this(MainNetParams.get(), DEFAULT_MEMO_SIZE);
+    }
+
+    /**
+     * @param networkParameters The network the addresses are on: e.g. regtest, mainnet, etc.
+     * @param memoSize Maximum number of addresses whose scripthash is remembered, 0 to remember none
+     */
+    public ScripthashDeriver(NetworkParameters networkParameters, int memoSize) {
+        assert memoSize >= 0;
+        this.networkParameters = networkParameters;
+        this.memoSize = memoSize;
+        this.memo = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > ScripthashDeriver.this.memoSize;
+            }
+        };
+    }
+
+    /**
+     * Obtains the scripthash of an address.
+     * @param address The address
+     * @return the 32-byte scripthash
+     * @throws org.bitcoinj.core.AddressFormatException if the address is not valid on the network
+     */
+    public byte[] fromAddress(String address) {
+        byte[] scripthash = null;
+        if (memoSize > 0) {
+            synchronized (memo) {
+                scripthash = memo.get(address);
+            }
+        }
+        if (scripthash == null) {
+            scripthash = scripthash(networkParameters, address);
+            if (memoSize > 0) {
+                synchronized (memo) {
+                    memo.put(address, scripthash);
+                }
+            }
+        }
+        return scripthash.clone();
+    }
+
+    /**
+     * Obtains the scripthashes of the addresses, in parallel for large arrays.
+     * @param addresses The addresses
+     * @return the 32-byte scripthashes, in the same order as the addresses
+     * @throws org.bitcoinj.core.AddressFormatException if an address is not valid on the network
+     */
+    public byte[][] fromAddresses(String... addresses) {
+        byte[][] scripthashes = new byte[addresses.length][];
+        forEachIndex(addresses.length, i -> scripthashes[i] = fromAddress(addresses[i]));
+        return scripthashes;
+    }
+
+    /**
+     * Obtains the scripthashes of the addresses as hex strings, as expected by the "blockchain.scripthash.*" methods.
+     * @param addresses The addresses
+     * @return the scripthashes, in the same order as the addresses
+     * @throws org.bitcoinj.core.AddressFormatException if an address is not valid on the network
+     */
+    public String[] fromAddressesHex(String... addresses) {
+        String[] scripthashes = new String[addresses.length];
+        forEachIndex(addresses.length, i -> scripthashes[i] = Utils.HEX.encode(fromAddress(addresses[i])));
+        return scripthashes;
+    }
+
+    /**
+     * Obtains the scripthash of a scriptPubKey.
+     * @param script The scriptPubKey
+     * @return the 32-byte scripthash
+     */
+    public static byte[] fromScript(byte[] script) {
+        byte[] scripthash = new byte[Sha256Hasher.HASH_SIZE];
+        Sha256Hasher.forCurrentThread().sha256(script, 0, script.length, scripthash, 0);
+        reverse(scripthash);
+        return scripthash;
+    }
+
+    /**
+     * Obtains the scripthashes of the scriptPubKeys, in parallel for large arrays.
+     * @param scripts The scriptPubKeys
+     * @return the 32-byte scripthashes, in the same order as the scripts
+     */
+    public static byte[][] fromScripts(byte[]... scripts) {
+        byte[][] scripthashes = new byte[scripts.length][];
+        forEachIndex(scripts.length, i -> scripthashes[i] = fromScript(scripts[i]));
+        return scripthashes;
+    }
+
+    /**
+     * Obtains the scripthashes of the scriptPubKeys as hex strings.
+     * @param scripts The scriptPubKeys
+     * @return the scripthashes, in the same order as the scripts
+     */
+    public static String[] fromScriptsHex(byte[]... scripts) {
+        String[] scripthashes = new String[scripts.length];
+        forEachIndex(scripts.length, i -> scripthashes[i] = Utils.HEX.encode(fromScript(scripts[i])));
+        return scripthashes;
+    }
+
+    /**
+     * Obtains the scripthash of an address, without going through the memo.
+     */
+    static byte[] scripthash(NetworkParameters networkParameters, String address) {
+        byte[] script = threadScript.get();
+        int length = writeScriptPubKey(Address.fromString(networkParameters, address), script);
+        byte[] scripthash = new byte[Sha256Hasher.HASH_SIZE];
+        Sha256Hasher.forCurrentThread().sha256(script, 0, length, scripthash, 0);
+        reverse(scripthash);
+        return scripthash;
+    }
+
+    /**
+     * Writes the scriptPubKey paying to the address into script, as ScriptBuilder.createOutputScript would build it.
+     * @return the length of the scriptPubKey
+     */
+    private static int writeScriptPubKey(Address address, byte[] script) {
+        byte[] hash = address.getHash();
+        if (address instanceof LegacyAddress) {
+            if (address.getOutputScriptType() == Script.ScriptType.P2SH) {
+                // OP_HASH160 <hash> OP_EQUAL
+                script[0] = (byte) 0xa9;
+                script[1] = (byte) hash.length;
+                System.arraycopy(hash, 0, script, 2, hash.length);
+                script[2 + hash.length] = (byte) 0x87;
+                return hash.length + 3;
+            }
+            // OP_DUP OP_HASH160 <hash> OP_EQUALVERIFY OP_CHECKSIG
+            script[0] = (byte) 0x76;
+            script[1] = (byte) 0xa9;
+            script[2] = (byte) hash.length;
+            System.arraycopy(hash, 0, script, 3, hash.length);
+            script[3 + hash.length] = (byte) 0x88;
+            script[4 + hash.length] = (byte) 0xac;
+            return hash.length + 5;
+        }
+        if (address instanceof SegwitAddress) {
+            // OP_n <witness program>
+            int version = ((SegwitAddress) address).getWitnessVersion();
+            script[0] = (byte) (version == 0 ? 0 : 0x50 + version);
+            script[1] = (byte) hash.length;
+            System.arraycopy(hash, 0, script, 2, hash.length);
+            return hash.length + 2;
+        }
+        throw new IllegalArgumentException("Unsupported address type: " + address);
+    }
+
+    private static void forEachIndex(int count, IntConsumer action) {
+        if (count < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+        } else {
+            IntStream.range(0, count).parallel().forEach(action);
+        }
+    }
+
+    private static void reverse(byte[] bytes) {
+        for (int i = 0, j = bytes.length - 1; i < j; i++, j--) {
+            byte b = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = b;
+        }
+    }
+}
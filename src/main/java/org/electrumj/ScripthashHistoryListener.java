@@ -0,0 +1,17 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainScripthashGetTxsResponseEntry;
+
+import java.util.List;
+
+/**
+ * Classes interested in listening to the scripthashes history changes found by a WalletSync should implement this
+ * interface.
+ *
+ * The listener is called on the listener thread of the WalletSync's ElectrumClient, one history at a time, never on
+ * the thread reading the connection: it can send requests and wait for their responses, but the next histories and
+ * notifications of that connection wait for it to return, so it must not wait for a future of the WalletSync.
+ */
+public interface ScripthashHistoryListener {
+    void notifyScripthashHistoryChanged(final String scripthash, final List<BlockchainScripthashGetTxsResponseEntry> history);
+}
@@ -0,0 +1,261 @@
+package org.electrumj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small pool of selector threads shared by many non-blocking connections.
+ *
+ * ElectrumClients created with a SelectorPool use a non-blocking transport: the connections are spread over the
+ * selector threads of the pool, so a JVM can keep thousands of connections open without a thread per connection.
+ *
+ * Sample usage:
+ * <pre>
+ *     SelectorPool selectorPool = new SelectorPool(2);
+ *     ElectrumClient client1 = new ElectrumClient("electrum.emzy.de", 50002, selectorPool);
+ *     ElectrumClient client2 = new ElectrumClient("electrum.blockstream.info", 50002, selectorPool);
+ * </pre>
+ */
+public class SelectorPool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SelectorPool.class);
+
+    private static SelectorPool defaultPool;
+
+    private final SelectorLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final ByteBufferPool bufferPool = new ByteBufferPool();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new SelectorPool with the given number of selector threads.
+     * @param threadCount
+     * @throws IOException
+     */
+    public SelectorPool(int threadCount) throws IOException {
+        assert threadCount > 0;
+        loops = new SelectorLoop[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            loops[i] = new SelectorLoop("electrumj-selector-" + i);
+        }
+    }
+
+    /**
+     * Returns a SelectorPool shared by the whole JVM, with two selector threads. It is created on first use, and
+     * created again if it was closed.
+     * @throws IOException
+     */
+    public static synchronized SelectorPool getDefault() throws IOException {
+        if (defaultPool == null || defaultPool.closed) {
+            defaultPool = new SelectorPool(2);
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Stops the selector threads. Connections still registered are closed, their listeners are told so as if the
+     * server closed them, and the connections still being opened fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (SelectorLoop loop : loops) {
+            loop.close();
+        }
+    }
+
+    /**
+     * Returns the selector thread the next connection should be registered with.
+     */
+    SelectorLoop nextLoop() {
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Handles the events of a registered channel. Invoked on the selector thread.
+     */
+    interface ChannelHandler {
+        /**
+         * Invoked once the channel is registered with the selector.
+         */
+        void onRegistered(SelectionKey key);
+
+        /**
+         * Invoked when the channel is ready for any of the operations it is interested in.
+         */
+        void onReady(SelectionKey key);
+
+        /**
+         * Invoked when the selector thread stops with the channel still registered. The handler should close it.
+         */
+        void onClosed(IOException cause);
+    }
+
+    /**
+     * A thread running a Selector. All the operations on the channels it owns run on this thread.
+     */
+    static class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean wakeupPending = new AtomicBoolean();
+        private volatile boolean closed = false;
+
+        private SelectorLoop(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Runs the task on the selector thread. Tasks left when the selector thread stops are dropped, except the
+         * registrations which fail.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (closed) {
+                // The selector thread may have stopped before seeing the task.
+                if (tasks.remove(task)) {
+                    reject(task);
+                }
+                return;
+            }
+            if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Registers the channel with the selector. The handler is notified on the selector thread once registered.
+         * @return a future completed once registered, or failed if the channel could not be registered
+         */
+        CompletableFuture<Void> register(SelectableChannel channel, int ops, ChannelHandler handler) {
+            RegisterTask task = new RegisterTask(channel, ops, handler);
+            execute(task);
+            return task.future;
+        }
+
+        private void close() {
+            closed = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    selector.select();
+                    wakeupPending.set(false);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        runSafely(task);
+                    }
+                    Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                    while (selectedKeys.hasNext()) {
+                        SelectionKey key = selectedKeys.next();
+                        selectedKeys.remove();
+                        if (key.isValid()) {
+                            runSafely(() -> ((ChannelHandler) key.attachment()).onReady(key));
+                        }
+                    }
+                } catch (IOException e) {
+                    log.warn(e.getMessage(), e);
+                }
+            }
+            shutdown();
+        }
+
+        /**
+         * Closes the channels still registered through their handlers and fails the registrations not done yet.
+         */
+        private void shutdown() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                reject(task);
+            }
+            IOException cause = new IOException("Selector pool closed");
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid()) {
+                    runSafely(() -> ((ChannelHandler) key.attachment()).onClosed(cause));
+                }
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    log.debug(e.getMessage(), e);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.debug(e.getMessage(), e);
+            }
+        }
+
+        private static void reject(Runnable task) {
+            if (task instanceof RegisterTask) {
+                ((RegisterTask) task).fail(new IOException("Selector pool closed"));
+            }
+        }
+
+        private static void runSafely(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.warn(e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Registers a channel, or fails if the selector thread stopped first.
+         */
+        private class RegisterTask implements Runnable {
+            private final SelectableChannel channel;
+            private final int ops;
+            private final ChannelHandler handler;
+            private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+            private RegisterTask(SelectableChannel channel, int ops, ChannelHandler handler) {
+                this.channel = channel;
+                this.ops = ops;
+                this.handler = handler;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    handler.onRegistered(channel.register(selector, ops, handler));
+                    future.complete(null);
+                } catch (ClosedChannelException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            private void fail(IOException cause) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.debug(e.getMessage(), e);
+                }
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+}
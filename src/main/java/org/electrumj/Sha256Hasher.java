@@ -0,0 +1,90 @@
+package org.electrumj;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 and double SHA-256 writing the hash into a caller supplied buffer, so hashing doesn't allocate.
+ * An instance is not thread-safe, use {@link #forCurrentThread()} to get the instance of the current thread.
+ */
+public class Sha256Hasher {
+
+    public static final int HASH_SIZE = 32;
+
+    private static final ThreadLocal<Sha256Hasher> threadHasher = ThreadLocal.withInitial(Sha256Hasher::new);
+
+    private final MessageDigest digest;
+
+    public Sha256Hasher() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the hasher of the current thread.
+     */
+    public static Sha256Hasher forCurrentThread() {
+        return threadHasher.get();
+    }
+
+    /**
+     * Writes the SHA-256 of input[inputOffset, inputOffset + length) into output[outputOffset, outputOffset + 32).
+     */
+    public void sha256(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        digest.update(input, inputOffset, length);
+        finish(output, outputOffset);
+    }
+
+    /**
+     * Writes the double SHA-256 of input[inputOffset, inputOffset + length) into
+     * output[outputOffset, outputOffset + 32). Input and output may overlap.
+     */
+    public void sha256d(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        digest.update(input, inputOffset, length);
+        finish(output, outputOffset);
+        digest.update(output, outputOffset, HASH_SIZE);
+        finish(output, outputOffset);
+    }
+
+    /**
+     * Writes the double SHA-256 of the concatenation of left[leftOffset, leftOffset + 32) and
+     * right[rightOffset, rightOffset + 32) into output[outputOffset, outputOffset + 32), as done to combine two
+     * nodes of a merkle tree. Inputs and output may overlap.
+     */
+    public void sha256dPair(byte[] left, int leftOffset, byte[] right, int rightOffset, byte[] output, int outputOffset) {
+        digest.update(left, leftOffset, HASH_SIZE);
+        digest.update(right, rightOffset, HASH_SIZE);
+        finish(output, outputOffset);
+        digest.update(output, outputOffset, HASH_SIZE);
+        finish(output, outputOffset);
+    }
+
+    /**
+     * Adds input[inputOffset, inputOffset + length) to the data being hashed, to hash data written piece by piece.
+     * @see #digest(byte[], int)
+     */
+    public void update(byte[] input, int inputOffset, int length) {
+        digest.update(input, inputOffset, length);
+    }
+
+    /**
+     * Writes the SHA-256 of the data added with {@link #update(byte[], int, int)} into
+     * output[outputOffset, outputOffset + 32), and starts a new hash.
+     */
+    public void digest(byte[] output, int outputOffset) {
+        finish(output, outputOffset);
+    }
+
+    private void finish(byte[] output, int outputOffset) {
+        try {
+            digest.digest(output, outputOffset, HASH_SIZE);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.electrumj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Transport over a blocking SSLSocket, with a dedicated thread reading the socket. Messages sent concurrently are
+ * gathered into single writes by a LineWriter.
+ */
+class SocketTransport implements Transport {
+
+    private static final Logger log = LoggerFactory.getLogger(SocketTransport.class);
+
+    private final String serverHostnameOrIp;
+    private final int serverPort;
+    private final SSLSocketFactory socketFactory;
+    // Whether the reading thread is a virtual thread, when supported.
+    private final boolean virtualThreads;
+    // Time connecting and the TLS handshake have to complete, or 0 for no timeout.
+    private final long connectTimeoutMillis;
+
+    // Socket connection to the server.
+    private SSLSocket socket;
+    // Writes the messages sent to the server.
+    private LineWriter socketWriter;
+    // InputStream to read from to read data from the server.
+    private InputStream socketInputStream;
+
+    private volatile boolean closed = false;
+
+    SocketTransport(String serverHostnameOrIp, int serverPort, SSLSocketFactory socketFactory, boolean virtualThreads,
+                    long connectTimeoutMillis) {
+        this.serverHostnameOrIp = serverHostnameOrIp;
+        this.serverPort = serverPort;
+        this.socketFactory = socketFactory;
+        this.virtualThreads = virtualThreads;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    public void open(Listener listener) throws IOException {
+        Socket plainSocket = new Socket();
+        try {
+            plainSocket.connect(new InetSocketAddress(serverHostnameOrIp, serverPort), (int) connectTimeoutMillis);
+            socket = (SSLSocket) socketFactory.createSocket(plainSocket, serverHostnameOrIp, serverPort, true);
+            // Bounds the handshake too, then reads wait as long as the connection is open.
+            socket.setSoTimeout((int) connectTimeoutMillis);
+            socket.startHandshake();
+            socket.setSoTimeout(0);
+        } catch (IOException e) {
+            plainSocket.close();
+            throw e;
+        }
+        socketWriter = new LineWriter(socket.getOutputStream());
+        socketInputStream = socket.getInputStream();
+        VirtualThreads.startThread("electrumj-reader", virtualThreads, () -> readLoop(listener));
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        try {
+            socketWriter.send(message);
+        } catch (IOException e) {
+            // Messages queued by other threads may have been lost with this write: close the socket, so the reader
+            // fails their requests instead of leaving them waiting.
+            try {
+                socket.close();
+            } catch (IOException closeException) {
+                log.debug(closeException.getMessage(), closeException);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socketInputStream.close();
+        socket.close();
+    }
+
+    private void readLoop(Listener listener) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socketInputStream, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    listener.onMessage(line);
+                } catch (Exception e) {
+                    log.warn(e.getMessage(), e);
+                }
+            }
+            listener.onClosed(new IOException("Connection closed by the server"));
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn(e.getMessage(), e);
+            }
+            listener.onClosed(e);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package org.electrumj;
+
+import org.electrumj.dto.transactionget.BlockchainTransactionGetVerboseResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Cache of the transactions fetched with "blockchain.transaction.get", keyed by tx hash and bounded by the total
+ * length of the raw transactions it holds. The least recently used transactions are evicted first.
+ *
+ * A raw transaction never changes for a given tx hash, confirmed or not, so it is kept until evicted, across new
+ * blocks. Only the confirmed raw transactions are persisted: a raw transaction is known to be confirmed when fetched
+ * along with a verbose response with confirmations, when its merkle proof is fetched, or when marked confirmed by the
+ * caller, e.g. after seeing it in a history at a positive height.
+ *
+ * Verbose responses are only kept for confirmed transactions, and their confirmations are updated with the new
+ * blocks when returned. They are dropped on a reorg, as their block may no longer be in the chain.
+ *
+ * A cache can be shared by several connections, e.g. all the connections of an ElectrumClientPool. Backed by a
+ * WalletStore, the confirmed raw transactions are persisted and read back when evicted or after a restart.
+ *
+ * Sample usage:
+ * <pre>
+ *     TransactionCache cache = new TransactionCache(64 * 1024 * 1024);
+ *     pool.setTransactionCache(cache);
+ *     pool.open();
+ *     pool.getClient().blockchainHeadersSubscribe();
+ * </pre>
+ */
+public class TransactionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionCache.class);
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+    // Least recently used first.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+    // Highest block notified since the last reorg, -1 if none.
+    private long tipHeight = -1;
+    // Last block notified by each connection, forgotten once the connection is garbage collected.
+    private final Map<Object, Tip> connectionTips = new WeakHashMap<>();
+    private long hitCount;
+    private long missCount;
+    // Persists the confirmed raw transactions, or null.
+    private volatile WalletStore walletStore;
+
+    /**
+     * Creates a cache of at most DEFAULT_MAX_BYTES.
+     */
+    public TransactionCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes Maximum total length of the raw transactions held, in bytes
+     */
+    public TransactionCache(long maxBytes) {
+        assert maxBytes > 0;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Persists the confirmed raw transactions in the given store, and looks up the transactions missing from memory
+     * in it.
+     * @param walletStore
+     */
+    public void setWalletStore(WalletStore walletStore) {
+        this.walletStore = walletStore;
+    }
+
+    /**
+     * Returns the raw transaction, in hex, or null if it is not cached.
+     * @param txHash
+     */
+    public String getRaw(String txHash) {
+        synchronized (this) {
+            Entry entry = entries.get(txHash);
+            if (entry != null) {
+                hitCount++;
+                return entry.rawTx;
+            }
+        }
+        WalletStore store = walletStore;
+        String rawTx = null;
+        if (store != null) {
+            try {
+                rawTx = store.getRawTx(txHash);
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not read " + txHash + " from the wallet store: " + e.getMessage(), e);
+            }
+        }
+        synchronized (this) {
+            if (rawTx == null) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            // Only confirmed transactions are stored.
+            putInMemory(txHash, rawTx, true);
+        }
+        return rawTx;
+    }
+
+    /**
+     * Returns a copy of the verbose response with up-to-date confirmations, or null if it is not cached.
+     * @param txHash
+     */
+    public BlockchainTransactionGetVerboseResponse getVerbose(String txHash) {
+        BlockchainTransactionGetVerboseResponse verbose;
+        long newBlocks;
+        synchronized (this) {
+            Entry entry = entries.get(txHash);
+            if (entry == null || entry.verbose == null) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            verbose = entry.verbose;
+            newBlocks = entry.verboseTipHeight < 0 || tipHeight < 0 ? 0 : tipHeight - entry.verboseTipHeight;
+        }
+        BlockchainTransactionGetVerboseResponse copy = copy(verbose);
+        copy.setConfirmations(copy.getConfirmations() + newBlocks);
+        return copy;
+    }
+
+    /**
+     * Caches a raw transaction.
+     * @param txHash
+     * @param rawTx The raw transaction, in hex
+     * @param confirmed Whether the transaction is known to be in a block
+     */
+    public void putRaw(String txHash, String rawTx, boolean confirmed) {
+        synchronized (this) {
+            putInMemory(txHash, rawTx, confirmed);
+        }
+        if (confirmed) {
+            persist(txHash, rawTx);
+        }
+    }
+
+    private void putInMemory(String txHash, String rawTx, boolean confirmed) {
+        Entry entry = entries.get(txHash);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(txHash, entry);
+        } else {
+            sizeBytes -= entry.weight();
+        }
+        entry.rawTx = rawTx;
+        entry.confirmed |= confirmed;
+        sizeBytes += entry.weight();
+        evict();
+    }
+
+    /**
+     * Caches a verbose response, along with its raw transaction. Unconfirmed responses only cache the raw
+     * transaction, as their content changes once confirmed.
+     * @param txHash
+     * @param verbose
+     */
+    public void putVerbose(String txHash, BlockchainTransactionGetVerboseResponse verbose) {
+        if (verbose.getHex() == null) {
+            return;
+        }
+        boolean confirmed = verbose.getConfirmations() > 0;
+        BlockchainTransactionGetVerboseResponse copy = confirmed ? copy(verbose) : null;
+        synchronized (this) {
+            putInMemory(txHash, verbose.getHex(), confirmed);
+            Entry entry = entries.get(txHash);
+            if (entry != null && copy != null) {
+                sizeBytes -= entry.weight();
+                entry.verbose = copy;
+                entry.verboseTipHeight = tipHeight;
+                sizeBytes += entry.weight();
+                evict();
+            }
+        }
+        if (confirmed) {
+            persist(txHash, verbose.getHex());
+        }
+    }
+
+    /**
+     * Marks a cached transaction as confirmed, so it is persisted.
+     * @param txHash
+     */
+    public void markConfirmed(String txHash) {
+        String rawTx;
+        synchronized (this) {
+            Entry entry = entries.get(txHash);
+            if (entry == null || entry.confirmed) {
+                return;
+            }
+            entry.confirmed = true;
+            rawTx = entry.rawTx;
+        }
+        persist(txHash, rawTx);
+    }
+
+    /**
+     * Removes a transaction from the cache.
+     * @param txHash
+     */
+    public synchronized void invalidate(String txHash) {
+        Entry entry = entries.remove(txHash);
+        if (entry != null) {
+            sizeBytes -= entry.weight();
+        }
+    }
+
+    /**
+     * Same as notifyNewTip(Object, long, BlockHeader), for a cache used by a single connection.
+     * @param height Height of the block notified
+     * @param header Header of the block notified, or null if unknown
+     */
+    public void notifyNewTip(long height, BlockHeader header) {
+        notifyNewTip(this, height, header);
+    }
+
+    /**
+     * Same as notifyNewTip(long, BlockHeader), without the header: only a lower height is seen as a reorg.
+     * @param height Height of the block notified
+     */
+    public void notifyNewTip(long height) {
+        notifyNewTip(this, height, null);
+    }
+
+    /**
+     * Same as notifyNewTip(Object, long, BlockHeader), without the header: only a lower height is seen as a reorg.
+     * @param connection The connection notifying the block, e.g. the ElectrumClient
+     * @param height Height of the block notified
+     */
+    public void notifyNewTip(Object connection, long height) {
+        notifyNewTip(connection, height, null);
+    }
+
+    /**
+     * Updates the height the confirmations of the verbose responses are counted from. Compared to the last block
+     * notified by the same connection, a lower height, another block at the same height, or a next block that does
+     * not link to it means a reorg: the verbose responses are dropped, their block may no longer be in the chain.
+     * The raw transactions are kept. A connection lagging behind the others is not a reorg.
+     * Connections with a cache call it with each "blockchain.headers.subscribe" notification.
+     * @param connection The connection notifying the block, e.g. the ElectrumClient
+     * @param height Height of the block notified
+     * @param header Header of the block notified, or null if unknown
+     */
+    public synchronized void notifyNewTip(Object connection, long height, BlockHeader header) {
+        Tip previous = connectionTips.put(connection, new Tip(height, header));
+        if (previous == null || !isReorg(previous, height, header)) {
+            tipHeight = Math.max(tipHeight, height);
+            return;
+        }
+        tipHeight = height;
+        for (Entry entry : entries.values()) {
+            if (entry.verbose != null) {
+                sizeBytes -= entry.weight();
+                entry.verbose = null;
+                sizeBytes += entry.weight();
+            }
+        }
+    }
+
+    private static boolean isReorg(Tip previous, long height, BlockHeader header) {
+        if (height < previous.height) {
+            return true;
+        }
+        if (header == null || previous.header == null) {
+            return false;
+        }
+        if (height == previous.height) {
+            return !Arrays.equals(header.hash(), previous.header.hash());
+        }
+        return height == previous.height + 1 && !header.linksTo(previous.header);
+    }
+
+    /**
+     * Total length of the raw transactions held, in bytes.
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Number of transactions held.
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Number of lookups that found the transaction.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Number of lookups that did not find the transaction.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private void persist(String txHash, String rawTx) {
+        WalletStore store = walletStore;
+        if (store == null) {
+            return;
+        }
+        try {
+            store.putRawTx(txHash, rawTx);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not write " + txHash + " to the wallet store: " + e.getMessage(), e);
+        }
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); sizeBytes > maxBytes && it.hasNext(); ) {
+            sizeBytes -= it.next().getValue().weight();
+            it.remove();
+        }
+    }
+
+    private static BlockchainTransactionGetVerboseResponse copy(BlockchainTransactionGetVerboseResponse verbose) {
+        // Through a tree: convertValue returns its argument itself when it already has the target type.
+        return ElectrumJson.mapper.convertValue(ElectrumJson.mapper.valueToTree(verbose),
+                BlockchainTransactionGetVerboseResponse.class);
+    }
+
+    private static class Entry {
+        private String rawTx;
+        // Only for confirmed transactions.
+        private BlockchainTransactionGetVerboseResponse verbose;
+        // Tip height when the verbose response was fetched.
+        private long verboseTipHeight = -1;
+        private boolean confirmed;
+
+        /**
+         * The raw transaction length in bytes, counted twice when the verbose response, which holds the raw
+         * transaction and its parsed fields, is cached too.
+         */
+        private long weight() {
+            long rawBytes = rawTx == null ? 0 : rawTx.length() / 2;
+            return verbose == null ? rawBytes : 2 * rawBytes;
+        }
+    }
+
+    private static class Tip {
+        private final long height;
+        // Null if not notified.
+        private final BlockHeader header;
+
+        private Tip(long height, BlockHeader header) {
+            this.height = height;
+            this.header = header;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.electrumj;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * A connection to an Electrum server carrying newline delimited JSON messages.
+ */
+interface Transport {
+
+    /**
+     * Connects to the server and completes the TLS handshake. Once opened, every message read from the server is
+     * passed to the listener.
+     */
+    void open(Listener listener) throws GeneralSecurityException, IOException;
+
+    /**
+     * Sends a message to the server. The message must not include the trailing '\n', the transport appends it.
+     * Can be invoked from any thread.
+     */
+    void send(byte[] message) throws IOException;
+
+    /**
+     * Closes the connection.
+     */
+    void close() throws IOException;
+
+    /**
+     * Receives the messages read from the server.
+     */
+    interface Listener {
+        /**
+         * Invoked with each line read from the server, without the trailing '\n'.
+         */
+        void onMessage(String message);
+
+        /**
+         * Invoked once when the connection is closed by the server or fails.
+         */
+        void onClosed(IOException cause);
+    }
+}
@@ -1,11 +1,8 @@
 package org.electrumj;
 
-import org.bitcoinj.core.Address;
 import org.bitcoinj.core.NetworkParameters;
-import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
 import org.bitcoinj.params.MainNetParams;
-import org.bitcoinj.script.Script;
-import org.bitcoinj.script.ScriptBuilder;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -29,18 +26,56 @@ public class Util {
     /**
      * Obtains the electrum's scriptshash given an address.
      * See <a href="https://electrumx-spesmilo.readthedocs.io/en/latest/protocol-basics.html#script-hashes"Electrum documentation on script hash</a>.
+     * To derive many scripthashes at once, see {@link ScripthashDeriver}.
      * @param bitcoinjNetowrkParameters The network being used: e.g. regtest, mainnet, etc.
      * @param address The address
      * @return The scripthash associated with the supplied address
      * @throws Throwable
      */
     public static String scripthash(NetworkParameters bitcoinjNetowrkParameters, String address) {
-        Address addressBitcoinj = Address.fromString(bitcoinjNetowrkParameters, address);
-        Script script = ScriptBuilder.createOutputScript(addressBitcoinj);
-        byte[] scriptArray = script.getProgram();
-        byte[] scriptHash = Sha256Hash.hash(scriptArray);
-        Sha256Hash reversedHash = Sha256Hash.wrapReversed(scriptHash);
-        return reversedHash.toString();
+        return Utils.HEX.encode(ScripthashDeriver.scripthash(bitcoinjNetowrkParameters, address));
+    }
+
+    /**
+     * Decodes a hex string into dst, without allocating.
+     * @param hex The hex string, upper or lower case
+     * @param dst The buffer to write the bytes into
+     * @param offset Position of dst to write the first byte at
+     * @throws IllegalArgumentException if the string is not valid hex
+     */
+    public static void hexToBytes(String hex, byte[] dst, int offset) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd length hex string: " + hex);
+        }
+        for (int i = 0; i < hex.length(); i += 2) {
+            dst[offset + i / 2] = (byte) ((hexDigit(hex, i) << 4) | hexDigit(hex, i + 1));
+        }
+    }
+
+    /**
+     * Decodes a hex string into dst reversing the byte order, without allocating. Electrum servers display hashes
+     * (txids, merkle branches, block hashes) reversed compared with the order they are hashed in.
+     * @param hex The hex string, upper or lower case
+     * @param dst The buffer to write the bytes into
+     * @param offset Position of dst to write the last byte of the hex string at
+     * @throws IllegalArgumentException if the string is not valid hex
+     */
+    public static void reversedHexToBytes(String hex, byte[] dst, int offset) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd length hex string: " + hex);
+        }
+        int last = offset + hex.length() / 2 - 1;
+        for (int i = 0; i < hex.length(); i += 2) {
+            dst[last - i / 2] = (byte) ((hexDigit(hex, i) << 4) | hexDigit(hex, i + 1));
+        }
+    }
+
+    private static int hexDigit(String hex, int index) {
+        int digit = Character.digit(hex.charAt(index), 16);
+        if (digit < 0) {
+            throw new IllegalArgumentException("Invalid hex character at " + index + ": " + hex);
+        }
+        return digit;
     }
 
     /**
@@ -0,0 +1,64 @@
+package org.electrumj;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking code on virtual threads when the JVM supports them, i.e. Java 21 or later, and on platform threads
+ * otherwise.
+ *
+ * The blocking methods of ElectrumClient wait for the response of a request pipelined on a shared connection, they
+ * don't hold the connection. On a virtual thread, waiting only parks the virtual thread, so thread-per-request code
+ * can run tens of thousands of concurrent requests over a few connections.
+ *
+ * This class is replaced by its Java 21 version in the multi-release jar.
+ *
+ * Sample usage:
+ * <pre>
+ *     try (ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("lookup")) {
+ *         for (String scripthash : scripthashes) {
+ *             executor.submit(() -&gt; pool.getClient().blockchainScripthashGetBalance(scripthash));
+ *         }
+ *     }
+ * </pre>
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Whether this JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Returns an executor running each task on a new thread: a virtual thread when supported, otherwise a daemon
+     * thread of a cached thread pool.
+     * @param name Prefix of the names of the threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a daemon thread running the task, a virtual thread if virtual is set and supported.
+     * @param name
+     * @param virtual
+     * @param task
+     */
+    static Thread startThread(String name, boolean virtual, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
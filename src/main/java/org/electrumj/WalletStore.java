@@ -0,0 +1,458 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Utils;
+import org.electrumj.dto.BlockchainScripthashGetTxsResponseEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Local store of what was learned from the Electrum servers, so a restarted process only asks for what changed:
+ * the history and status of the scripthashes, and the confirmed raw transactions.
+ *
+ * Everything is appended to a single log file of checksummed records. A history record replaces the previous
+ * history of its scripthash, raw transactions are written once. On startup the file is read sequentially in large
+ * chunks: the histories are kept in memory, the raw transactions are only indexed, by the first 8 bytes of their
+ * hash, and read from the file when requested. When two transactions share an index key, the last one stored wins,
+ * both when storing and when reading the file back. A record torn by a crash is dropped along with the rest of the
+ * file.
+ *
+ * The file only grows, {@link #compact()} rewrites it without the records replaced since.
+ *
+ * Sample usage:
+ * <pre>
+ *     WalletStore store = new WalletStore(Paths.get("wallet.dat"));
+ *     walletSync.setWalletStore(store);
+ *     transactionCache.setWalletStore(store);
+ *     walletSync.subscribe(scripthashes).get();
+ * </pre>
+ */
+public class WalletStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletStore.class);
+
+    private static final byte HISTORY_RECORD = 1;
+    private static final byte RAW_TX_RECORD = 2;
+    // Type, payload length and payload CRC32.
+    private static final int RECORD_HEADER_SIZE = 1 + 4 + 4;
+    private static final int HASH_SIZE = 32;
+    // Tx hash, height and fee.
+    private static final int HISTORY_ENTRY_SIZE = HASH_SIZE + 4 + 8;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path file;
+    private FileChannel channel;
+    // Position the next record is appended at.
+    private long end;
+    // Bytes of the records superseded by a newer one.
+    private long garbageBytes;
+
+    private final Map<String, StoredHistory> histories = new HashMap<>();
+    // Position and length of the raw transaction records, by the first 8 bytes of the tx hash. On a collision the
+    // last transaction stored wins, the other is no longer found.
+    private final Map<Long, RecordLocation> rawTxIndex = new HashMap<>();
+
+    /**
+     * Opens the store kept in the given file, creating it if it doesn't exist, and reads its content.
+     * @param file
+     * @throws IOException
+     */
+    public WalletStore(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+    }
+
+    /**
+     * Returns the stored history of the scripthash, or null if none is stored.
+     * @param scripthash
+     */
+    public synchronized List<BlockchainScripthashGetTxsResponseEntry> getHistory(String scripthash) {
+        StoredHistory history = histories.get(scripthash);
+        return history == null ? null : history.history;
+    }
+
+    /**
+     * Returns the stored status of the scripthash, null if its history is empty or not stored.
+     * @param scripthash
+     */
+    public synchronized String getStatus(String scripthash) {
+        StoredHistory history = histories.get(scripthash);
+        return history == null ? null : history.status;
+    }
+
+    /**
+     * Returns the scripthashes whose history is stored.
+     */
+    public synchronized Set<String> getScripthashes() {
+        return Collections.unmodifiableSet(new HashSet<>(histories.keySet()));
+    }
+
+    /**
+     * Stores the history of a scripthash, replacing the previous one.
+     * @param scripthash
+     * @param history The history, in the order sent by the server
+     * @throws IOException
+     */
+    public synchronized void putHistory(String scripthash, List<BlockchainScripthashGetTxsResponseEntry> history) throws IOException {
+        String status = WalletSync.computeStatus(history);
+        StoredHistory previous = histories.get(scripthash);
+        if (previous != null && Objects.equals(previous.status, status)) {
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(HASH_SIZE + 1 + HASH_SIZE + 4 + history.size() * HISTORY_ENTRY_SIZE);
+        putHash(payload, scripthash);
+        payload.put((byte) (status == null ? 0 : 1));
+        putHash(payload, status);
+        payload.putInt(history.size());
+        for (BlockchainScripthashGetTxsResponseEntry entry : history) {
+            putHash(payload, entry.getTxHash());
+            payload.putInt((int) entry.getHeight());
+            payload.putLong(entry.getFee());
+        }
+        payload.flip();
+        int recordSize = RECORD_HEADER_SIZE + payload.remaining();
+        long position = append(HISTORY_RECORD, payload);
+        if (previous != null) {
+            garbageBytes += previous.recordSize;
+        }
+        histories.put(scripthash, new StoredHistory(Collections.unmodifiableList(new ArrayList<>(history)), status, position, recordSize));
+    }
+
+    /**
+     * Returns the stored raw transaction, in hex, or null if it is not stored.
+     * @param txHash
+     * @throws IOException
+     */
+    public synchronized String getRawTx(String txHash) throws IOException {
+        RecordLocation location = rawTxIndex.get(indexKey(txHash));
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(location.length);
+        readFully(payload, location.position + RECORD_HEADER_SIZE);
+        payload.flip();
+        if (!getHash(payload).equalsIgnoreCase(txHash)) {
+            // Another transaction with the same index key
+            return null;
+        }
+        byte[] rawTx = new byte[payload.remaining()];
+        payload.get(rawTx);
+        return Utils.HEX.encode(rawTx);
+    }
+
+    /**
+     * Stores a raw transaction, if not stored yet. Only confirmed transactions should be stored, as they never change.
+     * Another transaction stored with the same index key is replaced.
+     * @param txHash
+     * @param rawTx The raw transaction, in hex
+     * @throws IOException
+     */
+    public synchronized void putRawTx(String txHash, String rawTx) throws IOException {
+        long key = indexKey(txHash);
+        RecordLocation stored = rawTxIndex.get(key);
+        if (stored != null && readStoredTxHash(stored).equalsIgnoreCase(txHash)) {
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(HASH_SIZE + rawTx.length() / 2);
+        putHash(payload, txHash);
+        Util.hexToBytes(rawTx, payload.array(), HASH_SIZE);
+        payload.position(payload.limit());
+        payload.flip();
+        int length = payload.remaining();
+        long position = append(RAW_TX_RECORD, payload);
+        indexRawTx(key, new RecordLocation(position, length));
+    }
+
+    /**
+     * Number of raw transactions stored.
+     */
+    public synchronized int getRawTxCount() {
+        return rawTxIndex.size();
+    }
+
+    /**
+     * Size of the file, in bytes.
+     */
+    public synchronized long getSizeBytes() {
+        return end;
+    }
+
+    /**
+     * Bytes of the file taken by histories and raw transactions replaced since, freed by {@link #compact()}.
+     */
+    public synchronized long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * Rewrites the file without the records replaced since, e.g. when getGarbageBytes() is a large part of
+     * getSizeBytes(). The new file replaces the old one atomically.
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        Path compactFile = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel compactChannel = FileChannel.open(compactFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Map<Long, RecordLocation> newIndex = new HashMap<>();
+            long position = 0;
+            for (Map.Entry<Long, RecordLocation> entry : rawTxIndex.entrySet()) {
+                RecordLocation location = entry.getValue();
+                long size = RECORD_HEADER_SIZE + location.length;
+                long copied = 0;
+                while (copied < size) {
+                    copied += channel.transferTo(location.position + copied, size - copied, compactChannel);
+                }
+                newIndex.put(entry.getKey(), new RecordLocation(position, location.length));
+                position += size;
+            }
+            for (Map.Entry<String, StoredHistory> entry : histories.entrySet()) {
+                ByteBuffer record = readRecord(entry.getValue().position, entry.getValue().recordSize);
+                while (record.hasRemaining()) {
+                    compactChannel.write(record);
+                }
+                entry.getValue().position = position;
+                position += entry.getValue().recordSize;
+            }
+            compactChannel.force(true);
+            rawTxIndex.clear();
+            rawTxIndex.putAll(newIndex);
+            end = position;
+            garbageBytes = 0;
+        }
+        channel.close();
+        Files.move(compactFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes the changes to disk.
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Writes the changes to disk and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Reads all the records, in large chunks, keeping the histories and indexing the raw transactions.
+     * The file is truncated after the last valid record.
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        buffer.flip();
+        long position = 0;
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= size) {
+            if (buffer.remaining() < RECORD_HEADER_SIZE) {
+                buffer = refill(buffer, position, RECORD_HEADER_SIZE);
+            }
+            byte type = buffer.get();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if ((type != HISTORY_RECORD && type != RAW_TX_RECORD) || length < HASH_SIZE || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            if (buffer.remaining() < length) {
+                buffer = refill(buffer, position + RECORD_HEADER_SIZE, length);
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            buffer.position(buffer.position() + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            if (type == HISTORY_RECORD) {
+                loadHistory(payload, position, RECORD_HEADER_SIZE + length);
+            } else {
+                indexRawTx(payload.getLong(0), new RecordLocation(position, length));
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < size) {
+            log.warn("Dropping " + (size - position) + " bytes of invalid records at the end of " + file);
+            channel.truncate(position);
+        }
+        end = position;
+    }
+
+    /**
+     * Indexes a raw transaction record, replacing the one with the same index key, if any.
+     */
+    private void indexRawTx(long key, RecordLocation location) {
+        RecordLocation previous = rawTxIndex.put(key, location);
+        if (previous != null) {
+            garbageBytes += RECORD_HEADER_SIZE + previous.length;
+        }
+    }
+
+    private String readStoredTxHash(RecordLocation location) throws IOException {
+        ByteBuffer hash = ByteBuffer.allocate(HASH_SIZE);
+        readFully(hash, location.position + RECORD_HEADER_SIZE);
+        hash.flip();
+        return getHash(hash);
+    }
+
+    private void loadHistory(ByteBuffer payload, long position, int recordSize) {
+        String scripthash = getHash(payload);
+        boolean hasStatus = payload.get() != 0;
+        String status = getHash(payload);
+        int count = payload.getInt();
+        List<BlockchainScripthashGetTxsResponseEntry> history = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BlockchainScripthashGetTxsResponseEntry entry = new BlockchainScripthashGetTxsResponseEntry();
+            entry.setTxHash(getHash(payload));
+            entry.setHeight(payload.getInt());
+            entry.setFee(payload.getLong());
+            history.add(entry);
+        }
+        StoredHistory previous = histories.put(scripthash, new StoredHistory(Collections.unmodifiableList(history),
+                hasStatus ? status : null, position, recordSize));
+        if (previous != null) {
+            garbageBytes += previous.recordSize;
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads more, growing the buffer if a record is larger.
+     * @param position Position in the file of the first unread byte
+     * @param needed Number of bytes needed from that position
+     */
+    private ByteBuffer refill(ByteBuffer buffer, long position, int needed) throws IOException {
+        if (needed > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(needed);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        long readPosition = position + buffer.position();
+        while (buffer.position() < needed) {
+            int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + file);
+            }
+            readPosition += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Appends a record with the given payload.
+     * @return the position of the record in the file
+     */
+    private long append(byte type, ByteBuffer payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.put(type).putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+        long recordPosition = end;
+        long position = end;
+        for (ByteBuffer buffer : new ByteBuffer[] {header, payload}) {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+        end = position;
+        return recordPosition;
+    }
+
+    private ByteBuffer readRecord(long position, int size) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(size);
+        readFully(record, position);
+        record.flip();
+        return record;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + file);
+            }
+            position += read;
+        }
+    }
+
+    private static long indexKey(String txHash) {
+        if (txHash.length() != 2 * HASH_SIZE) {
+            throw new IllegalArgumentException("Not a 32-byte hash: " + txHash);
+        }
+        return Long.parseUnsignedLong(txHash.substring(0, 16), 16);
+    }
+
+    private static void putHash(ByteBuffer buffer, String hash) {
+        if (hash == null) {
+            buffer.position(buffer.position() + HASH_SIZE);
+            return;
+        }
+        if (hash.length() != 2 * HASH_SIZE) {
+            throw new IllegalArgumentException("Not a 32-byte hash: " + hash);
+        }
+        Util.hexToBytes(hash, buffer.array(), buffer.arrayOffset() + buffer.position());
+        buffer.position(buffer.position() + HASH_SIZE);
+    }
+
+    private static String getHash(ByteBuffer buffer) {
+        byte[] hash = new byte[HASH_SIZE];
+        buffer.get(hash);
+        return Utils.HEX.encode(hash);
+    }
+
+    private static class StoredHistory {
+        private final List<BlockchainScripthashGetTxsResponseEntry> history;
+        private final String status;
+        // Position of the record in the file, updated when compacting.
+        private long position;
+        private final int recordSize;
+
+        private StoredHistory(List<BlockchainScripthashGetTxsResponseEntry> history, String status, long position, int recordSize) {
+            this.history = history;
+            this.status = status;
+            this.position = position;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private static class RecordLocation {
+        // Position of the record in the file.
+        private final long position;
+        // Length of the payload.
+        private final int length;
+
+        private RecordLocation(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Utils;
+import org.electrumj.dto.BlockchainScripthashGetTxsResponseEntry;
+import org.electrumj.dto.BlockchainScripthashStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the history of a set of scripthashes in sync with an Electrum server, fetching it only when it changed.
+ *
+ * The last history of each scripthash is kept along with its status hash, computed locally as the protocol does.
+ * The status the server sends, when subscribing or in a notification, is compared with the local one and the history
+ * is only requested when they differ. Resubscribing after a reconnection thus only fetches the histories that
+ * changed meanwhile. Backed by a WalletStore, the histories are persisted, and a restarted process only fetches the
+ * histories that changed since it stopped.
+ *
+ * Sample usage:
+ * <pre>
+ *     WalletSync walletSync = new WalletSync(client);
+ *     walletSync.setScripthashHistoryListener((scripthash, history) -&gt; ...);
+ *     walletSync.subscribe(scripthashes).get();
+ * </pre>
+ */
+public class WalletSync implements BlockchainScripthashesListener {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletSync.class);
+
+    // Longest "tx_hash:height:" item: a 64 chars tx hash, a long and 2 colons.
+    private static final int MAX_STATUS_ITEM_SIZE = 64 + 20 + 2;
+    private static final ThreadLocal<byte[]> threadStatusItem = ThreadLocal.withInitial(() -> new byte[MAX_STATUS_ITEM_SIZE]);
+
+    private final ElectrumClient client;
+    private final Map<String, ScripthashState> states = new ConcurrentHashMap<>();
+    private volatile ScripthashHistoryListener scripthashHistoryListener;
+    // Persists the histories, or null.
+    private volatile WalletStore walletStore;
+
+    /**
+     * Creates a WalletSync subscribing and fetching the histories through the given connection.
+     * @param client
+     */
+    public WalletSync(ElectrumClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets the listener notified each time a history fetched differs from the previous one.
+     * @param scripthashHistoryListener
+     */
+    public void setScripthashHistoryListener(ScripthashHistoryListener scripthashHistoryListener) {
+        this.scripthashHistoryListener = scripthashHistoryListener;
+    }
+
+    /**
+     * Removes the scripthashHistoryListener
+     */
+    public void cleanScripthashHistoryListener() {
+        this.scripthashHistoryListener = null;
+    }
+
+    /**
+     * Persists the histories fetched from now on in the given store, and starts from the histories it holds.
+     * @param walletStore
+     */
+    public void setWalletStore(WalletStore walletStore) {
+        this.walletStore = walletStore;
+        for (String scripthash : walletStore.getScripthashes()) {
+            setKnown(scripthash, walletStore.getHistory(scripthash), walletStore.getStatus(scripthash));
+        }
+    }
+
+    /**
+     * Sets the history of a scripthash known from a previous run, e.g. read from disk, so it isn't fetched again if
+     * it didn't change.
+     * @param scripthash
+     * @param history
+     */
+    public void setKnownHistory(String scripthash, List<BlockchainScripthashGetTxsResponseEntry> history) {
+        setKnown(scripthash, Collections.unmodifiableList(new ArrayList<>(history)), computeStatus(history));
+    }
+
+    private void setKnown(String scripthash, List<BlockchainScripthashGetTxsResponseEntry> history, String status) {
+        ScripthashState state = states.computeIfAbsent(scripthash, key -> new ScripthashState());
+        synchronized (state) {
+            state.history = history;
+            state.status = status;
+        }
+    }
+
+    /**
+     * Returns the local status of the scripthash, null if its history is empty or unknown.
+     * @param scripthash
+     */
+    public String getStatus(String scripthash) {
+        ScripthashState state = states.get(scripthash);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            return state.status;
+        }
+    }
+
+    /**
+     * Returns the last history fetched for the scripthash, or null if it is unknown.
+     * @param scripthash
+     */
+    public List<BlockchainScripthashGetTxsResponseEntry> getHistory(String scripthash) {
+        ScripthashState state = states.get(scripthash);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            return state.history;
+        }
+    }
+
+    /**
+     * Returns the scripthashes kept in sync.
+     */
+    public Set<String> getScripthashes() {
+        return Collections.unmodifiableSet(states.keySet());
+    }
+
+    /**
+     * Subscribes to the scripthashes, as JSON-RPC batches, and fetches the history of those whose status differs from
+     * the local one. The connection's scripthashes listener is replaced by this WalletSync.
+     * @param scripthashes
+     * @return a future completed with the scripthashes whose history changed
+     */
+    public CompletableFuture<Set<String>> subscribe(Collection<String> scripthashes) {
+        client.setBlockchainScripthashesListener(this);
+        for (String scripthash : scripthashes) {
+            states.computeIfAbsent(scripthash, key -> new ScripthashState());
+        }
+        return client.blockchainScripthashSubscribeBatchAsync(scripthashes).thenCompose(statuses -> {
+            List<String> changed = new ArrayList<>();
+            statuses.forEach((scripthash, status) -> {
+                if (!status.isSuccess()) {
+                    log.warn("Could not subscribe to " + scripthash + ": " + status.getError().getMessage(), status.getError());
+                } else if (!Objects.equals(status.getResult(), getStatus(scripthash))) {
+                    changed.add(scripthash);
+                } else if (status.getResult() == null && getHistory(scripthash) == null) {
+                    // A null status is an empty history, no need to fetch it.
+                    setKnownHistory(scripthash, Collections.emptyList());
+                }
+            });
+            return fetchHistories(changed);
+        });
+    }
+
+    /**
+     * Subscribes again to all the scripthashes kept in sync, e.g. after reconnecting, fetching only the histories
+     * that changed meanwhile.
+     * @return a future completed with the scripthashes whose history changed
+     */
+    public CompletableFuture<Set<String>> resubscribe() {
+        return subscribe(new ArrayList<>(states.keySet()));
+    }
+
+    /**
+     * Fetches the history of the scripthash if the notified status differs from the local one.
+     */
+    @Override
+    public void notifyNewScripthashStatus(BlockchainScripthashStatus status) {
+        if (!states.containsKey(status.getScripthash()) || Objects.equals(status.getStatus(), getStatus(status.getScripthash()))) {
+            return;
+        }
+        fetchHistories(Collections.singletonList(status.getScripthash())).exceptionally(e -> {
+            log.warn("Could not fetch the history of " + status.getScripthash() + ": " + e.getMessage(), e);
+            return null;
+        });
+    }
+
+    /**
+     * Computes the status of a history as the Electrum protocol does: the sha256 of the concatenation of the
+     * "tx_hash:height:" of each entry, in hex.
+     * See <a href="https://electrumx-spesmilo.readthedocs.io/en/latest/protocol-basics.html#status">Electrum documentation on status</a>.
+     * @param history The history, in the order sent by the server
+     * @return the status, or null if the history is empty
+     */
+    public static String computeStatus(List<BlockchainScripthashGetTxsResponseEntry> history) {
+        if (history.isEmpty()) {
+            return null;
+        }
+        Sha256Hasher hasher = Sha256Hasher.forCurrentThread();
+        byte[] item = threadStatusItem.get();
+        for (BlockchainScripthashGetTxsResponseEntry entry : history) {
+            String txHash = entry.getTxHash();
+            int length = 0;
+            for (int i = 0; i < txHash.length(); i++) {
+                item[length++] = (byte) txHash.charAt(i);
+            }
+            item[length++] = ':';
+            length = writeDecimal(entry.getHeight(), item, length);
+            item[length++] = ':';
+            hasher.update(item, 0, length);
+        }
+        byte[] status = new byte[Sha256Hasher.HASH_SIZE];
+        hasher.digest(status, 0);
+        return Utils.HEX.encode(status);
+    }
+
+    /**
+     * Fetches the histories, as JSON-RPC batches, and applies them. A scripthash whose history is already being
+     * fetched is fetched once more when that fetch completes, instead of fetching it twice at once.
+     * @return a future completed with the scripthashes whose history changed
+     */
+    private CompletableFuture<Set<String>> fetchHistories(Collection<String> scripthashes) {
+        List<String> toFetch = new ArrayList<>();
+        for (String scripthash : scripthashes) {
+            ScripthashState state = states.computeIfAbsent(scripthash, key -> new ScripthashState());
+            synchronized (state) {
+                if (state.fetching) {
+                    state.fetchAgain = true;
+                } else {
+                    state.fetching = true;
+                    toFetch.add(scripthash);
+                }
+            }
+        }
+        if (toFetch.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptySet());
+        }
+        // Applied off the thread reading the connection: the histories are written to the store and passed to the
+        // listener.
+        return client.blockchainScripthashGetHistoryBatchAsync(toFetch).handleAsync((histories, e) -> {
+            Set<String> changed = new LinkedHashSet<>();
+            List<String> fetchAgain = new ArrayList<>();
+            for (String scripthash : toFetch) {
+                BatchResult<List<BlockchainScripthashGetTxsResponseEntry>> history = histories == null ? null : histories.get(scripthash);
+                if (history != null && history.isSuccess() && apply(scripthash, history.getResult())) {
+                    changed.add(scripthash);
+                } else if (history != null && !history.isSuccess()) {
+                    log.warn("Could not fetch the history of " + scripthash + ": " + history.getError().getMessage(), history.getError());
+                }
+                ScripthashState state = states.get(scripthash);
+                synchronized (state) {
+                    state.fetching = false;
+                    if (state.fetchAgain) {
+                        state.fetchAgain = false;
+                        fetchAgain.add(scripthash);
+                    }
+                }
+            }
+            if (!fetchAgain.isEmpty()) {
+                fetchHistories(fetchAgain);
+            }
+            if (e != null) {
+                throw new IllegalStateException("Could not fetch the histories: " + e.getMessage(), e);
+            }
+            return changed;
+        }, client::executeOnListenerThread);
+    }
+
+    /**
+     * Stores the history fetched and notifies the listener if it changed.
+     * @return whether the history changed
+     */
+    private boolean apply(String scripthash, List<BlockchainScripthashGetTxsResponseEntry> history) {
+        String status = computeStatus(history);
+        ScripthashState state = states.get(scripthash);
+        List<BlockchainScripthashGetTxsResponseEntry> newHistory = Collections.unmodifiableList(history);
+        synchronized (state) {
+            if (Objects.equals(status, state.status) && state.history != null) {
+                return false;
+            }
+            state.status = status;
+            state.history = newHistory;
+        }
+        WalletStore store = walletStore;
+        if (store != null) {
+            try {
+                store.putHistory(scripthash, newHistory);
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not write the history of " + scripthash + " to the wallet store: " + e.getMessage(), e);
+            }
+        }
+        ScripthashHistoryListener listener = scripthashHistoryListener;
+        if (listener != null) {
+            listener.notifyScripthashHistoryChanged(scripthash, newHistory);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the decimal digits of value into buffer at the given position.
+     * @return the position after the last digit
+     */
+    private static int writeDecimal(long value, byte[] buffer, int position) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return position;
+    }
+
+    /**
+     * What is known about a scripthash. Guarded by its own monitor.
+     */
+    private static class ScripthashState {
+        // Null while the history is empty or unknown.
+        private String status;
+        // Null until the history is fetched or set.
+        private List<BlockchainScripthashGetTxsResponseEntry> history;
+        private boolean fetching;
+        // Set when a new status is notified while fetching.
+        private boolean fetchAgain;
+    }
+}
@@ -11,10 +11,15 @@ public class BlockchainScripthashStatus {
     private String scripthash;
     private String status;
 
+    public BlockchainScripthashStatus(String scripthash, String status) {
+        this.scripthash = scripthash;
+        this.status = status;
+    }
+
     // Used when parsing notifications
     public BlockchainScripthashStatus(List list) {
         scripthash = (String) list.get(0);
-        status = (String) list.get(0);
+        status = (String) list.get(1);
     }
 
 }
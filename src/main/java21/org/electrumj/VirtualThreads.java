@@ -0,0 +1,48 @@
+package org.electrumj;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs blocking code on virtual threads when the JVM supports them, i.e. Java 21 or later, and on platform threads
+ * otherwise.
+ *
+ * The blocking methods of ElectrumClient wait for the response of a request pipelined on a shared connection, they
+ * don't hold the connection. On a virtual thread, waiting only parks the virtual thread, so thread-per-request code
+ * can run tens of thousands of concurrent requests over a few connections.
+ *
+ * This is the Java 21 version of the class, used from the multi-release jar.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Whether this JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Returns an executor running each task on a new virtual thread.
+     * @param name Prefix of the names of the threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    /**
+     * Starts a daemon thread running the task, a virtual thread if virtual is set.
+     * @param name
+     * @param virtual
+     * @param task
+     */
+    static Thread startThread(String name, boolean virtual, Runnable task) {
+        if (virtual) {
+            return Thread.ofVirtual().name(name).start(task);
+        }
+        return Thread.ofPlatform().name(name).daemon(true).start(task);
+    }
+}
@@ -0,0 +1,152 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveLimiterTest {
+
+    @Test
+    public void weighsHeavyMethodsMore() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter();
+        assertTrue(limiter.getMethodWeight("blockchain.scripthash.get_history") > limiter.getMethodWeight("blockchain.transaction.get"));
+        assertTrue(limiter.getMethodWeight("blockchain.transaction.get") > limiter.getMethodWeight("server.ping"));
+        assertEquals(1, limiter.getMethodWeight("unknown"), 0);
+        limiter.setMethodWeight("unknown", 3);
+        assertEquals(3, limiter.getMethodWeight("unknown"), 0);
+    }
+
+    @Test
+    public void limitsWeightInFlight() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 100);
+        // Always allowed when nothing is in flight, whatever the weight.
+        assertTrue(limiter.tryAcquire(20));
+        assertFalse(limiter.tryAcquire(1));
+        limiter.release(20, -1, false);
+        assertTrue(limiter.tryAcquire(6));
+        assertTrue(limiter.tryAcquire(4));
+        assertFalse(limiter.tryAcquire(0.5));
+        assertEquals(10, limiter.getInFlight(), 0);
+    }
+
+    @Test
+    public void growsWhileLatencyIsSteady() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            saturate(limiter);
+            limiter.release(1, 1_000_000, false);
+        }
+        assertTrue(limiter.getLimit() > 20);
+    }
+
+    @Test
+    public void doesNotGrowWhenNotUsed() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire(1);
+            limiter.release(1, 1_000_000, false);
+        }
+        assertEquals(10, limiter.getLimit(), 0);
+    }
+
+    @Test
+    public void shrinksWhenServerDelaysResponses() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(50, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            saturate(limiter);
+            limiter.release(1, 1_000_000, false);
+        }
+        double steadyLimit = limiter.getLimit();
+        // The server throttles the session by delaying its responses.
+        for (int i = 0; i < 50; i++) {
+            saturate(limiter);
+            limiter.release(1, 10_000_000, false);
+        }
+        assertTrue(limiter.getLimit() < steadyLimit / 2);
+    }
+
+    @Test
+    public void halvesOnOverloadError() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(40, 4, 100);
+        limiter.tryAcquire(1);
+        limiter.release(1, 1_000_000, true);
+        assertEquals(20, limiter.getLimit(), 0);
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire(1);
+            limiter.release(1, -1, true);
+        }
+        assertEquals(4, limiter.getLimit(), 0);
+        assertEquals(6, limiter.getOverloadCount());
+    }
+
+    @Test
+    public void pipelineSendsWaitingRequestsWhenAnswered() {
+        RecordingTransport transport = new RecordingTransport();
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 2);
+        RequestPipeline pipeline = new RequestPipeline(transport, (method, params) -> { }, limiter);
+        CompletableFuture<String> first = pipeline.sendRequest("test", null, String.class);
+        CompletableFuture<String> second = pipeline.sendRequest("test", null, String.class);
+        CompletableFuture<String> third = pipeline.sendRequest("test", null, String.class);
+        assertEquals(2, transport.messages.size());
+        assertEquals(3, pipeline.getPendingRequestCount());
+        pipeline.onMessage("{\"id\": 1, \"result\": \"first\"}");
+        assertEquals("first", first.join());
+        assertEquals(3, transport.messages.size());
+        assertTrue(transport.messages.get(2).contains("\"id\":3"));
+        // An overloaded server halves the limit.
+        pipeline.onMessage("{\"id\": 2, \"error\": {\"code\": -101, \"message\": \"excessive resource usage\"}}");
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(1, limiter.getLimit(), 0);
+        pipeline.close();
+        assertTrue(third.isCompletedExceptionally());
+        assertEquals(0, limiter.getInFlight(), 0);
+    }
+
+    @Test
+    public void pipelineFailsWaitingRequestsWhenClosed() {
+        RecordingTransport transport = new RecordingTransport();
+        RequestPipeline pipeline = new RequestPipeline(transport, (method, params) -> { }, new AdaptiveLimiter(1, 1, 1));
+        CompletableFuture<String> sent = pipeline.sendRequest("test", null, String.class);
+        CompletableFuture<String> waiting = pipeline.sendRequest("test", null, String.class);
+        pipeline.onClosed(new IOException("Connection reset"));
+        assertTrue(sent.isCompletedExceptionally());
+        assertTrue(waiting.isCompletedExceptionally());
+        assertEquals(1, transport.messages.size());
+        assertEquals(0, pipeline.getPendingRequestCount());
+    }
+
+    /**
+     * Takes the room left by the limit, so the limiter sees it is used.
+     */
+    private static void saturate(AdaptiveLimiter limiter) {
+        while (limiter.tryAcquire(1)) {
+            if (limiter.getInFlight() >= limiter.getLimit()) {
+                return;
+            }
+        }
+    }
+
+    private static class RecordingTransport implements Transport {
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public void open(Listener listener) {
+        }
+
+        @Override
+        public void send(byte[] message) {
+            messages.add(new String(message));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockHeaderTest {
+
+    // Block 100000
+    private static final String HEADER_HEX = "0100000050120119172a610421a6c3011dd330d9df07b63616c2cc1f1cd00200000000006657a9252aacd5c0b2940996ecff952228c3067cc38d4885efb5a4ac4247e9f337221b4d4c86041b0f2b5710";
+
+    @Test
+    public void fields() {
+        BlockHeader header = BlockHeader.fromHex(HEADER_HEX);
+        assertEquals(1, header.getVersion());
+        assertEquals(1293623863L, header.getTime());
+        assertEquals(0x1b04864cL, header.getBits());
+        assertEquals(274148111L, header.getNonce());
+        assertArrayEquals(Utils.reverseBytes(Utils.HEX.decode("000000000002d01c1fccc21636b607dfd930d31d01c3a62104612a1719011250")), header.getPrevHash());
+        assertArrayEquals(Utils.reverseBytes(Utils.HEX.decode("f3e94742aca4b5ef85488dc37c06c3282295ffec960994b2c0d5ac2a25a95766")), header.getMerkleRoot());
+        assertEquals("000000000003ba27aa200b1cecaad478d2b00432346c3f1f3986da1afd33e506", header.getHashHex());
+        assertEquals(HEADER_HEX, header.toHex());
+    }
+
+    @Test
+    public void concatenated() {
+        byte[] first = Utils.HEX.decode(HEADER_HEX);
+        byte[] second = new byte[BlockHeader.SIZE];
+        System.arraycopy(Sha256Hash.hashTwice(first), 0, second, 4, 32);
+        List<BlockHeader> headers = BlockHeader.fromConcatenatedHex(HEADER_HEX + Utils.HEX.encode(second));
+        assertEquals(2, headers.size());
+        assertEquals(BlockHeader.fromHex(HEADER_HEX), headers.get(0));
+        assertArrayEquals(second, headers.get(1).toByteArray());
+        assertTrue(headers.get(1).linksTo(headers.get(0)));
+        assertFalse(headers.get(0).linksTo(headers.get(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedHeaders() {
+        BlockHeader.fromConcatenatedHex(HEADER_HEX + "00");
+    }
+}
@@ -0,0 +1,76 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainScripthashGetTxsResponseEntry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ElectrumClientListenersTest {
+
+    // Holds the answers back until released.
+    private final CountDownLatch answering = new CountDownLatch(1);
+    private final FakeTransport transport = new FakeTransport((method, params) -> {
+        answering.await();
+        return "blockchain.scripthash.get_history".equals(method)
+                ? Collections.singletonList(Collections.singletonMap("tx_hash", "ab"))
+                : "banner";
+    });
+    private final ElectrumClient client = new ElectrumClient("localhost", 50002);
+
+    @After
+    public void close() throws Exception {
+        client.closeConnection();
+    }
+
+    @Test
+    public void listenerCanWaitForResponses() throws Exception {
+        client.setTransportFactory(() -> transport);
+        client.openConnection();
+        CompletableFuture<List<BlockchainScripthashGetTxsResponseEntry>> history = new CompletableFuture<>();
+        CompletableFuture<String> listenerThread = new CompletableFuture<>();
+        client.setBlockchainScripthashesListener(status -> {
+            listenerThread.complete(Thread.currentThread().getName());
+            try {
+                history.complete(client.blockchainScripthashGetHistory(status.getScripthash()));
+            } catch (Throwable e) {
+                history.completeExceptionally(e);
+            }
+        });
+        answering.countDown();
+        transport.notify("blockchain.scripthash.subscribe", "abcd", "status");
+        assertEquals("ab", history.get(5, TimeUnit.SECONDS).get(0).getTxHash());
+        assertNotEquals("fake-reader", listenerThread.get());
+    }
+
+    @Test
+    public void blockingOnReadingThreadFailsFast() throws Exception {
+        client.setTransportFactory(() -> transport);
+        client.openConnection();
+        CompletableFuture<String> nested = client.serverBannerAsync().thenApply(banner -> {
+            try {
+                return client.serverBanner();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        });
+        // Completes the first request, and runs the stage, on the reading thread.
+        answering.countDown();
+        try {
+            nested.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+            return;
+        }
+        throw new AssertionError("Blocking on the reading thread did not fail");
+    }
+}
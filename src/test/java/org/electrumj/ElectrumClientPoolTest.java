@@ -0,0 +1,34 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+
+import static org.junit.Assert.fail;
+
+public class ElectrumClientPoolTest {
+
+    @Test
+    public void closesWithoutOpening() {
+        new ElectrumClientPool(Collections.singletonList("localhost:50002"), 2).close();
+    }
+
+    @Test
+    public void closesAfterFailedOpen() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        ElectrumClientPool pool = new ElectrumClientPool(Collections.singletonList("127.0.0.1:" + closedPort), 2);
+        try {
+            pool.open();
+            fail("Connected to a closed port");
+        } catch (IOException e) {
+            // Expected.
+        }
+        pool.close();
+    }
+}
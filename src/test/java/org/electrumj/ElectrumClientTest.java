@@ -12,7 +12,11 @@ import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.*;
 
@@ -93,7 +97,6 @@ public class ElectrumClientTest {
             future.set(true);
         });
         client.blockchainHeadersSubscribe();
-        client.listenNotifications();
         future.get();
     }
 
@@ -111,6 +114,36 @@ public class ElectrumClientTest {
         System.out.println("blockchainScripthashGetBalanceResponse = " + blockchainScripthashGetBalanceResponse);
     }
 
+    @Test
+    public void blockchainScripthashGetBalanceAsync() throws Throwable {
+        String address = MainNetParams.get().equals(bitcoinjNetowrkParameters) ? "1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa" : "2N7dt3RYBgiCbbTvwnBNHbC6CiWhJkWqTvB";
+        String scripthash = Util.scripthash(bitcoinjNetowrkParameters, address);
+        // Send several requests before reading any response, they share the connection.
+        List<CompletableFuture<BlockchainScripthashGetBalanceResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(client.blockchainScripthashGetBalanceAsync(scripthash));
+        }
+        BlockchainScripthashGetBalanceResponse first = futures.get(0).get();
+        for (CompletableFuture<BlockchainScripthashGetBalanceResponse> future : futures) {
+            assertEquals(first, future.get());
+        }
+        System.out.println("blockchainScripthashGetBalanceAsync = " + first);
+    }
+
+    @Test
+    public void blockchainScripthashGetBalanceBatch() throws Throwable {
+        String address = MainNetParams.get().equals(bitcoinjNetowrkParameters) ? "1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa" : "2N7dt3RYBgiCbbTvwnBNHbC6CiWhJkWqTvB";
+        String scripthash = Util.scripthash(bitcoinjNetowrkParameters, address);
+        String invalidScripthash = "not a scripthash";
+        Map<String, BatchResult<BlockchainScripthashGetBalanceResponse>> results = client.blockchainScripthashGetBalanceBatch(Arrays.asList(scripthash, invalidScripthash));
+        assertEquals(2, results.size());
+        assertTrue(results.get(scripthash).isSuccess());
+        assertEquals(client.blockchainScripthashGetBalance(scripthash), results.get(scripthash).getResult());
+        assertFalse(results.get(invalidScripthash).isSuccess());
+        assertTrue(results.get(invalidScripthash).getError() instanceof JsonRpcClientException);
+        System.out.println("blockchainScripthashGetBalanceBatch = " + results);
+    }
+
     @Test
     public void blockchainScripthashGetHistory() throws Throwable {
         String address = MainNetParams.get().equals(bitcoinjNetowrkParameters) ? "1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa" : "2N7dt3RYBgiCbbTvwnBNHbC6CiWhJkWqTvB";
@@ -163,7 +196,6 @@ public class ElectrumClientTest {
         String address = MainNetParams.get().equals(bitcoinjNetowrkParameters) ? "1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa" : "2N7dt3RYBgiCbbTvwnBNHbC6CiWhJkWqTvB";
         String scripthash = Util.scripthash(bitcoinjNetowrkParameters, address);
         client.blockchainScripthashSubscribe(scripthash);
-        client.listenNotifications();
         future.get();
     }
 
@@ -0,0 +1,126 @@
+package org.electrumj;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory connection to a fake server, answering the requests on its own reading thread like a real connection.
+ */
+class FakeTransport implements Transport {
+
+    /**
+     * Answers the requests of the fake server.
+     */
+    interface Server {
+        /**
+         * Returns the result of a request, or throws to answer with an error.
+         * @param params The params of the request, an empty object if it has none
+         */
+        Object answer(String method, JsonNode params) throws Exception;
+    }
+
+    private final Server server;
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fake-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private volatile Listener listener;
+    // Whether the requests are answered, or left waiting.
+    volatile boolean answering = true;
+    volatile boolean closed;
+
+    /**
+     * Creates a transport answering "server.version" and null to anything else.
+     */
+    FakeTransport() {
+        this((method, params) -> null);
+    }
+
+    FakeTransport(Server server) {
+        this.server = server;
+    }
+
+    @Override
+    public void open(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        JsonNode requests = ElectrumJson.mapper.readTree(message);
+        for (JsonNode request : requests.isArray() ? requests : ElectrumJson.mapper.createArrayNode().add(requests)) {
+            requestCounts.computeIfAbsent(request.get("method").asText(), m -> new AtomicInteger()).incrementAndGet();
+        }
+        if (!answering) {
+            return;
+        }
+        reader.execute(() -> {
+            JsonNode response;
+            if (requests.isArray()) {
+                ArrayNode responses = ElectrumJson.mapper.createArrayNode();
+                requests.forEach(request -> responses.add(answer(request)));
+                response = responses;
+            } else {
+                response = answer(requests);
+            }
+            listener.onMessage(response.toString());
+        });
+    }
+
+    /**
+     * Sends a notification to the client.
+     */
+    void notify(String method, Object... params) {
+        ObjectNode notification = ElectrumJson.mapper.createObjectNode();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", method);
+        notification.set("params", ElectrumJson.mapper.valueToTree(params));
+        reader.execute(() -> listener.onMessage(notification.toString()));
+    }
+
+    /**
+     * Number of requests of the method received.
+     */
+    int getRequestCount(String method) {
+        AtomicInteger count = requestCounts.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            reader.execute(() -> listener.onClosed(new IOException("Connection closed")));
+            reader.shutdown();
+        }
+    }
+
+    private ObjectNode answer(JsonNode request) {
+        String method = request.get("method").asText();
+        ObjectNode response = ElectrumJson.mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+        try {
+            Object result = "server.version".equals(method)
+                    ? new String[] {"FakeX 1.0", "1.4.2"}
+                    : server.answer(method, request.has("params") ? request.get("params") : ElectrumJson.mapper.createObjectNode());
+            response.set("result", ElectrumJson.mapper.valueToTree(result));
+        } catch (Exception e) {
+            response.putObject("error").put("code", 1).put("message", String.valueOf(e.getMessage()));
+        }
+        return response;
+    }
+}
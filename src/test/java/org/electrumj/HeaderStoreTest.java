@@ -0,0 +1,72 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class HeaderStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putAndGetHeaders() throws Throwable {
+        byte[] headers = chain(new byte[32], 3);
+        try (HeaderStore store = new HeaderStore(folder.newFile().toPath())) {
+            assertEquals(-1, store.getHeight());
+            store.putHeaders(0, headers, 0, 3);
+            assertEquals(2, store.getHeight());
+            assertArrayEquals(Arrays.copyOfRange(headers, 80, 160), store.getHeader(1));
+            assertArrayEquals(Sha256Hash.hashTwice(headers, 160, 80), store.getBlockHash(2));
+            assertNull(store.getHeader(3));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putHeadersNotLinkedToTip() throws Throwable {
+        try (HeaderStore store = new HeaderStore(folder.newFile().toPath())) {
+            store.putHeaders(0, chain(new byte[32], 2), 0, 2);
+            byte[] unrelatedPreviousHash = new byte[32];
+            unrelatedPreviousHash[0] = 1;
+            store.putHeaders(2, chain(unrelatedPreviousHash, 1), 0, 1);
+        }
+    }
+
+    @Test
+    public void truncateAndReopen() throws Throwable {
+        Path file = folder.newFile().toPath();
+        byte[] headers = chain(new byte[32], 5);
+        try (HeaderStore store = new HeaderStore(file)) {
+            store.putHeaders(0, headers, 0, 5);
+            store.truncate(2);
+            assertEquals(2, store.getHeight());
+            assertNull(store.getHeader(3));
+            // The orphaned headers can be replaced by the new chain.
+            store.putHeaders(3, headers, 3 * 80, 2);
+        }
+        try (HeaderStore store = new HeaderStore(file)) {
+            assertEquals(4, store.getHeight());
+            assertArrayEquals(Arrays.copyOfRange(headers, 4 * 80, 5 * 80), store.getHeader(4));
+        }
+    }
+
+    /**
+     * Creates count headers, each one linking to the previous, the first one linking to previousHash.
+     */
+    static byte[] chain(byte[] previousHash, int count) {
+        byte[] headers = new byte[count * 80];
+        for (int i = 0; i < count; i++) {
+            headers[i * 80] = 1; // version
+            System.arraycopy(previousHash, 0, headers, i * 80 + 4, 32);
+            headers[i * 80 + 76] = (byte) i; // nonce
+            previousHash = Sha256Hash.hashTwice(headers, i * 80, 80);
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,126 @@
+package org.electrumj;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HeaderSyncTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Headers 0 to 9.
+    private final byte[] mainChain = HeaderStoreTest.chain(new byte[32], 10);
+    // Headers 0 to 10, sharing 0 to 6 with the main chain.
+    private final byte[] reorgedChain = concat(Arrays.copyOf(mainChain, 7 * 80),
+            HeaderStoreTest.chain(Sha256Hash.hashTwice(mainChain, 6 * 80, 80), 4));
+
+    // The chain of the fake server, replaced to reorg it.
+    private volatile byte[] serverChain = mainChain;
+    // Start heights of the "blockchain.block.headers" requests.
+    private final List<Integer> chunkStarts = new CopyOnWriteArrayList<>();
+    // Holds the chunks back once counted down, until released.
+    private volatile CountDownLatch chunksReleased = new CountDownLatch(0);
+    private final FakeTransport transport = new FakeTransport(this::answer);
+    private final ElectrumClient client = new ElectrumClient("localhost", 50002);
+
+    @After
+    public void close() throws Exception {
+        client.closeConnection();
+    }
+
+    @Test
+    public void followsReorg() throws Throwable {
+        client.setTransportFactory(() -> transport);
+        client.openConnection();
+        try (HeaderStore store = new HeaderStore(folder.newFile().toPath())) {
+            HeaderSync headerSync = new HeaderSync(store, client);
+            assertEquals(9, (int) headerSync.subscribe(client).get());
+            assertArrayEquals(header(mainChain, 9), store.getHeader(9));
+
+            serverChain = reorgedChain;
+            chunksReleased = new CountDownLatch(1);
+            chunkStarts.clear();
+            transport.notify("blockchain.headers.subscribe", tip(reorgedChain));
+            // Rolled back to the fork point while the new branch is fetched.
+            awaitTrue(() -> chunkStarts.size() == 1);
+            assertEquals(6, store.getHeight());
+            assertEquals(7, (int) chunkStarts.get(0));
+            chunksReleased.countDown();
+
+            awaitTrue(() -> store.getHeight() == 10);
+            for (int height = 0; height <= 10; height++) {
+                assertArrayEquals(header(reorgedChain, height), store.getHeader(height));
+            }
+            for (int height = 1; height <= 10; height++) {
+                // The previous block hash of each header is the hash of the header below it.
+                assertArrayEquals(store.getBlockHash(height - 1), Arrays.copyOfRange(store.getHeader(height), 4, 36));
+            }
+        }
+    }
+
+    private Object answer(String method, JsonNode params) throws Exception {
+        byte[] chain = serverChain;
+        int tipHeight = chain.length / 80 - 1;
+        switch (method) {
+            case "blockchain.headers.subscribe":
+                return tip(chain);
+            case "blockchain.block.header":
+                return Utils.HEX.encode(header(chain, params.get("height").asInt()));
+            case "blockchain.block.headers":
+                int startHeight = params.get("start_height").asInt();
+                chunkStarts.add(startHeight);
+                chunksReleased.await();
+                int count = Math.max(0, Math.min(params.get("count").asInt(), tipHeight - startHeight + 1));
+                Map<String, Object> response = new HashMap<>();
+                response.put("count", count);
+                response.put("hex", Utils.HEX.encode(Arrays.copyOfRange(chain, startHeight * 80, (startHeight + count) * 80)));
+                response.put("max", HeaderSync.CHUNK_SIZE);
+                return response;
+            default:
+                throw new Exception("Unexpected " + method);
+        }
+    }
+
+    private static Map<String, Object> tip(byte[] chain) {
+        int tipHeight = chain.length / 80 - 1;
+        Map<String, Object> tip = new HashMap<>();
+        tip.put("height", tipHeight);
+        tip.put("hex", Utils.HEX.encode(header(chain, tipHeight)));
+        return tip;
+    }
+
+    private static byte[] header(byte[] chain, int height) {
+        return Arrays.copyOfRange(chain, height * 80, (height + 1) * 80);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
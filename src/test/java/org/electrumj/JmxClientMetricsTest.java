@@ -0,0 +1,81 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainScripthashStatus;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JmxClientMetricsTest {
+
+    private final JmxClientMetrics metrics = new JmxClientMetrics("test");
+    private final RequestPipeline pipeline = new RequestPipeline(new Transport() {
+        @Override
+        public void open(Listener listener) {
+        }
+
+        @Override
+        public void send(byte[] message) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }, (method, params) -> params.skipChildren(), null, metrics);
+
+    @After
+    public void close() {
+        metrics.close();
+    }
+
+    @Test
+    public void requests() throws Exception {
+        CompletableFuture<String> answered = pipeline.sendRequest("server.banner", null, String.class);
+        CompletableFuture<String> failed = pipeline.sendRequest("server.banner", null, String.class);
+        CompletableFuture<String> cancelled = pipeline.sendRequest("server.banner", null, String.class);
+        JmxClientMetrics.MethodMetrics banner = metrics.getMethodMetrics("server.banner");
+        assertEquals(3, banner.getInFlight());
+        assertEquals(3 * "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"server.banner\"}".length(), banner.getBytesWritten());
+        String response = "{\"id\": 1, \"result\": \"hello\"}";
+        pipeline.onMessage(response);
+        pipeline.onMessage("{\"id\": 2, \"error\": {\"code\": 1, \"message\": \"no\"}}");
+        cancelled.cancel(false);
+        assertEquals("hello", answered.get());
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, banner.getInFlight());
+        assertEquals(2, banner.getRequestCount());
+        assertEquals(1, banner.getErrorCount());
+        assertEquals(1, banner.getFailedCount());
+        assertEquals(2, banner.getLatencyHistogram().getCount());
+        assertTrue(banner.getBytesRead() > response.length());
+
+        ObjectName name = new ObjectName("org.electrumj:type=ClientMetrics,name=\"test\",method=\"server.banner\"");
+        assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RequestCount"));
+        metrics.close();
+        assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void notifications() throws Exception {
+        String notification = "{\"method\": \"blockchain.scripthash.subscribe\", \"params\": [\"ab\", \"cd\"]}";
+        // Two notifications in a batch.
+        pipeline.onMessage("[" + notification + ", " + notification + "]");
+        JmxClientMetrics.MethodMetrics scripthashes = metrics.getMethodMetrics("blockchain.scripthash.subscribe");
+        assertEquals(2, scripthashes.getNotificationCount());
+        assertEquals(2 * notification.length(), scripthashes.getNotificationBytes());
+        assertEquals(0, scripthashes.getRequestCount());
+
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher()) {
+            CompletableFuture<Object> notified = new CompletableFuture<>();
+            dispatcher.addBlockchainScripthashesListener(notified::complete);
+            dispatcher.dispatchScripthashStatus(new BlockchainScripthashStatus("ab", "cd"), metrics, System.nanoTime());
+            notified.get();
+        }
+        assertEquals(1, scripthashes.getDispatchLagHistogram().getCount());
+    }
+}
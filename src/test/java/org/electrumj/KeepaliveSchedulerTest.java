@@ -0,0 +1,66 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeepaliveSchedulerTest {
+
+    private final List<FakeTransport> transports = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void pingsIdleConnections() throws Exception {
+        ElectrumClient client = openClient(false);
+        try (KeepaliveScheduler keepalive = new KeepaliveScheduler(20, 1000, 2)) {
+            keepalive.register(client);
+            awaitTrue(() -> keepalive.getPingCount() >= 3);
+            awaitTrue(() -> client.getRttHistogram().getCount() >= 3);
+            assertTrue(client.getRttEwmaMillis() >= 0);
+            assertEquals(0, keepalive.getMissedPingCount());
+            assertTrue(transports.get(0).getRequestCount("server.ping") >= 3);
+        }
+        client.closeConnection();
+    }
+
+    @Test
+    public void recyclesConnectionMissingPings() throws Exception {
+        ElectrumClient client = openClient(true);
+        transports.get(0).answering = false;
+        try (KeepaliveScheduler keepalive = new KeepaliveScheduler(20, 40, 2)) {
+            keepalive.register(client);
+            awaitTrue(() -> keepalive.getRecycledCount() == 1);
+            assertEquals(2, keepalive.getMissedPingCount());
+            // Auto reconnect opened a new connection and did the handshake on it.
+            awaitTrue(() -> client.getReconnectCount() == 1);
+            assertEquals(2, transports.size());
+            assertTrue(transports.get(0).closed);
+            assertTrue(client.isConnectionOpen());
+        }
+        client.closeConnection();
+    }
+
+    private ElectrumClient openClient(boolean autoReconnect) throws Exception {
+        ElectrumClient client = new ElectrumClient("localhost", 50002);
+        client.setTransportFactory(() -> {
+            FakeTransport transport = new FakeTransport();
+            transports.add(transport);
+            return transport;
+        });
+        client.setAutoReconnect(autoReconnect);
+        client.openConnection();
+        return client;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,44 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5e6, histogram.getMean(), 1);
+        assertEquals(1000_000_000L, histogram.getMax());
+        assertWithin(500_000_000L, histogram.getPercentile(0.5));
+        assertWithin(990_000_000L, histogram.getPercentile(0.99));
+        assertEquals(1000_000_000L, histogram.getPercentile(1));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void bucketsCoverAllValues() {
+        long previousBound = -1;
+        for (long value : new long[] {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long bound = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue(value <= bound);
+            assertTrue(bound >= previousBound);
+            assertTrue(bound - value <= value / 8);
+            previousBound = bound;
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 12.5% of " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,46 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineFramerTest {
+
+    @Test
+    public void feed() {
+        LineFramer framer = new LineFramer();
+        List<String> lines = new ArrayList<>();
+        framer.feed(ByteBuffer.wrap("{\"id\":1}\n{\"id\"".getBytes(StandardCharsets.UTF_8)), lines::add);
+        assertEquals(Arrays.asList("{\"id\":1}"), lines);
+        framer.feed(ByteBuffer.wrap(":2}\r\n\n".getBytes(StandardCharsets.UTF_8)), lines::add);
+        assertEquals(Arrays.asList("{\"id\":1}", "{\"id\":2}", ""), lines);
+    }
+
+    @Test
+    public void feedMultiByteCharacterSplitAcrossBuffers() {
+        LineFramer framer = new LineFramer();
+        List<String> lines = new ArrayList<>();
+        byte[] bytes = "\"banner ☃\"\n".getBytes(StandardCharsets.UTF_8);
+        framer.feed(ByteBuffer.wrap(bytes, 0, 10), lines::add);
+        framer.feed(ByteBuffer.wrap(bytes, 10, bytes.length - 10), lines::add);
+        assertEquals(Arrays.asList("\"banner ☃\""), lines);
+    }
+
+    @Test
+    public void feedLineBiggerThanInitialCapacity() {
+        LineFramer framer = new LineFramer();
+        List<String> lines = new ArrayList<>();
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            hex.append("ab");
+        }
+        framer.feed(ByteBuffer.wrap((hex + "\n").getBytes(StandardCharsets.UTF_8)), lines::add);
+        assertEquals(Arrays.asList(hex.toString()), lines);
+    }
+}
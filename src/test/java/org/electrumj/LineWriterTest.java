@@ -0,0 +1,119 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LineWriterTest {
+
+    @Test
+    public void sendWritesLineAndNewlineAtOnce() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        LineWriter writer = new LineWriter(out);
+        writer.send(bytes("{\"id\":1}"));
+        writer.send(bytes("{\"id\":2}"));
+        assertEquals("{\"id\":1}\n{\"id\":2}\n", out.toString());
+        assertEquals(2, out.writeCount);
+    }
+
+    @Test
+    public void concurrentSendsAreGathered() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch queued = new CountDownLatch(1);
+        CountingOutputStream out = new CountingOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                if (writeCount == 1) {
+                    // Hold the first write until the other threads have queued their lines.
+                    writing.countDown();
+                    await(queued);
+                }
+            }
+        };
+        LineWriter writer = new LineWriter(out);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> first = executor.submit(() -> send(writer, "first"));
+            writing.await(5, TimeUnit.SECONDS);
+            List<Future<?>> others = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                String line = "other" + i;
+                others.add(executor.submit(() -> send(writer, line)));
+            }
+            for (Future<?> other : others) {
+                // Queued lines are written by the first thread, these return right away.
+                other.get(5, TimeUnit.SECONDS);
+            }
+            queued.countDown();
+            first.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, out.writeCount);
+        Set<String> lines = new HashSet<>(Arrays.asList(out.toString().split("\n")));
+        assertEquals(new HashSet<>(Arrays.asList("first", "other0", "other1", "other2")), lines);
+        assertTrue(out.toString().endsWith("\n"));
+    }
+
+    @Test
+    public void appendNewLineOutputStreamWritesOnce() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        OutputStream stream = new AppendNewLineOutputStream(out);
+        stream.write(bytes("{\"id\":1}"));
+        assertEquals("{\"id\":1}\n", out.toString());
+        assertEquals(1, out.writeCount);
+    }
+
+    private static void send(LineWriter writer, String line) {
+        try {
+            writer.send(bytes(line));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        int writeCount;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writeCount++;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            writeCount++;
+            super.write(b);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MerkleProofVerifierTest {
+
+    // Block 100000 and its 4 transactions.
+    private static final byte[] HEADER = Utils.HEX.decode("0100000050120119172a610421a6c3011dd330d9df07b63616c2cc1f1cd00200000000006657a9252aacd5c0b2940996ecff952228c3067cc38d4885efb5a4ac4247e9f337221b4d4c86041b0f2b5710");
+    private static final List<String> TX_HASHES = Arrays.asList(
+            "8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87",
+            "fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4",
+            "6359f0868171b1d194cbee1af2f16ea598ae8fad666d9b012c8ed2b79a236ec4",
+            "e9a66845e05d5abc0ad04ec80f774a7e585c6e8db975962d069a522137b80c1d");
+
+    @Test
+    public void verify() {
+        for (int pos = 0; pos < TX_HASHES.size(); pos++) {
+            assertTrue(MerkleProofVerifier.verify(new MerkleProofVerifier.Proof(TX_HASHES.get(pos), branch(pos), pos, HEADER)));
+        }
+    }
+
+    @Test
+    public void verifyWithHeaderView() {
+        byte[] headers = new byte[3 * BlockHeader.SIZE];
+        System.arraycopy(HEADER, 0, headers, BlockHeader.SIZE, BlockHeader.SIZE);
+        BlockHeader header = BlockHeader.fromConcatenated(headers).get(1);
+        assertTrue(MerkleProofVerifier.verify(new MerkleProofVerifier.Proof(TX_HASHES.get(2), branch(2), 2, header)));
+        assertFalse(MerkleProofVerifier.verify(new MerkleProofVerifier.Proof(TX_HASHES.get(2), branch(2), 2, BlockHeader.fromConcatenated(headers).get(0))));
+    }
+
+    @Test
+    public void verifyInvalid() {
+        // Wrong position
+        assertFalse(MerkleProofVerifier.verify(new MerkleProofVerifier.Proof(TX_HASHES.get(0), branch(0), 1, HEADER)));
+        // Position too big for the branch
+        assertFalse(MerkleProofVerifier.verify(new MerkleProofVerifier.Proof(TX_HASHES.get(0), branch(0), 4, HEADER)));
+        // Transaction not in the block
+        assertFalse(MerkleProofVerifier.verify(new MerkleProofVerifier.Proof(TX_HASHES.get(3).replace('e', 'f'), branch(3), 3, HEADER)));
+        // Truncated branch
+        assertFalse(MerkleProofVerifier.verify(new MerkleProofVerifier.Proof(TX_HASHES.get(0), branch(0).subList(0, 1), 0, HEADER)));
+    }
+
+    @Test
+    public void verifyBatch() {
+        List<MerkleProofVerifier.Proof> proofs = new ArrayList<>();
+        boolean[] expected = new boolean[1000];
+        for (int i = 0; i < expected.length; i++) {
+            int pos = i % TX_HASHES.size();
+            expected[i] = i % 7 != 0;
+            List<String> branch = expected[i] ? branch(pos) : Collections.singletonList("zz");
+            proofs.add(new MerkleProofVerifier.Proof(TX_HASHES.get(pos), branch, pos, HEADER));
+        }
+        assertArrayEquals(expected, new MerkleProofVerifier().verify(proofs));
+    }
+
+    /**
+     * Builds the merkle branch of the transaction at the given position, in the format sent by the server.
+     */
+    private static List<String> branch(int pos) {
+        List<byte[]> level = new ArrayList<>();
+        for (String txHash : TX_HASHES) {
+            level.add(Utils.reverseBytes(Utils.HEX.decode(txHash)));
+        }
+        List<String> branch = new ArrayList<>();
+        while (level.size() > 1) {
+            branch.add(Utils.HEX.encode(Utils.reverseBytes(level.get(pos ^ 1))));
+            List<byte[]> parents = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                parents.add(Sha256Hash.hashTwice(level.get(i), 0, 32, level.get(i + 1), 0, 32));
+            }
+            level = parents;
+            pos >>= 1;
+        }
+        return branch;
+    }
+}
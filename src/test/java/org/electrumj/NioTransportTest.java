@@ -0,0 +1,185 @@
+package org.electrumj;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.electrumj.dto.ServerVersionResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NioTransportTest {
+
+    // Accepts the connections, and never answers the TLS handshake.
+    private final ServerSocket stalledServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    private final SelectorPool selectorPool = new SelectorPool(1);
+
+    public NioTransportTest() throws IOException {
+    }
+
+    @After
+    public void close() throws IOException {
+        selectorPool.close();
+        stalledServer.close();
+    }
+
+    @Test
+    public void handshakeTimesOut() throws Exception {
+        NioTransport transport = new NioTransport(stalledServer.getInetAddress().getHostAddress(),
+                stalledServer.getLocalPort(), SSLContext.getDefault(), selectorPool, 100);
+        long start = System.currentTimeMillis();
+        try {
+            transport.open(new NoopListener());
+            fail("The handshake did not time out");
+        } catch (SocketTimeoutException e) {
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        }
+    }
+
+    @Test
+    public void blockingHandshakeTimesOut() throws Exception {
+        SocketTransport transport = new SocketTransport(stalledServer.getInetAddress().getHostAddress(),
+                stalledServer.getLocalPort(), SSLContext.getDefault().getSocketFactory(), false, 100);
+        try {
+            transport.open(new NoopListener());
+            fail("The handshake did not time out");
+        } catch (SocketTimeoutException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void closingThePoolClosesItsConnections() throws Exception {
+        CompletableFuture<IOException> closed = new CompletableFuture<>();
+        NioTransport transport = new NioTransport(stalledServer.getInetAddress().getHostAddress(),
+                stalledServer.getLocalPort(), SSLContext.getDefault(), selectorPool, 0);
+        CompletableFuture<Void> opened = CompletableFuture.runAsync(() -> {
+            try {
+                transport.open(new NoopListener() {
+                    @Override
+                    public void onClosed(IOException cause) {
+                        closed.complete(cause);
+                    }
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        // Registered once the ClientHello arrives.
+        stalledServer.accept().getInputStream().read();
+        selectorPool.close();
+        assertEquals("Selector pool closed", closed.get(5, TimeUnit.SECONDS).getMessage());
+        try {
+            opened.get(5, TimeUnit.SECONDS);
+            fail("Opening did not fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void registeringOnAClosedPoolFails() throws Exception {
+        selectorPool.close();
+        NioTransport transport = new NioTransport(stalledServer.getInetAddress().getHostAddress(),
+                stalledServer.getLocalPort(), SSLContext.getDefault(), selectorPool, 0);
+        try {
+            transport.open(new NoopListener());
+            fail("Opening did not fail");
+        } catch (IOException e) {
+            // Expected, instead of waiting forever.
+        }
+    }
+
+    @Test
+    public void closedDefaultPoolIsReplaced() throws IOException {
+        SelectorPool defaultPool = SelectorPool.getDefault();
+        assertSame(defaultPool, SelectorPool.getDefault());
+        defaultPool.close();
+        assertNotSame(defaultPool, SelectorPool.getDefault());
+    }
+
+    @Test
+    public void requestOverTls() throws Throwable {
+        try (SSLServerSocket tlsServer = tlsServer()) {
+            CompletableFuture<JsonNode> received = new CompletableFuture<>();
+            Thread serverThread = new Thread(() -> answerServerVersion(tlsServer, received));
+            serverThread.setDaemon(true);
+            serverThread.start();
+            ElectrumClient client = new ElectrumClient("localhost", tlsServer.getLocalPort(), selectorPool);
+            client.openConnection();
+            try {
+                ServerVersionResponse response = client.serverVersion();
+                assertEquals("server.version", received.get(5, TimeUnit.SECONDS).get("method").asText());
+                assertEquals("ElectrumX 1.16.0", response.getServerSoftwareVersion());
+                assertEquals("1.4", response.getProtocolVersion());
+            } finally {
+                client.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * A TLS server on loopback, with the self-signed certificate of the test resources.
+     */
+    private static SSLServerSocket tlsServer() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = NioTransportTest.class.getResourceAsStream("test-server.p12")) {
+            keyStore.load(in, "electrumj".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, "electrumj".toCharArray());
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        return (SSLServerSocket) sslContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Accepts a connection, reads a request from it and answers it as a "server.version" request.
+     */
+    private static void answerServerVersion(ServerSocket server, CompletableFuture<JsonNode> received) {
+        try (Socket socket = server.accept()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            JsonNode request = ElectrumJson.mapper.readTree(reader.readLine());
+            received.complete(request);
+            OutputStream out = socket.getOutputStream();
+            out.write(("{\"jsonrpc\": \"2.0\", \"id\": " + request.get("id") + ", \"result\": [\"ElectrumX 1.16.0\", \"1.4\"]}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            // Until the client closes the connection.
+            reader.readLine();
+        } catch (IOException e) {
+            received.completeExceptionally(e);
+        }
+    }
+
+    private static class NoopListener implements Transport.Listener {
+        @Override
+        public void onMessage(String message) {
+        }
+
+        @Override
+        public void onClosed(IOException cause) {
+        }
+    }
+}
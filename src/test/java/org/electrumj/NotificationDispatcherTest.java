@@ -0,0 +1,95 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainScripthashStatus;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationDispatcherTest {
+
+    @Test
+    public void ordersNotificationsOfEachScripthash() throws Exception {
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(4, 100, NotificationDispatcher.OverflowPolicy.BLOCK)) {
+            Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+            AtomicInteger otherListenerCount = new AtomicInteger();
+            dispatcher.addBlockchainScripthashesListener(status -> received
+                    .computeIfAbsent(status.getScripthash(), scripthash -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(Integer.parseInt(status.getStatus())));
+            dispatcher.addBlockchainScripthashesListener(status -> otherListenerCount.incrementAndGet());
+            for (int i = 0; i < 1000; i++) {
+                dispatcher.dispatchScripthashStatus(new BlockchainScripthashStatus("scripthash" + i % 10, Integer.toString(i)));
+            }
+            awaitDispatched(dispatcher, 1000);
+            assertEquals(10, received.size());
+            for (List<Integer> statuses : received.values()) {
+                assertEquals(100, statuses.size());
+                for (int i = 1; i < statuses.size(); i++) {
+                    assertTrue(statuses.get(i - 1) < statuses.get(i));
+                }
+            }
+            assertEquals(1000, otherListenerCount.get());
+            assertEquals(0, dispatcher.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void dropNewest() throws Exception {
+        assertEquals(Arrays.asList("0", "1", "2"), dispatchToBlockedListener(NotificationDispatcher.OverflowPolicy.DROP_NEWEST));
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+        assertEquals(Arrays.asList("0", "3", "4"), dispatchToBlockedListener(NotificationDispatcher.OverflowPolicy.DROP_OLDEST));
+    }
+
+    /**
+     * Dispatches 5 notifications to a single thread with a queue of 2, while the listener is stuck on the first one.
+     * @return the statuses received
+     */
+    private static List<String> dispatchToBlockedListener(NotificationDispatcher.OverflowPolicy policy) throws Exception {
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(1, 2, policy)) {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            dispatcher.addBlockchainScripthashesListener(status -> {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(status.getStatus());
+            });
+            dispatcher.dispatchScripthashStatus(new BlockchainScripthashStatus("scripthash", "0"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < 5; i++) {
+                dispatcher.dispatchScripthashStatus(new BlockchainScripthashStatus("scripthash", Integer.toString(i)));
+            }
+            assertEquals(2, dispatcher.getQueueDepth());
+            assertEquals(2, dispatcher.getMaxQueueDepth());
+            assertEquals(2, dispatcher.getDroppedCount());
+            release.countDown();
+            awaitDispatched(dispatcher, 3);
+            return new ArrayList<>(received);
+        }
+    }
+
+    private static void awaitDispatched(NotificationDispatcher dispatcher, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getDispatchedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, dispatcher.getDispatchedCount());
+    }
+}
@@ -0,0 +1,105 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationPublisherTest {
+
+    @Test
+    public void deliversOnlyRequestedItems() {
+        NotificationPublisher<String> publisher = new NotificationPublisher<>(10, null, Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(2);
+        for (int i = 0; i < 5; i++) {
+            publisher.submit("item" + i);
+        }
+        assertEquals(Arrays.asList("item0", "item1"), subscriber.items);
+        subscriber.subscription.request(3);
+        assertEquals(Arrays.asList("item0", "item1", "item2", "item3", "item4"), subscriber.items);
+    }
+
+    @Test
+    public void conflatesByKey() {
+        NotificationPublisher<String> publisher = new NotificationPublisher<>(10, item -> item.substring(0, 1), Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.submit("a1");
+        publisher.submit("b1");
+        publisher.submit("a2");
+        subscriber.subscription.request(10);
+        assertEquals(Arrays.asList("a2", "b1"), subscriber.items);
+        assertEquals(1, publisher.getConflatedCount());
+    }
+
+    @Test
+    public void dropsOldestWhenFull() {
+        NotificationPublisher<String> publisher = new NotificationPublisher<>(2, null, Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.submit("item0");
+        publisher.submit("item1");
+        publisher.submit("item2");
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList("item1", "item2"), subscriber.items);
+        assertEquals(1, publisher.getDroppedCount());
+    }
+
+    @Test
+    public void completesAfterPendingItems() {
+        NotificationPublisher<String> publisher = new NotificationPublisher<>(10, null, Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.submit("item0");
+        publisher.close();
+        assertTrue(!subscriber.completed);
+        subscriber.subscription.request(1);
+        assertEquals(Arrays.asList("item0"), subscriber.items);
+        assertTrue(subscriber.completed);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void nonPositiveRequestIsAnError() {
+        NotificationPublisher<String> publisher = new NotificationPublisher<>(10, null, Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<String> {
+        private Flow.Subscription subscription;
+        private final List<String> items = new ArrayList<>();
+        private Throwable error;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final List<CompletableFuture<String>> sent = new ArrayList<>();
+
+    @Test
+    public void sharesIdenticalRequestsInFlight() {
+        CompletableFuture<String> first = request("blockchain.transaction.get", params("tx_hash", "ab"));
+        CompletableFuture<String> second = request("blockchain.transaction.get", params("tx_hash", "ab"));
+        CompletableFuture<String> other = request("blockchain.transaction.get", params("tx_hash", "cd"));
+        assertEquals(2, sent.size());
+        assertEquals(1, coalescer.getCoalescedCount());
+        sent.get(0).complete("rawtx");
+        assertEquals("rawtx", first.join());
+        assertEquals("rawtx", second.join());
+        assertFalse(other.isDone());
+        assertEquals(1, coalescer.getInFlightCount());
+        // Answered: the next identical request is sent again.
+        request("blockchain.transaction.get", params("tx_hash", "ab"));
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void callersCancelIndependently() {
+        CompletableFuture<String> first = request("blockchain.estimatefee", params("number", 6));
+        CompletableFuture<String> second = request("blockchain.estimatefee", params("number", 6));
+        first.cancel(false);
+        sent.get(0).completeExceptionally(new RuntimeException("failed"));
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCompletedExceptionally());
+        assertFalse(second.isCancelled());
+    }
+
+    @Test
+    public void neverCoalescesBroadcast() {
+        request("blockchain.transaction.broadcast", params("raw_tx", "00"));
+        request("blockchain.transaction.broadcast", params("raw_tx", "00"));
+        coalescer.exclude("server.ping");
+        request("server.ping", null);
+        request("server.ping", null);
+        assertEquals(4, sent.size());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void neverCoalescesSubscriptions() {
+        request("blockchain.headers.subscribe", null);
+        request("blockchain.headers.subscribe", null);
+        request("blockchain.scripthash.subscribe", params("scripthash", "ab"));
+        request("blockchain.scripthash.subscribe", params("scripthash", "ab"));
+        request("blockchain.scripthash.unsubscribe", params("scripthash", "ab"));
+        request("blockchain.scripthash.unsubscribe", params("scripthash", "ab"));
+        assertEquals(6, sent.size());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void cancelsRequestAllCallersGaveUpOn() {
+        CompletableFuture<String> first = request("blockchain.estimatefee", params("number", 6));
+        CompletableFuture<String> second = request("blockchain.estimatefee", params("number", 6));
+        first.cancel(false);
+        assertFalse(sent.get(0).isDone());
+        second.completeExceptionally(new RuntimeException("timed out"));
+        assertTrue(sent.get(0).isCancelled());
+        assertEquals(0, coalescer.getInFlightCount());
+        // Sent again for the next caller.
+        request("blockchain.estimatefee", params("number", 6));
+        assertEquals(2, sent.size());
+    }
+
+    private CompletableFuture<String> request(String method, Map<String, Object> params) {
+        return coalescer.coalesce(method, params, String.class, () -> {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            sent.add(future);
+            return future;
+        });
+    }
+
+    private static Map<String, Object> params(String name, Object value) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(name, value);
+        return params;
+    }
+}
@@ -0,0 +1,145 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainHeader;
+import org.electrumj.dto.BlockchainScripthashStatus;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestPipelineTest {
+
+    private final List<Object> notifications = new ArrayList<>();
+    private final RequestPipeline pipeline = new RequestPipeline(new NoopTransport(), (method, params) -> {
+        if ("blockchain.headers.subscribe".equals(method)) {
+            notifications.add(ElectrumJson.readHeaderNotification(params));
+        } else if ("blockchain.scripthash.subscribe".equals(method)) {
+            notifications.add(ElectrumJson.readScripthashNotification(params));
+        }
+    });
+
+    @Test
+    public void resultBeforeId() throws Exception {
+        CompletableFuture<List<Integer>> first = pipeline.sendRequest("test", null, List.class);
+        CompletableFuture<String> second = pipeline.sendRequest("test", null, String.class);
+        pipeline.onMessage("{\"jsonrpc\": \"2.0\", \"result\": [1, 2], \"unknown\": {\"a\": [1]}, \"id\": 1}");
+        pipeline.onMessage("{\"id\": 2, \"result\": \"done\", \"jsonrpc\": \"2.0\"}");
+        assertEquals(Arrays.asList(1, 2), first.get());
+        assertEquals("done", second.get());
+        assertEquals(0, pipeline.getPendingRequestCount());
+    }
+
+    @Test
+    public void batchWithErrorAndNull() throws Exception {
+        List<RequestPipeline.Request> requests = Arrays.asList(
+                new RequestPipeline.Request("test", null, BlockchainHeader.class),
+                new RequestPipeline.Request("test", null, String.class),
+                new RequestPipeline.Request("test", null, String.class));
+        pipeline.sendBatch(requests);
+        pipeline.onMessage("[{\"id\": 3, \"result\": null}, "
+                + "{\"id\": 1, \"result\": {\"hex\": \"00\", \"height\": 5, \"extra\": true}}, "
+                + "{\"error\": {\"code\": 1, \"message\": \"bad request\"}, \"id\": 2}]");
+        assertEquals(5, ((BlockchainHeader) requests.get(0).future.get()).getHeight());
+        assertNull(requests.get(2).future.get());
+        try {
+            requests.get(1).future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("bad request"));
+        }
+    }
+
+    @Test
+    public void undecodableResult() throws Exception {
+        CompletableFuture<Long> first = pipeline.sendRequest("test", null, Long.class);
+        CompletableFuture<Long> second = pipeline.sendRequest("test", null, Long.class);
+        pipeline.onMessage("[{\"id\": 1, \"result\": {\"a\": [1, {\"b\": 2}]}}, {\"id\": 2, \"result\": 7}]");
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(7L, (long) second.get());
+    }
+
+    @Test
+    public void notifications() {
+        pipeline.onMessage("{\"jsonrpc\": \"2.0\", \"method\": \"blockchain.headers.subscribe\", \"params\": [{\"hex\": \"00\", \"height\": 7}]}");
+        pipeline.onMessage("{\"params\": [\"abcd\", null], \"method\": \"blockchain.scripthash.subscribe\"}");
+        pipeline.onMessage("{\"method\": \"blockchain.scripthash.subscribe\", \"params\": [\"ef01\", \"status\"]}");
+        // Malformed params are skipped without affecting the next notifications.
+        pipeline.onMessage("{\"method\": \"blockchain.scripthash.subscribe\", \"params\": [[1], {}], \"jsonrpc\": \"2.0\"}");
+        pipeline.onMessage("{\"method\": \"unknown\", \"params\": [{\"a\": [1]}]}");
+        assertEquals(3, notifications.size());
+        assertEquals(7, ((BlockchainHeader) notifications.get(0)).getHeight());
+        assertEquals(new BlockchainScripthashStatus("abcd", null), notifications.get(1));
+        assertEquals(new BlockchainScripthashStatus("ef01", "status"), notifications.get(2));
+    }
+
+    @Test
+    public void timedOutRequestIsForgotten() throws Exception {
+        CompletableFuture<String> first = pipeline.sendRequest("test", null, String.class, 10);
+        try {
+            first.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(0, pipeline.getPendingRequestCount());
+        CompletableFuture<String> second = pipeline.sendRequest("test", null, String.class, 10_000);
+        // The late response is dropped without affecting the next request.
+        pipeline.onMessage("{\"id\": 1, \"result\": \"late\"}");
+        pipeline.onMessage("{\"id\": 2, \"result\": \"done\"}");
+        assertEquals("done", second.get());
+        assertTrue(pipeline.isOpen());
+    }
+
+    @Test
+    public void cancelledRequestsGiveBackTheirRoom() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+        List<String> sent = new ArrayList<>();
+        RequestPipeline limited = new RequestPipeline(new NoopTransport() {
+            @Override
+            public void send(byte[] message) {
+                sent.add(new String(message, StandardCharsets.UTF_8));
+            }
+        }, (method, params) -> {}, limiter);
+        CompletableFuture<String> first = limited.sendRequest("first", null, String.class);
+        CompletableFuture<String> second = limited.sendRequest("second", null, String.class);
+        CompletableFuture<String> third = limited.sendRequest("third", null, String.class);
+        assertEquals(1, sent.size());
+        // Cancelled while waiting: never sent.
+        second.cancel(false);
+        assertEquals(1, sent.size());
+        // Cancelled while pending: makes room for the third.
+        first.cancel(false);
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(1).contains("third"));
+        assertEquals(1, limited.getPendingRequestCount());
+        limited.onMessage("{\"id\": 2, \"result\": \"done\"}");
+        assertEquals("done", third.get());
+        assertEquals(0, limited.getPendingRequestCount());
+        assertEquals(0, limiter.getInFlight(), 0);
+    }
+
+    private static class NoopTransport implements Transport {
+        @Override
+        public void open(Listener listener) {
+        }
+
+        @Override
+        public void send(byte[] message) {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
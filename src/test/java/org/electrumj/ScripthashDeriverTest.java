@@ -0,0 +1,61 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ScripthashDeriverTest {
+
+    private static final String[] ADDRESSES = {
+            // P2PKH
+            "1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa",
+            // P2SH
+            "3J98t1WpEZ73CNmQviecrnyiWrnqRhWNLy",
+            // P2WPKH
+            "bc1qar0srrr7xfkvy5l643lydnw9re59gtzzwf5mdq",
+            // P2WSH
+            "bc1qrp33g0q5c5txsp9arysrx4k6zdkfs4nce4xj0gdcccefvpysxf3qccfmv3",
+    };
+
+    @Test
+    public void fromAddresses() {
+        String[] expected = Arrays.stream(ADDRESSES).map(ScripthashDeriverTest::bitcoinjScripthash).toArray(String[]::new);
+        assertEquals("8b01df4e368ea28f8dc0423bcf7a4923e3a12d307c875e47a0cfbf90b5c39161", expected[0]);
+        ScripthashDeriver deriver = new ScripthashDeriver();
+        assertArrayEquals(expected, deriver.fromAddressesHex(ADDRESSES));
+        // Second time from the memo
+        assertArrayEquals(expected, deriver.fromAddressesHex(ADDRESSES));
+        assertArrayEquals(expected, new ScripthashDeriver(MainNetParams.get(), 0).fromAddressesHex(ADDRESSES));
+        assertEquals(expected[2], Utils.HEX.encode(deriver.fromAddresses(ADDRESSES)[2]));
+    }
+
+    @Test
+    public void fromAddressesInParallel() {
+        String[] addresses = new String[10000];
+        String[] expected = new String[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = ADDRESSES[i % ADDRESSES.length];
+            expected[i] = bitcoinjScripthash(addresses[i]);
+        }
+        assertArrayEquals(expected, new ScripthashDeriver(MainNetParams.get(), 2).fromAddressesHex(addresses));
+    }
+
+    @Test
+    public void fromScripts() {
+        byte[] script = ScriptBuilder.createOutputScript(Address.fromString(MainNetParams.get(), ADDRESSES[0])).getProgram();
+        assertArrayEquals(new String[] {bitcoinjScripthash(ADDRESSES[0])}, ScripthashDeriver.fromScriptsHex(script));
+    }
+
+    private static String bitcoinjScripthash(String address) {
+        byte[] script = ScriptBuilder.createOutputScript(Address.fromString(MainNetParams.get(), address)).getProgram();
+        return Sha256Hash.wrapReversed(Sha256Hash.hash(script)).toString();
+    }
+}
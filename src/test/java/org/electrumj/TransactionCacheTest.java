@@ -0,0 +1,120 @@
+package org.electrumj;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.electrumj.dto.transactionget.BlockchainTransactionGetVerboseResponse;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TransactionCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        TransactionCache cache = new TransactionCache(300);
+        cache.putRaw("a", hex(100), true);
+        cache.putRaw("b", hex(100), true);
+        cache.putRaw("c", hex(100), true);
+        assertEquals(hex(100), cache.getRaw("a"));
+        cache.putRaw("d", hex(100), true);
+        assertNull(cache.getRaw("b"));
+        assertEquals(hex(100), cache.getRaw("a"));
+        assertEquals(300, cache.getSizeBytes());
+        cache.putRaw("e", hex(250), true);
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(250, cache.getSizeBytes());
+    }
+
+    @Test
+    public void keepsRawTransactionsAcrossTips() {
+        TransactionCache cache = new TransactionCache();
+        cache.notifyNewTip(100);
+        cache.putRaw("confirmed", hex(10), true);
+        cache.putRaw("unconfirmed", hex(10), false);
+        cache.notifyNewTip(101);
+        // Reorg
+        cache.notifyNewTip(100);
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(hex(10), cache.getRaw("confirmed"));
+        assertEquals(hex(10), cache.getRaw("unconfirmed"));
+    }
+
+    @Test
+    public void updatesVerboseConfirmations() {
+        TransactionCache cache = new TransactionCache();
+        cache.notifyNewTip(100);
+        cache.putVerbose("confirmed", verbose(3));
+        cache.putVerbose("unconfirmed", verbose(0));
+        cache.notifyNewTip(102);
+        assertEquals(5, cache.getVerbose("confirmed").getConfirmations());
+        assertNull(cache.getVerbose("unconfirmed"));
+        assertEquals(hex(10), cache.getRaw("confirmed"));
+        // Reorg
+        cache.notifyNewTip(99);
+        assertNull(cache.getVerbose("confirmed"));
+        assertEquals(hex(10), cache.getRaw("confirmed"));
+    }
+
+    @Test
+    public void laggingConnectionIsNotAReorg() {
+        TransactionCache cache = new TransactionCache();
+        Object upToDate = new Object();
+        Object lagging = new Object();
+        cache.notifyNewTip(upToDate, 100);
+        cache.notifyNewTip(lagging, 98);
+        cache.putVerbose("confirmed", verbose(3));
+        cache.notifyNewTip(lagging, 99);
+        assertEquals(3, cache.getVerbose("confirmed").getConfirmations());
+        cache.notifyNewTip(upToDate, 101);
+        assertEquals(4, cache.getVerbose("confirmed").getConfirmations());
+        cache.notifyNewTip(lagging, 100);
+        assertEquals(4, cache.getVerbose("confirmed").getConfirmations());
+        // Reorg seen by the connection that notified a higher block before
+        cache.notifyNewTip(upToDate, 100);
+        assertNull(cache.getVerbose("confirmed"));
+    }
+
+    @Test
+    public void sameHeightReorg() {
+        TransactionCache cache = new TransactionCache();
+        // Blocks 99 and 100, and another block 100 on top of the same block 99.
+        byte[] branch = HeaderStoreTest.chain(new byte[32], 2);
+        byte[] otherBranch = HeaderStoreTest.chain(Sha256Hash.hashTwice(branch, 0, 80), 1);
+        cache.notifyNewTip(99, new BlockHeader(branch, 0));
+        cache.notifyNewTip(100, new BlockHeader(branch, 80));
+        cache.putVerbose("confirmed", verbose(3));
+        // The same block notified again
+        cache.notifyNewTip(100, new BlockHeader(branch, 80));
+        assertEquals(3, cache.getVerbose("confirmed").getConfirmations());
+        // Another block at the same height
+        cache.notifyNewTip(100, new BlockHeader(otherBranch, 0));
+        assertNull(cache.getVerbose("confirmed"));
+    }
+
+    @Test
+    public void unlinkedNextBlockIsAReorg() {
+        TransactionCache cache = new TransactionCache();
+        // Blocks 100 and 101, and a block on top of another block 101.
+        byte[] branch = HeaderStoreTest.chain(new byte[32], 2);
+        byte[] otherBranch = HeaderStoreTest.chain(Sha256Hash.hashTwice(branch, 0, 80), 2);
+        cache.notifyNewTip(100, new BlockHeader(branch, 0));
+        cache.putVerbose("confirmed", verbose(3));
+        cache.notifyNewTip(101, new BlockHeader(branch, 80));
+        assertEquals(4, cache.getVerbose("confirmed").getConfirmations());
+        cache.putVerbose("confirmed", verbose(4));
+        // Block 102 of the other branch
+        cache.notifyNewTip(102, new BlockHeader(otherBranch, 80));
+        assertNull(cache.getVerbose("confirmed"));
+    }
+
+    private static BlockchainTransactionGetVerboseResponse verbose(long confirmations) {
+        BlockchainTransactionGetVerboseResponse verbose = new BlockchainTransactionGetVerboseResponse();
+        verbose.setHex(hex(10));
+        verbose.setConfirmations(confirmations);
+        return verbose;
+    }
+
+    private static String hex(int bytes) {
+        return "ab".repeat(bytes);
+    }
+}
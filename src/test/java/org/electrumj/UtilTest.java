@@ -3,6 +3,7 @@ package org.electrumj;
 import org.bitcoinj.params.MainNetParams;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class UtilTest {
@@ -13,6 +14,13 @@ public class UtilTest {
                     Util.scripthash(MainNetParams.get(), "1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa"));
     }
 
-
+    @Test
+    public void reversedHexToBytes() {
+        byte[] bytes = new byte[4];
+        Util.reversedHexToBytes("0a0B", bytes, 1);
+        assertArrayEquals(new byte[] {0, 0x0b, 0x0a, 0}, bytes);
+        Util.hexToBytes("ff01", bytes, 2);
+        assertArrayEquals(new byte[] {0, 0x0b, (byte) 0xff, 0x01}, bytes);
+    }
 
 }
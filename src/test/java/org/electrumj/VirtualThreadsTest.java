@@ -0,0 +1,42 @@
+package org.electrumj;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void newThreadPerTaskExecutor() throws Exception {
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test");
+        try {
+            // More tasks blocked at once than a bounded pool would run.
+            CountDownLatch allStarted = new CountDownLatch(500);
+            for (int i = 0; i < 500; i++) {
+                executor.submit(() -> {
+                    allStarted.countDown();
+                    allStarted.await();
+                    return null;
+                });
+            }
+            assertTrue(allStarted.await(10, TimeUnit.SECONDS));
+            assertTrue(executor.submit(() -> Thread.currentThread().getName().startsWith("test-")).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void startThread() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        Thread thread = VirtualThreads.startThread("electrumj-test", true, ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals("electrumj-test", thread.getName());
+        assertTrue(thread.isDaemon());
+    }
+}
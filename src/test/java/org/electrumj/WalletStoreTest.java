@@ -0,0 +1,110 @@
+package org.electrumj;
+
+import org.electrumj.dto.BlockchainScripthashGetTxsResponseEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WalletStoreTest {
+
+    private static final String SCRIPTHASH = "8b01df4e368ea28f8dc0423bcf7a4923e3a12d307c875e47a0cfbf90b5c39161";
+    private static final String TX_HASH_1 = "8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87";
+    private static final String TX_HASH_2 = "fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4";
+    // Same first 8 bytes as TX_HASH_1, the raw transactions index key.
+    private static final String COLLIDING_TX_HASH = "8c14f0db3df15012fff2525b8931402dd09222c50775608f75787bd2b87e5699";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopen() throws Throwable {
+        Path file = folder.newFile().toPath();
+        List<BlockchainScripthashGetTxsResponseEntry> history = Arrays.asList(entry(TX_HASH_1, 100000, 0), entry(TX_HASH_2, -1, 250));
+        try (WalletStore store = new WalletStore(file)) {
+            store.putHistory(SCRIPTHASH, Collections.singletonList(entry(TX_HASH_1, 100000, 0)));
+            store.putHistory(SCRIPTHASH, history);
+            store.putRawTx(TX_HASH_1, "0100abcd");
+            assertEquals(history, store.getHistory(SCRIPTHASH));
+        }
+        try (WalletStore store = new WalletStore(file)) {
+            assertEquals(history, store.getHistory(SCRIPTHASH));
+            assertEquals(WalletSync.computeStatus(history), store.getStatus(SCRIPTHASH));
+            assertEquals("0100abcd", store.getRawTx(TX_HASH_1));
+            assertNull(store.getRawTx(TX_HASH_2));
+            assertTrue(store.getGarbageBytes() > 0);
+            store.compact();
+            assertEquals(0, store.getGarbageBytes());
+            assertEquals(history, store.getHistory(SCRIPTHASH));
+            assertEquals("0100abcd", store.getRawTx(TX_HASH_1));
+            store.putRawTx(TX_HASH_2, "02");
+        }
+        try (WalletStore store = new WalletStore(file)) {
+            assertEquals(history, store.getHistory(SCRIPTHASH));
+            assertEquals("0100abcd", store.getRawTx(TX_HASH_1));
+            assertEquals("02", store.getRawTx(TX_HASH_2));
+        }
+    }
+
+    @Test
+    public void dropsTornRecord() throws Throwable {
+        Path file = folder.newFile().toPath();
+        try (WalletStore store = new WalletStore(file)) {
+            store.putRawTx(TX_HASH_1, "0100abcd");
+            store.putRawTx(TX_HASH_2, "0200abcd");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        try (WalletStore store = new WalletStore(file)) {
+            assertEquals("0100abcd", store.getRawTx(TX_HASH_1));
+            assertNull(store.getRawTx(TX_HASH_2));
+            store.putRawTx(TX_HASH_2, "0200abcd");
+            assertEquals("0200abcd", store.getRawTx(TX_HASH_2));
+        }
+    }
+
+    @Test
+    public void lastCollidingRawTxWins() throws Throwable {
+        Path file = folder.newFile().toPath();
+        try (WalletStore store = new WalletStore(file)) {
+            store.putRawTx(TX_HASH_1, "01");
+            store.putRawTx(COLLIDING_TX_HASH, "02");
+            assertNull(store.getRawTx(TX_HASH_1));
+            assertEquals("02", store.getRawTx(COLLIDING_TX_HASH));
+            // Already stored, not appended again
+            long size = store.getSizeBytes();
+            store.putRawTx(COLLIDING_TX_HASH, "02");
+            assertEquals(size, store.getSizeBytes());
+            store.putRawTx(TX_HASH_1, "01");
+            assertEquals("01", store.getRawTx(TX_HASH_1));
+            assertNull(store.getRawTx(COLLIDING_TX_HASH));
+        }
+        try (WalletStore store = new WalletStore(file)) {
+            // Read back with the same rule
+            assertEquals("01", store.getRawTx(TX_HASH_1));
+            assertNull(store.getRawTx(COLLIDING_TX_HASH));
+            assertEquals(1, store.getRawTxCount());
+            assertTrue(store.getGarbageBytes() > 0);
+            store.compact();
+            assertEquals(0, store.getGarbageBytes());
+            assertEquals("01", store.getRawTx(TX_HASH_1));
+        }
+    }
+
+    private static BlockchainScripthashGetTxsResponseEntry entry(String txHash, long height, long fee) {
+        BlockchainScripthashGetTxsResponseEntry entry = new BlockchainScripthashGetTxsResponseEntry();
+        entry.setTxHash(txHash);
+        entry.setHeight(height);
+        entry.setFee(fee);
+        return entry;
+    }
+}
@@ -0,0 +1,144 @@
+package org.electrumj;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.electrumj.dto.BlockchainScripthashGetTxsResponseEntry;
+import org.electrumj.dto.BlockchainScripthashStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WalletSyncTest {
+
+    private static final String SCRIPTHASH = "b0fa5c7a1d0e1a6f0b9a2d3c4e5f60718293a4b5c6d7e8f90a1b2c3d4e5f6071";
+    private static final List<BlockchainScripthashGetTxsResponseEntry> HISTORY_1 = Collections.singletonList(
+            entry("8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87", 100000));
+    private static final List<BlockchainScripthashGetTxsResponseEntry> HISTORY_2 = Arrays.asList(HISTORY_1.get(0),
+            entry("fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4", 0));
+    private static final List<BlockchainScripthashGetTxsResponseEntry> HISTORY_3 = Arrays.asList(HISTORY_1.get(0),
+            entry("fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4", 100001));
+
+    // The history of the fake server.
+    private volatile List<BlockchainScripthashGetTxsResponseEntry> serverHistory = HISTORY_1;
+    // Holds the histories back once counted down, until released.
+    private volatile CountDownLatch historiesReleased = new CountDownLatch(0);
+    // Set once the server holds a history back.
+    private volatile boolean holdingHistory;
+    private final FakeTransport transport = new FakeTransport(this::answer);
+    private final ElectrumClient client = new ElectrumClient("localhost", 50002);
+    private final WalletSync walletSync = new WalletSync(client);
+
+    @Before
+    public void open() throws Throwable {
+        client.setTransportFactory(() -> transport);
+        client.openConnection();
+        walletSync.subscribe(Collections.singletonList(SCRIPTHASH)).get();
+        assertEquals(HISTORY_1, walletSync.getHistory(SCRIPTHASH));
+        assertEquals(1, getHistoryCount());
+    }
+
+    @After
+    public void close() throws Exception {
+        client.closeConnection();
+    }
+
+    @Test
+    public void knownStatusIsNotFetched() {
+        // Called directly rather than through a notification, so nothing is in flight when counting.
+        walletSync.notifyNewScripthashStatus(status(HISTORY_1));
+        assertEquals(1, getHistoryCount());
+    }
+
+    @Test
+    public void changedStatusIsFetched() throws Exception {
+        serverHistory = HISTORY_2;
+        transport.notify("blockchain.scripthash.subscribe", SCRIPTHASH, WalletSync.computeStatus(HISTORY_2));
+        awaitTrue(() -> HISTORY_2.equals(walletSync.getHistory(SCRIPTHASH)));
+        assertEquals(2, getHistoryCount());
+    }
+
+    @Test
+    public void statusChangedWhileFetchingIsFetchedAgain() throws Exception {
+        serverHistory = HISTORY_2;
+        historiesReleased = new CountDownLatch(1);
+        walletSync.notifyNewScripthashStatus(status(HISTORY_2));
+        awaitTrue(() -> holdingHistory);
+        // Confirmed while the server answers with the previous history: only fetched once the first fetch completes.
+        serverHistory = HISTORY_3;
+        walletSync.notifyNewScripthashStatus(status(HISTORY_3));
+        assertEquals(2, getHistoryCount());
+        historiesReleased.countDown();
+        awaitTrue(() -> HISTORY_3.equals(walletSync.getHistory(SCRIPTHASH)));
+        assertEquals(3, getHistoryCount());
+    }
+
+    @Test
+    public void historyListenerIsCalledOnTheListenerThread() throws Exception {
+        CompletableFuture<String> listenerThread = new CompletableFuture<>();
+        walletSync.setScripthashHistoryListener((scripthash, history) -> listenerThread.complete(
+                RequestPipeline.isReadingThread() ? "reading thread" : Thread.currentThread().getName()));
+        serverHistory = HISTORY_2;
+        transport.notify("blockchain.scripthash.subscribe", SCRIPTHASH, WalletSync.computeStatus(HISTORY_2));
+        assertEquals("electrumj-listener", listenerThread.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void computeStatus() {
+        String txHash1 = "8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87";
+        String txHash2 = "fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4";
+        String expected = Utils.HEX.encode(Sha256Hash.hash((txHash1 + ":100000:" + txHash2 + ":-1:").getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(expected, WalletSync.computeStatus(Arrays.asList(entry(txHash1, 100000), entry(txHash2, -1))));
+        assertNull(WalletSync.computeStatus(Collections.emptyList()));
+    }
+
+    private Object answer(String method, JsonNode params) throws Exception {
+        List<BlockchainScripthashGetTxsResponseEntry> history = serverHistory;
+        switch (method) {
+            case "blockchain.scripthash.subscribe":
+                return WalletSync.computeStatus(history);
+            case "blockchain.scripthash.get_history":
+                holdingHistory = historiesReleased.getCount() > 0;
+                historiesReleased.await();
+                return history;
+            default:
+                throw new Exception("Unexpected " + method);
+        }
+    }
+
+    private static BlockchainScripthashStatus status(List<BlockchainScripthashGetTxsResponseEntry> history) {
+        return new BlockchainScripthashStatus(Arrays.asList(SCRIPTHASH, WalletSync.computeStatus(history)));
+    }
+
+    private int getHistoryCount() {
+        return transport.getRequestCount("blockchain.scripthash.get_history");
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static BlockchainScripthashGetTxsResponseEntry entry(String txHash, long height) {
+        BlockchainScripthashGetTxsResponseEntry entry = new BlockchainScripthashGetTxsResponseEntry();
+        entry.setTxHash(txHash);
+        entry.setHeight(height);
+        return entry;
+    }
+}